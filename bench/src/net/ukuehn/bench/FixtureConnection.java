@@ -0,0 +1,120 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.bench;
+
+
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import java.net.URL;
+import java.net.HttpURLConnection;
+
+
+
+/* Connection answering with a fixed response, without touching the
+ * network.
+ */
+public class FixtureConnection extends HttpURLConnection {
+
+	byte[] body;
+	String[] keys;
+	String[] values;
+
+
+	public FixtureConnection(URL u, byte[] theBody) {
+		super(u);
+		body = theBody;
+		if (body != null) {
+			responseCode = HTTP_OK;
+			responseMessage = "OK";
+		} else {
+			responseCode = HTTP_NOT_FOUND;
+			responseMessage = "Not Found";
+			body = new byte[0];
+		}
+		keys = new String[] {
+			null, "Content-Type", "Content-Length"
+		};
+		values = new String[] {
+			"HTTP/1.1 "+String.valueOf(responseCode)
+			+" "+responseMessage,
+			"text/html; charset="+Fixtures.CHARSET,
+			String.valueOf(body.length)
+		};
+	}
+
+
+	public void connect() {
+		connected = true;
+	}
+
+
+	public void disconnect() {
+		// nothing
+	}
+
+
+	public boolean usingProxy() {
+		return false;
+	}
+
+
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+
+	public String getHeaderFieldKey(int n) {
+		if ((n < 0) || (n >= keys.length)) {
+			return null;
+		}
+		return keys[n];
+	}
+
+
+	public String getHeaderField(int n) {
+		if ((n < 0) || (n >= values.length)) {
+			return null;
+		}
+		return values[n];
+	}
+
+
+	public String getHeaderField(String name) {
+		for (int i = 1;  i < keys.length;  i++) {
+			if (keys[i].equalsIgnoreCase(name)) {
+				return values[i];
+			}
+		}
+		return null;
+	}
+
+
+	public InputStream getInputStream() throws IOException {
+		if (responseCode == HTTP_NOT_FOUND) {
+			throw new FileNotFoundException(url.toString());
+		}
+		return new ByteArrayInputStream(body);
+	}
+
+}
@@ -0,0 +1,62 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.bench;
+
+
+import java.io.IOException;
+
+import java.net.URL;
+import java.net.HttpURLConnection;
+
+import java.util.HashMap;
+
+import net.ukuehn.net.HttpTransport;
+
+
+
+/* Transport serving fixture pages by path. Every other URL is
+ * answered with 404, e.g. the scripts referenced by the pages.
+ */
+public class FixtureTransport implements HttpTransport {
+
+	HashMap<String, byte[]> pages;
+
+
+	public FixtureTransport() {
+		pages = new HashMap<String, byte[]>();
+	}
+
+
+	public void add(String path, byte[] body) {
+		pages.put(path, body);
+	}
+
+
+	public HttpURLConnection openConnection(URL u) throws IOException {
+		return new FixtureConnection(u, pages.get(u.getPath()));
+	}
+
+
+	public void close() {
+		// nothing
+	}
+
+}
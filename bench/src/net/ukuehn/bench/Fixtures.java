@@ -0,0 +1,67 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.bench;
+
+
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+
+
+/* Access to the pages checked in under bench/fixtures. They are
+ * packed into the benchmark jar, so the benchmarks run offline.
+ */
+public class Fixtures {
+
+	public static final String CHARSET = "ISO-8859-1";
+
+
+	public static byte[] load(String name) throws IOException {
+		InputStream is
+			= Fixtures.class.getResourceAsStream("/fixtures/"+name);
+		if (is == null) {
+			throw new IOException("Fixture "+name+" not found");
+		}
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] b = new byte[8192];
+			int n;
+			while ((n = is.read(b)) >= 0) {
+				bos.write(b, 0, n);
+			}
+			return bos.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+
+
+	public static String loadString(String name) throws IOException {
+		try {
+			return new String(load(name), CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IOException("No charset "+CHARSET);
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.bench;
+
+
+import java.net.URL;
+import java.net.HttpURLConnection;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.ukuehn.html.HtmlBuffer;
+import net.ukuehn.html.HtmlTokenizer;
+import net.ukuehn.html.HtmlStructureExtractor;
+import net.ukuehn.html.HttpEquivExtractor;
+import net.ukuehn.html.HttpEquivResult;
+import net.ukuehn.html.ParserException;
+import net.ukuehn.html.ReadLimits;
+import net.ukuehn.html.TagToken;
+import net.ukuehn.html.Token;
+import net.ukuehn.html.TokenCursor;
+import net.ukuehn.html.TokenDispatcher;
+import net.ukuehn.wfat.ConnectionHandler;
+import net.ukuehn.wfat.Digester;
+
+
+
+/* Tokenizing and extraction on the fixture pages. The extractors
+ * work on a buffer prepared once, so their numbers do not include
+ * tokenizing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlBench {
+
+	@Param({"news.html", "manual.html", "refresh.html"})
+	public String page;
+
+	String text;
+	URL url;
+	ConnectionHandler hc;
+	Digester digester;
+	HtmlBuffer parsed;
+
+
+	@Setup
+	public void setup() throws Exception {
+		byte[] body = Fixtures.load(page);
+		text = new String(body, Fixtures.CHARSET);
+		url = new URL("http://www.example.com/"+page);
+		FixtureTransport transport = new FixtureTransport();
+		transport.add(url.getPath(), body);
+		hc = new ConnectionHandler(null);
+		hc.setTransport(transport);
+		digester = new Digester();
+		parsed = buffer();
+	}
+
+
+	protected static boolean needsNonHTMLParsingNext(Token t) {
+		if (t instanceof TagToken) {
+			String name = ((TagToken)t).getName();
+			return name.equalsIgnoreCase("script")
+				|| name.equalsIgnoreCase("style");
+		}
+		return false;
+	}
+
+
+	@Benchmark
+	public void tokenize(Blackhole bh) throws ParserException {
+		HtmlTokenizer ht = new HtmlTokenizer(text);
+		Token t = ht.nextToken();
+		while (t != null) {
+			bh.consume(t);
+			if (needsNonHTMLParsingNext(t)) {
+				t = ht.nextTokenNonHTML();
+			} else {
+				t = ht.nextToken();
+			}
+		}
+	}
+
+
+	@Benchmark
+	public HtmlBuffer buffer() throws Exception {
+		HttpURLConnection conn = hc.prepareConnection(url, true);
+		HtmlBuffer hb = new HtmlBuffer(conn);
+		hb.close();
+		return hb;
+	}
+
+
+	@Benchmark
+	public HttpEquivResult httpEquiv() throws ParserException {
+		HttpEquivExtractor hee = new HttpEquivExtractor(parsed);
+		return hee.extract();
+	}
+
+
+	/* Reading and extraction in one pass over the head section,
+	 * as done by the scanner unless the structure is needed.
+	 */
+	@Benchmark
+	public HttpEquivResult httpEquivStream() throws Exception {
+		HttpURLConnection conn = hc.prepareConnection(url, true);
+		TokenCursor tc = new TokenCursor(conn, true,
+						 ReadLimits.DEFAULT);
+		HttpEquivExtractor hee = new HttpEquivExtractor(tc);
+		return hee.extract();
+	}
+
+
+	@Benchmark
+	public String structure() throws ParserException {
+		HtmlStructureExtractor hse
+			= new HtmlStructureExtractor(parsed, url,
+						     hc, digester);
+		hse.extract();
+		return hse.getStructHash();
+	}
+
+
+	/* Both extractors in a single pass over the buffer */
+	@Benchmark
+	public HttpEquivResult singlePass() throws ParserException {
+		HttpEquivExtractor hee = new HttpEquivExtractor();
+		HtmlStructureExtractor hse
+			= new HtmlStructureExtractor(url, hc, digester);
+		TokenDispatcher td = new TokenDispatcher();
+		td.add(hee);
+		td.add(hse);
+		td.run(parsed.iterator());
+		return hee.getResult();
+	}
+
+}
@@ -0,0 +1,235 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.bench;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.URL;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ukuehn.wfat.BinaryPublisher;
+import net.ukuehn.wfat.CSVPublisher;
+import net.ukuehn.wfat.EdgeCSVPublisher;
+import net.ukuehn.wfat.Hub;
+import net.ukuehn.wfat.JSONPublisher;
+import net.ukuehn.wfat.Publisher;
+import net.ukuehn.wfat.RecordingPublisher;
+import net.ukuehn.wfat.ToolkitError;
+import net.ukuehn.wfat.XMLPublisher;
+import net.ukuehn.xml.SimpleXMLWriter;
+
+
+
+/* Output of a fixed scan result by each publisher, written to a
+ * writer that discards everything. One invocation publishes a scan
+ * of 50 targets, each redirected twice before the final response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublisherBench {
+
+	protected static final int TARGETS = 50;
+
+	protected static final String[][] HEADERS = {
+		{ null, "HTTP/1.1 200 OK" },
+		{ "Date", "Sat, 01 Jun 2013 12:00:00 GMT" },
+		{ "Server", "Apache/2.2.22 (Debian)" },
+		{ "X-Powered-By", "PHP/5.4.4-14" },
+		{ "Set-Cookie", "sid=4f3c2a1b; path=/; HttpOnly" },
+		{ "Cache-Control", "no-cache, must-revalidate" },
+		{ "Vary", "Accept-Encoding" },
+		{ "Content-Length", "140319" },
+		{ "Connection", "close" },
+		{ "Content-Type", "text/html; charset=iso-8859-1" },
+	};
+
+	protected static final String[][] EQUIVS = {
+		{ "Content-Type", "text/html; charset=iso-8859-1" },
+		{ "X-UA-Compatible", "IE=edge" },
+		{ "refresh", "0; url=http://www.example.com/portal/?a=1&b=<2>" },
+	};
+
+	@Param({"xml", "csv", "edge", "hub", "recording",
+		"binary", "json"})
+	public String publisher;
+
+	URL[][] targets;
+	InetAddress ip;
+
+
+	@Setup
+	public void setup() throws Exception {
+		ip = InetAddress.getByAddress("www.example.com",
+					      new byte[] {(byte)192, 0, 2, 10});
+		targets = new URL[TARGETS][];
+		for (int i = 0;  i < TARGETS;  i++) {
+			String host = "site"+String.valueOf(i)+".example.com";
+			targets[i] = new URL[] {
+				new URL("http://"+host+"/"),
+				new URL("https://"+host+"/"),
+				new URL("https://www."+host+"/index.html"),
+			};
+		}
+	}
+
+
+	protected Publisher newPublisher() throws ToolkitError {
+		Writer w = new NullWriter();
+		if (publisher.equals("xml")) {
+			return new XMLPublisher(new SimpleXMLWriter(
+					      new BufferedWriter(w)), true, 1);
+		} else if (publisher.equals("csv")) {
+			return new CSVPublisher(new PrintWriter(w), true, 1);
+		} else if (publisher.equals("edge")) {
+			// level 0, as level 1 resolves host names
+			return new EdgeCSVPublisher(new PrintWriter(w),
+						    true, 0, true);
+		} else if (publisher.equals("hub")) {
+			Hub hub = new Hub(2);
+			hub.register(new XMLPublisher(new SimpleXMLWriter(
+				     new BufferedWriter(w)), true, 1));
+			hub.register(new EdgeCSVPublisher(
+				     new PrintWriter(new NullWriter()),
+				     true, 0, true));
+			return hub;
+		} else if (publisher.equals("recording")) {
+			return new RecordingPublisher();
+		} else if (publisher.equals("binary")) {
+			return new BinaryPublisher(new NullOutputStream(),
+						   true, 1);
+		} else if (publisher.equals("json")) {
+			return new JSONPublisher(new BufferedWriter(w),
+						 true, 1);
+		}
+		throw new ToolkitError("Unknown publisher "+publisher);
+	}
+
+
+	@Benchmark
+	public Publisher publish() throws IOException, ToolkitError {
+		Publisher p = newPublisher();
+
+		p.publishGlobalStart();
+		for (int i = 0;  i < targets.length;  i++) {
+			publishTarget(p, targets[i]);
+		}
+		p.publishGlobalEnd();
+		if (p instanceof RecordingPublisher) {
+			((RecordingPublisher)p).replay(new Publisher());
+		}
+		return p;
+	}
+
+
+	protected void publishTarget(Publisher p, URL[] hops)
+		throws IOException, ToolkitError {
+
+		p.publishStart(hops[0].toString());
+		for (int h = 0;  h < hops.length;  h++) {
+			boolean last = (h == hops.length-1);
+			p.publishStartResult(hops[0], hops[h],
+					     hops[h].getHost(), ip,
+					     (last) ? 200 : 301,
+					     (last) ? Publisher.REDIRNONE
+					            : Publisher.REDIRHTTP);
+			for (int k = 0;  k < HEADERS.length;  k++) {
+				p.publishElement(HEADERS[k][0], HEADERS[k][1],
+						 Publisher.HTTP);
+			}
+			if (last) {
+				for (int k = 0;  k < EQUIVS.length;  k++) {
+					p.publishElement(EQUIVS[k][0],
+							 EQUIVS[k][1],
+							 Publisher.EQUIV);
+				}
+			}
+			p.publishEndResult();
+			if (last) {
+				p.publishDestWithRedir(hops[h-1], hops[h],
+						       hops[h].getHost(), ip,
+						       false);
+			} else {
+				p.publishRedirect(hops[h], hops[h].getHost(),
+						  ip, hops[h+1], (h == 0),
+						  301);
+			}
+		}
+		p.publishEnd();
+	}
+
+
+	/* Writer discarding all output */
+	static class NullWriter extends Writer {
+
+		public void write(char[] cbuf, int off, int len) {
+			// nothing
+		}
+
+		public void write(String s, int off, int len) {
+			// nothing
+		}
+
+		public void flush() {
+			// nothing
+		}
+
+		public void close() {
+			// nothing
+		}
+	}
+
+
+	/* Stream discarding all output */
+	static class NullOutputStream extends OutputStream {
+
+		public void write(int b) {
+			// nothing
+		}
+
+		public void write(byte[] b, int off, int len) {
+			// nothing
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.bench;
+
+
+import java.io.CharArrayWriter;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.ukuehn.html.HtmlTokenizer;
+import net.ukuehn.html.TagToken;
+import net.ukuehn.html.TextToken;
+import net.ukuehn.html.Token;
+import net.ukuehn.xml.SimpleXMLWriter;
+import net.ukuehn.xml.XML;
+
+
+
+/* XML.encode on the strings found in a fixture page, either the
+ * attribute values or the text between tags, and writing them as
+ * attribute values with SimpleXMLWriter. Attribute values rarely
+ * need escaping, text often does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLBench {
+
+	@Param({"attributes", "text"})
+	public String input;
+
+	String[] strings;
+	CharArrayWriter out;
+	SimpleXMLWriter xw;
+
+
+	@Setup
+	public void setup() throws Exception {
+		ArrayList<String> l = new ArrayList<String>();
+		HtmlTokenizer ht
+			= new HtmlTokenizer(Fixtures.loadString("news.html"));
+		Token t = ht.nextToken();
+		while (t != null) {
+			if ((t instanceof TagToken) &&
+			    input.equals("attributes")) {
+				TagToken tt = (TagToken)t;
+				for (int i = 0;  i < tt.getAttrCount();  i++) {
+					l.add(tt.getValue(i));
+				}
+			} else if ((t instanceof TextToken) &&
+				   input.equals("text")) {
+				l.add(t.toString());
+			}
+			if (HtmlBench.needsNonHTMLParsingNext(t)) {
+				t = ht.nextTokenNonHTML();
+			} else {
+				t = ht.nextToken();
+			}
+		}
+		strings = l.toArray(new String[l.size()]);
+		out = new CharArrayWriter();
+		xw = new SimpleXMLWriter(out);
+	}
+
+
+	@Benchmark
+	public void encode(Blackhole bh) {
+		for (int i = 0;  i < strings.length;  i++) {
+			bh.consume(XML.encode(strings[i]));
+		}
+	}
+
+
+	@Benchmark
+	public void write(Blackhole bh) throws Exception {
+		out.reset();
+		xw.startElement("Strings");
+		for (int i = 0;  i < strings.length;  i++) {
+			xw.startElement("S");
+			xw.attribute("Value", strings[i]);
+			xw.endElement();
+		}
+		xw.endElement();
+		xw.flush();
+		bh.consume(out.size());
+	}
+
+}
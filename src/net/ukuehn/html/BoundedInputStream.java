@@ -0,0 +1,162 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.net.HttpURLConnection;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+
+/* Input stream enforcing the byte and time limits of ReadLimits on
+ * the body of a connection. When the byte limit is reached, the
+ * stream ends as if the document ended there. When the time is up,
+ * a watchdog drops the connection, so that even a read blocked on
+ * a stalling server returns at once.
+ */
+class BoundedInputStream extends FilterInputStream {
+
+	private static ScheduledExecutorService watchdog = null;
+
+	HttpURLConnection conn;
+	long maxBytes;
+	long count;
+	ScheduledFuture<?> timer;
+	volatile String limitMsg;
+
+
+	BoundedInputStream(InputStream in, HttpURLConnection c,
+			   ReadLimits limits) {
+		super(in);
+		conn = c;
+		maxBytes = limits.getMaxBytes();
+		count = 0;
+		timer = null;
+		limitMsg = null;
+		final long millis = limits.getMaxMillis();
+		if ((millis > 0) && (conn != null)) {
+			timer = getWatchdog().schedule(new Runnable() {
+					public void run() {
+						timeUp(millis);
+					}
+				}, millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	private static synchronized ScheduledExecutorService getWatchdog() {
+		if (watchdog == null) {
+			watchdog = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r,
+							    "wfat-watchdog");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return watchdog;
+	}
+
+
+	protected void timeUp(long millis) {
+		limitMsg = "Read time limit of "+String.valueOf(millis)
+			+" ms exceeded";
+		conn.disconnect();
+	}
+
+
+	/* Number of bytes read so far */
+	long getCount() {
+		return count;
+	}
+
+
+	/* Reason why reading was cut short, or null if it was not. */
+	String getLimitMessage() {
+		return limitMsg;
+	}
+
+
+	public int read() throws IOException {
+		if ((maxBytes > 0) && (count >= maxBytes)) {
+			return atLimit();
+		}
+		int c = super.read();
+		if (c >= 0) {
+			count += 1;
+		}
+		return c;
+	}
+
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (maxBytes > 0) {
+			if (count >= maxBytes) {
+				return atLimit();
+			}
+			len = (int)Math.min((long)len, maxBytes - count);
+		}
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count += n;
+		}
+		return n;
+	}
+
+
+	public long skip(long n) throws IOException {
+		byte[] b = new byte[(int)Math.min(n, 4096)];
+		int k = read(b, 0, b.length);
+		return (k < 0) ? 0 : k;
+	}
+
+
+	/* The limit is only exceeded if the document does not end
+	 * exactly there.
+	 */
+	protected int atLimit() throws IOException {
+		if ((limitMsg == null) && (super.read() >= 0)) {
+			limitMsg = "Read limit of "+String.valueOf(maxBytes)
+				+" bytes exceeded";
+		}
+		return -1;
+	}
+
+
+	public void close() throws IOException {
+		if (timer != null) {
+			timer.cancel(false);
+		}
+		super.close();
+	}
+
+}
@@ -21,6 +21,9 @@
 package net.ukuehn.html;
 
 
+import java.nio.charset.Charset;
+
+
 
 
 public class CommentToken extends Token {
@@ -30,8 +33,13 @@ public class CommentToken extends Token {
 	}
 
 
+	public CommentToken(String raw, Charset cs) {
+		super(raw, cs);
+	}
+
+
 	public String getComment() {
-		return htmlVal;
+		return toString();
 	}
 
 }
@@ -0,0 +1,75 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+
+
+/* Input stream counting the bytes read through it, i.e. the bytes
+ * of a body as they come over the wire, before any content decoding.
+ */
+class CountingInputStream extends FilterInputStream {
+
+	long count;
+
+
+	CountingInputStream(InputStream in) {
+		super(in);
+		count = 0;
+	}
+
+
+	long getCount() {
+		return count;
+	}
+
+
+	public int read() throws IOException {
+		int c = super.read();
+		if (c >= 0) {
+			count += 1;
+		}
+		return c;
+	}
+
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count += n;
+		}
+		return n;
+	}
+
+
+	public long skip(long n) throws IOException {
+		long k = super.skip(n);
+		if (k > 0) {
+			count += k;
+		}
+		return k;
+	}
+
+}
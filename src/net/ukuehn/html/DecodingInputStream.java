@@ -0,0 +1,147 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+
+/* Input stream undoing the content coding of an http body, as given
+ * by the Content-Encoding header. Supported are gzip and deflate,
+ * the latter with or without the zlib wrapper, as servers send
+ * both. The decoder is set up on the first read, as this already
+ * reads from the body.
+ */
+public class DecodingInputStream extends FilterInputStream {
+
+	protected static final int BUFFER_SIZE = 8192;
+
+	String encoding;
+	boolean started;
+
+
+	/* @param contentEncoding   value of the Content-Encoding header,
+	 *                          null for none
+	 */
+	public DecodingInputStream(InputStream in, String contentEncoding)
+		throws IOException {
+		super(in);
+		encoding = normalise(contentEncoding);
+		if (!isSupported(encoding)) {
+			throw new IOException("Unsupported content encoding "
+					      +contentEncoding);
+		}
+		started = false;
+	}
+
+
+	protected static String normalise(String enc) {
+		if (enc == null) {
+			return "identity";
+		}
+		enc = enc.trim().toLowerCase();
+		if (enc.length() == 0) {
+			return "identity";
+		}
+		return enc;
+	}
+
+
+	/* True if bodies with the given Content-Encoding can be read. */
+	public static boolean isSupported(String contentEncoding) {
+		String enc = normalise(contentEncoding);
+		return enc.equals("identity") || enc.equals("gzip")
+			|| enc.equals("x-gzip") || enc.equals("deflate");
+	}
+
+
+	protected void start() throws IOException {
+		if (started) {
+			return;
+		}
+		started = true;
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			in = new GZIPInputStream(in, BUFFER_SIZE);
+		} else if (encoding.equals("deflate")) {
+			// A zlib header has compression method 8 in the
+			// low bits of the first byte, and makes the first
+			// two bytes a multiple of 31.
+			PushbackInputStream pin
+				= new PushbackInputStream(in, 2);
+			byte[] hdr = new byte[2];
+			int n = 0;
+			while (n < 2) {
+				int k = pin.read(hdr, n, 2-n);
+				if (k < 0) {
+					break;
+				}
+				n += k;
+			}
+			pin.unread(hdr, 0, n);
+			int cmf = hdr[0] & 0xff;
+			int flg = hdr[1] & 0xff;
+			boolean zlib = (n == 2) && ((cmf & 0x0f) == 8)
+				&& (((cmf << 8) | flg) % 31 == 0);
+			in = new InflaterInputStream(pin, new Inflater(!zlib),
+						     BUFFER_SIZE);
+		}
+	}
+
+
+	public int read() throws IOException {
+		start();
+		return in.read();
+	}
+
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		start();
+		return in.read(b, off, len);
+	}
+
+
+	public long skip(long n) throws IOException {
+		start();
+		return in.skip(n);
+	}
+
+
+	public int available() throws IOException {
+		if (!started) {
+			return 0;
+		}
+		return in.available();
+	}
+
+
+	public boolean markSupported() {
+		return false;
+	}
+
+}
@@ -35,36 +35,81 @@ import net.ukuehn.util.Debug;
 
 
 
+/* All tokens of a document, for consumers that need to go over
+ * them more than once, or need to look ahead. The tokens are taken
+ * from a TokenCursor.
+ */
 public class HtmlBuffer {
 
-	HtmlTokenizer ht;
 	ArrayList<Token> docTokens;
 	boolean haveAllTokens;
+	boolean truncated;
+	String limitMsg;
 
 	public HtmlBuffer() {
-		ht = null;
 		haveAllTokens = true;
+		truncated = false;
+		limitMsg = null;
 		docTokens = new ArrayList<Token>();
 	}
 
 
 	public HtmlBuffer(HttpURLConnection conn)
 		throws ParserException {
-		ht = new HtmlTokenizer(conn);
-		haveAllTokens = false;
-		//docTokens = new ArrayList<Token>();
-		docTokens = getDocumentTokens();
-		close();
+		this(conn, false, ReadLimits.DEFAULT);
 	}
 
 
-	public void close() {
-		haveAllTokens = true;
+	/* If headOnly is set, reading stops after the head section of
+	 * the document, i.e. at </head> or at the first <body>, and
+	 * the connection is dropped. Use when only the meta tags are
+	 * of interest.
+	 * If one of the read limits is exceeded, the document is
+	 * truncated at that point, see getLimitMessage().
+	 */
+	public HtmlBuffer(HttpURLConnection theConn, boolean headOnly,
+			  ReadLimits theLimits)
+		throws ParserException {
+		this(new TokenCursor(theConn, headOnly, theLimits));
+	}
+
+
+	/* Take all remaining tokens from the given cursor. */
+	public HtmlBuffer(TokenCursor tc) throws ParserException {
+		haveAllTokens = false;
+		docTokens = new ArrayList<Token>();
 		try {
-			ht.close();
-		} catch (Exception e) {
-			// ignore
+			while (tc.hasNext()) {
+				docTokens.add(tc.next());
+			}
+			tc.checkException();
+		} finally {
+			tc.close();
 		}
+		truncated = tc.isTruncated();
+		limitMsg = tc.getLimitMessage();
+		haveAllTokens = true;
+	}
+
+
+	public void close() {
+		// nothing, the cursor is closed once all tokens are read
+	}
+
+
+	/* True if the document was not read completely, as reading
+	 * stopped at the end of the head section.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+
+	/* Reason why the document was cut short by the read limits,
+	 * or null if it was not.
+	 */
+	public String getLimitMessage() {
+		return limitMsg;
 	}
 
 
@@ -95,67 +140,4 @@ public class HtmlBuffer {
 	}
 
 
-	protected boolean needsNonHTMLParsingNext(Token t) {
-		if (t instanceof TagToken) {
-			TagToken tt = (TagToken)t;
-			if (tt.getName().equalsIgnoreCase("script")) {
-				return true;
-			}
-			if (tt.getName().equalsIgnoreCase("style")) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-
-	protected ArrayList<Token> getDocumentTokens()
-		throws ParserException {
-
-		ArrayList<Token> tokens = new ArrayList<Token>();
-
-		if (Debug.get(Debug.HToken)) {
-			System.err.println("getDocumentTokens()");
-		}
-
-		Token t = ht.nextToken();
-		while (t != null) {
-			tokens.add(t);
-			if (Debug.get(Debug.HToken)) {
-				debugToken(t);
-			}
-			if (needsNonHTMLParsingNext(t)) {
-				t = ht.nextTokenNonHTML();
-			} else {
-				t = ht.nextToken();
-			}
-		}
-
-		return tokens;
-	}
-
-
-	protected void debugToken(Token t) {
-
-		if (t instanceof TagToken) {
-			TagToken tt = (TagToken)t;
-			System.err.print("HtmlBuffer: Found tag "
-					 +tt.getName()+": '");
-			for (int i = 0;  i < tt.getAttrCount();  i++) {
-				if (i > 0) {
-					System.err.print(" ");
-				}
-				System.err.print(tt.getAttr(i)
-						 +"=\""
-						 +tt.getValue(i)
-						 +"\"");
-			}
-			System.err.println("'");
-		} else {
-			System.err.println("HtmlBuffer: " + t.toString());
-		}
-		System.err.println();
-	}
-
-
 }
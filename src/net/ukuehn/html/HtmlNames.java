@@ -0,0 +1,145 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+
+/* Canonical instances of the known tag names, in lower case. The
+ * tokenizer maps the name of each tag to one of these instances
+ * if possible, see TagToken.getCanonicalName(), so that names can
+ * be compared by reference.
+ */
+public class HtmlNames {
+
+	public static final String DOCTYPE = "!doctype";
+	public static final String HTML = "html";
+	public static final String HEAD = "head";
+	public static final String END_HEAD = "/head";
+	public static final String BODY = "body";
+	public static final String META = "meta";
+	public static final String BASE = "base";
+	public static final String SCRIPT = "script";
+	public static final String END_SCRIPT = "/script";
+	public static final String STYLE = "style";
+	public static final String END_STYLE = "/style";
+	public static final String IFRAME = "iframe";
+	public static final String END_IFRAME = "/iframe";
+	public static final String FRAME = "frame";
+	public static final String OBJECT = "object";
+	public static final String EMBED = "embed";
+	public static final String APPLET = "applet";
+	public static final String LINK = "link";
+
+	/* Further names that are common enough to be worth a table
+	 * entry. Closing tags are added for all names.
+	 */
+	static final String[] common = {
+		"a", "abbr", "address", "area", "article", "aside", "audio",
+		"b", "big", "blockquote", "br", "button", "canvas",
+		"caption", "center", "cite", "code", "col", "colgroup",
+		"dd", "del", "dfn", "div", "dl", "dt", "em", "fieldset",
+		"figcaption", "figure", "font", "footer", "form",
+		"frameset", "h1", "h2", "h3", "h4", "h5", "h6", "header",
+		"hr", "i", "img", "input", "ins", "kbd", "label", "legend",
+		"li", "main", "map", "nav", "noframes", "noscript", "ol",
+		"optgroup", "option", "p", "param", "pre", "q", "s",
+		"samp", "section", "select", "small", "source", "span",
+		"strike", "strong", "sub", "sup", "table", "tbody", "td",
+		"textarea", "tfoot", "th", "thead", "time", "title", "tr",
+		"tt", "u", "ul", "var", "video",
+	};
+
+	static final int TABLE_SIZE = 512;
+	static final String[] table = new String[TABLE_SIZE];
+
+	static {
+		String[] named = {
+			DOCTYPE, HTML, HEAD, END_HEAD, BODY, META, BASE,
+			SCRIPT, END_SCRIPT, STYLE, END_STYLE, IFRAME,
+			END_IFRAME, FRAME, OBJECT, EMBED, APPLET, LINK,
+		};
+		// the named instances first, so that the table holds
+		// the constants, not the closing tags made below
+		for (int i = 0;  i < named.length;  i++) {
+			add(named[i]);
+		}
+		for (int i = 0;  i < named.length;  i++) {
+			if (!named[i].startsWith("/") &&
+			    !named[i].startsWith("!")) {
+				add("/"+named[i]);
+			}
+		}
+		for (int i = 0;  i < common.length;  i++) {
+			add(common[i]);
+			add("/"+common[i]);
+		}
+	}
+
+
+	private HtmlNames() {
+	}
+
+
+	/* Hash of s[start..end), ignoring the case of ASCII letters */
+	static int hash(CharSequence s, int start, int end) {
+		int h = 0;
+		for (int i = start;  i < end;  i++) {
+			h = 31*h + (s.charAt(i) | 0x20);
+		}
+		return h ^ (h >>> 16);
+	}
+
+
+	static void add(String name) {
+		int i = hash(name, 0, name.length()) & (TABLE_SIZE-1);
+		while (table[i] != null) {
+			if (table[i].equals(name)) {
+				return;
+			}
+			i = (i+1) & (TABLE_SIZE-1);
+		}
+		table[i] = name;
+	}
+
+
+	/* Return the canonical instance of the name s[start..end),
+	 * ignoring case, or null if the name is not known.
+	 */
+	public static String lookup(String s, int start, int end) {
+		int len = end - start;
+		int i = hash(s, start, end) & (TABLE_SIZE-1);
+		String n;
+		while ((n = table[i]) != null) {
+			if ((n.length() == len) &&
+			    s.regionMatches(true, start, n, 0, len)) {
+				return n;
+			}
+			i = (i+1) & (TABLE_SIZE-1);
+		}
+		return null;
+	}
+
+
+	public static String lookup(String s) {
+		return lookup(s, 0, s.length());
+	}
+
+}
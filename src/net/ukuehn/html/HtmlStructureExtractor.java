@@ -45,9 +45,12 @@ package net.ukuehn.html;
 
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Iterator;
 import java.util.Arrays;
+import java.security.MessageDigest;
+import java.util.concurrent.Future;
 
 import org.xml.sax.SAXException;
 import java.net.URL;
@@ -61,16 +64,38 @@ import net.ukuehn.wfat.ConnectionHandler;
 import net.ukuehn.wfat.Digester;
 
 
-public class HtmlStructureExtractor {
+public class HtmlStructureExtractor implements TokenVisitor {
 
 	private String dbgPref = "HSE";
 
 	private HtmlBuffer html;
+	private TokenCursor cursor;
 	private URL htmlSrc;
 	private URL baseUrl;
 	private ConnectionHandler hc;
 	private Digester d;
+	// the elements are only kept for debugging, otherwise they
+	// go into the hash as soon as they are found
 	LinkedList<StructElem> structure;
+	// elements waiting for a script to be fetched, so that they
+	// are hashed in document order
+	LinkedList<StructElem> deferred;
+	private ScriptCache scripts;
+	private boolean completed;
+	private MessageDigest hashMd;
+	private StructHasher hasher;
+	private String structHash;
+	private int elemCount;
+	private MinHash minHash;
+
+	/* State while collecting the contents of an element */
+	private TagToken flatStart;
+	private String flatEndName;
+	private StringBuilder flatText;
+	// digest of a script's contents, reused for all scripts
+	private MessageDigest scriptMd;
+	private StructHasher scriptHasher;
+	private boolean hashFlat;
 
 
 	// Make sure these names remain sorted!
@@ -99,7 +124,8 @@ public class HtmlStructureExtractor {
 	public HtmlStructureExtractor(HttpURLConnection conn,
 				      ConnectionHandler h, Digester dgst)
 		throws ParserException {
-		html = new HtmlBuffer(conn);
+		html = null;
+		cursor = new TokenCursor(conn, false, ReadLimits.DEFAULT);
 		htmlSrc = conn.getURL();
 		hc = h;
 		baseUrl = htmlSrc;
@@ -111,6 +137,37 @@ public class HtmlStructureExtractor {
 	public HtmlStructureExtractor(HtmlBuffer hb, URL u,
 				      ConnectionHandler h, Digester dgst) {
 		html = hb;
+		cursor = null;
+		htmlSrc = u;
+		hc = h;
+		baseUrl = htmlSrc;
+		d = dgst;
+		structure = null;
+	}
+
+
+	/* Extract from the tokens of the cursor in a single pass. The
+	 * cursor is used up afterwards, so extract() works only once.
+	 */
+	public HtmlStructureExtractor(TokenCursor tc, URL u,
+				      ConnectionHandler h, Digester dgst) {
+		html = null;
+		cursor = tc;
+		htmlSrc = u;
+		hc = h;
+		baseUrl = htmlSrc;
+		d = dgst;
+		structure = null;
+	}
+
+
+	/* Extract as one of the visitors of a TokenDispatcher. Call
+	 * complete() after the pass.
+	 */
+	public HtmlStructureExtractor(URL u,
+				      ConnectionHandler h, Digester dgst) {
+		html = null;
+		cursor = null;
 		htmlSrc = u;
 		hc = h;
 		baseUrl = htmlSrc;
@@ -151,79 +208,293 @@ public class HtmlStructureExtractor {
 
 
 	public void extract() throws ParserException {
-		Token t;
-		TagToken tt;
-		Iterator<Token> it;
 
 		if (Debug.get(Debug.HTML)) {
 			System.err.println(dbgPref+"()");
 		}
 
-		structure = new LinkedList<StructElem>();
-		it = html.iterator();
-		while (it.hasNext()) {
-			t = it.next();
+		TokenDispatcher td = new TokenDispatcher();
+		td.add(this);
+		if (html != null) {
+			td.run(html.iterator());
+		} else {
+			td.run(cursor);
+		}
+		complete();
+	}
 
-			if (!(t instanceof TagToken)) {
-				// Ignore all TextToken,
-				// CDATAToken, CommenToken
-				continue;
-			}
-			tt = (TagToken)t;
 
-			if (Debug.get(Debug.HTMLDetail)) {
-				System.err.println(dbgPref
-						   +".extract: Found tag <"
-						   +tt.getName()+">");
-			}
+	public void register(TokenDispatcher td) {
+		if (Debug.get(Debug.HTML)) {
+			structure = new LinkedList<StructElem>();
+		} else {
+			structure = null;
+		}
+		deferred = null;
+		completed = false;
+		hashMd = d.getDigester();
+		hasher = new StructHasher(hashMd);
+		scriptMd = null;
+		scriptHasher = null;
+		structHash = null;
+		elemCount = 0;
+		minHash = new MinHash();
+		flatStart = null;
+		td.registerTag(this, HtmlNames.DOCTYPE);
+		td.registerTag(this, HtmlNames.BASE);
+		td.registerTag(this, HtmlNames.SCRIPT);
+		td.registerTag(this, HtmlNames.IFRAME);
+		td.registerTag(this, HtmlNames.FRAME);
+		// for all other tags only intrinsic events are of interest
+		for (int i = 0;  i < intrinsic.length;  i++) {
+			td.registerAttribute(this, intrinsic[i]);
+		}
+	}
 
-			String tn = tt.getName().toLowerCase();
-			if (tn.equals("!doctype")) {
-				// handle doctype tag
-				StructElem e
-					= extractDoctypeElement(tt, it); 
-				structure.add(e);
-			} else if (tn.equals("base")) {
-				// Handle base tag
-				StructElem e = extractBaseElement(tt, it);
-				structure.add(e);
-			} else if (tn.equals("script")) {
-				// handle script element
-				StructElem e = extractScriptElement(tt, it);
-				structure.add(e);
-			} else if (tn.equals("style")) {
-				// Handle style element
-			} else if (tn.equals("iframe")) {
-				// Handle iframe element
-				StructElem e = extractIFrameElement(tt, it);
-				structure.add(e);
-			} else if (tn.equals("frame")) {
-				// Handle frame element
-			} else if (tn.equals("object")) {
-				// Handle object element
-			} else if (tn.equals("embed")) {
-				// Handle embed element
-			} else if (tn.equals("applet")) {
-				// Handle applet element
-			} else {
-				// for all other tags handle intrinsic events
-				LinkedList<StructElem> le 
-					= extractEvents(tt, it);
-				structure.addAll(le);
+
+	public void visit(Token t, TokenDispatcher td) {
+		TagToken tt;
+
+		if (flatStart != null) {
+			collectFlatElement(t, td);
+			return;
+		}
+		if (!(t instanceof TagToken)) {
+			// Ignore all TextToken,
+			// CDATAToken, CommenToken
+			return;
+		}
+		tt = (TagToken)t;
+
+		if (Debug.get(Debug.HTMLDetail)) {
+			System.err.println(dbgPref
+					   +".extract: Found tag <"
+					   +tt.getName()+">");
+		}
+
+		// known names are the instances from HtmlNames
+		String tn = tt.getCanonicalName();
+		if (tn == HtmlNames.DOCTYPE) {
+			// handle doctype tag
+			StructElem e = extractDoctypeElement(tt);
+			addElement(e);
+		} else if (tn == HtmlNames.BASE) {
+			// Handle base tag
+			StructElem e = extractBaseElement(tt);
+			addElement(e);
+		} else if (tn == HtmlNames.SCRIPT) {
+			// handle script element, once its contents
+			// is collected
+			startFlatElement(tt, td);
+		} else if (tn == HtmlNames.STYLE) {
+			// Handle style element
+		} else if (tn == HtmlNames.IFRAME) {
+			// Handle iframe element, once its contents
+			// is collected
+			startFlatElement(tt, td);
+		} else if (tn == HtmlNames.FRAME) {
+			// Handle frame element
+			addElement(new StructFrame(tt, sourceUrl(tt)));
+		} else if (tn == HtmlNames.OBJECT) {
+			// Handle object element
+		} else if (tn == HtmlNames.EMBED) {
+			// Handle embed element
+		} else if (tn == HtmlNames.APPLET) {
+			// Handle applet element
+		} else {
+			// for all other tags handle intrinsic events
+			LinkedList<StructElem> le = extractEvents(tt);
+			Iterator<StructElem> ei = le.iterator();
+			while (ei.hasNext()) {
+				addElement(ei.next());
 			}
 		}
+	}
+
 
+	public void end() {
+		if (flatStart != null) {
+			// document ended within the element
+			endFlatElement(null);
+		}
+	}
+
+
+	/* Fetch the external scripts through the given cache, and hash
+	 * their contents instead of only their URL.
+	 */
+	public void setScriptCache(ScriptCache cache) {
+		scripts = cache;
+	}
 
+
+	/* Work that has to wait until it is clear that the document
+	 * is needed, i.e. retrieving the scripts and frames it points
+	 * to. The elements from the first such source on are hashed
+	 * here.
+	 */
+	public void complete() {
+		if (completed) {
+			return;
+		}
+		completed = true;
+		if (deferred != null) {
+			fetchSources();
+			Iterator<StructElem> di = deferred.iterator();
+			while (di.hasNext()) {
+				hashElement(di.next());
+			}
+			deferred = null;
+		}
+
+		if (structure == null) {
+			return;
+		}
 		Iterator<StructElem> ei = structure.iterator();
 		while (ei.hasNext()) {
 			StructElem e = ei.next();
-			if (e != null) {
-				System.err.println(e.digestInput(d));
+			System.err.println(e.digestInput(d));
+		}
+		System.err.println(dbgPref+": structural hash "
+				   +getStructHash()+" over "
+				   +getElementCount()+" elements");
+	}
+
+
+	/* The structural hash of the document as hex string. The hash
+	 * is finished on the first call, so call it only after the
+	 * whole document has been seen. The digests go back to the
+	 * Digester then.
+	 */
+	public String getStructHash() {
+		complete();
+		if (structHash == null) {
+			elemCount = hasher.getElementCount();
+			structHash = hasher.digestHex();
+			d.release(hashMd);
+			d.release(scriptMd);
+			hashMd = null;
+			scriptMd = null;
+			scriptHasher = null;
+		}
+		return structHash;
+	}
+
+
+	public String getAlgorithm() {
+		return hasher.getAlgorithm();
+	}
+
+
+	/* Number of elements that went into the structural hash. */
+	public int getElementCount() {
+		getStructHash();
+		return elemCount;
+	}
+
+
+	/* MinHash signature over the same elements as the structural
+	 * hash, for finding documents with almost the same structure.
+	 */
+	public int[] getSignature() {
+		complete();
+		return minHash.getSignature();
+	}
+
+
+	protected void addElement(StructElem e) {
+		if (e == null) {
+			return;
+		}
+		if ((deferred == null) && needsFetch(e)) {
+			deferred = new LinkedList<StructElem>();
+		}
+		if (deferred != null) {
+			deferred.add(e);
+		} else {
+			hashElement(e);
+		}
+	}
+
+
+	protected boolean needsFetch(StructElem e) {
+		return (scripts != null) && (e.getFetchSource() != null);
+	}
+
+
+	/* Fetch the sources of the deferred elements at the same time,
+	 * but at most as many at once as the cache allows for a page.
+	 * The results are taken in document order. Once the time for
+	 * the page is up, no more fetches are started and only the
+	 * results already there are taken. The elements of the others
+	 * are hashed by URL only.
+	 */
+	protected void fetchSources() {
+		ArrayList<StructElem> l = new ArrayList<StructElem>();
+		Iterator<StructElem> di = deferred.iterator();
+		while (di.hasNext()) {
+			StructElem e = di.next();
+			if (needsFetch(e)) {
+				l.add(e);
+			}
+		}
+		int n = l.size();
+		int limit = scripts.getPageLimit();
+		long millis = scripts.getPageMillis();
+		long deadline = System.currentTimeMillis() + millis;
+		ArrayList<Future<byte[]>> fl
+			= new ArrayList<Future<byte[]>>(n);
+		int missed = 0;
+		for (int i = 0;  i < n;  i++) {
+			long left = deadline - System.currentTimeMillis();
+			boolean late = (millis > 0) && (left <= 0);
+			// keep up to limit fetches under way
+			while (!late && (fl.size() < n)
+			       && (fl.size() < i+limit)) {
+				StructElem e = l.get(fl.size());
+				fl.add(scripts.getAsync(
+					       sourceUrl(e.getFetchSource())));
+			}
+			byte[] digest = null;
+			if (i >= fl.size()) {
+				// never started
+			} else if (late) {
+				digest = ScriptCache.result(fl.get(i), 0);
+			} else if (millis > 0) {
+				digest = ScriptCache.result(fl.get(i), left);
 			} else {
-				System.err.println("(null)");
+				digest = ScriptCache.result(fl.get(i));
 			}
+			if ((digest == null) && (millis > 0)
+			    && (deadline <= System.currentTimeMillis())) {
+				missed += 1;
+			}
+			l.get(i).setContentDigest(digest);
+		}
+		if ((missed > 0) && Debug.get(Debug.HTML)) {
+			System.err.println(dbgPref+": time for sources is up, "
+					   +String.valueOf(missed)
+					   +" left out");
 		}
+	}
+
 
+	protected static URL sourceUrl(String s) {
+		try {
+			return new URL(s);
+		} catch (MalformedURLException e) {
+			// cannot happen, made from an URL
+			return null;
+		}
+	}
+
+
+	protected void hashElement(StructElem e) {
+		e.digestTo(hasher);
+		minHash.add(e);
+		if (structure != null) {
+			structure.add(e);
+		}
 	}
 
 
@@ -234,7 +505,7 @@ public class HtmlStructureExtractor {
 
 
 	protected LinkedList<StructElem>
-		extractEvents(TagToken t, Iterator<Token> it) {
+		extractEvents(TagToken t) {
 		String attr, val;
 		LinkedList<StructElem> res = new LinkedList<StructElem>();
 		if (Debug.get(Debug.HTML)) {
@@ -257,8 +528,7 @@ public class HtmlStructureExtractor {
 	}
 
 
-	protected StructElem extractDoctypeElement(TagToken startToken,
-						   Iterator<Token> it) {
+	protected StructElem extractDoctypeElement(TagToken startToken) {
 		if (Debug.get(Debug.HTML)) {
 			System.err.println("extractDoctypeElement: "
 					   +startToken.toString());
@@ -268,8 +538,7 @@ public class HtmlStructureExtractor {
 	}
 
 
-	protected StructElem extractBaseElement(TagToken startToken,
-					  Iterator<Token> it) {
+	protected StructElem extractBaseElement(TagToken startToken) {
 		if (Debug.get(Debug.HTML)) {
 			System.err.println("extractBaseElement: "
 					   +startToken.toString());
@@ -299,14 +568,11 @@ public class HtmlStructureExtractor {
 
 
 	protected StructElem extractScriptElement(TagToken startToken,
-						  Iterator<Token> it) {
-		TagToken endToken = null;
-		StringBuilder sb = new StringBuilder();
-		LinkedList<Token> et = new LinkedList<Token>();
+						  TagToken endToken,
+						  StringBuilder sb,
+						  byte[] contentDigest) {
 		StructElem res = null;
 
-		endToken = collectFlatElement(startToken, it, sb, et);
-
 		int srcAttrIdx = startToken.attrIndex("src");
 		String src = startToken.getValue(srcAttrIdx);
 		URL srcUrl = null;
@@ -331,21 +597,11 @@ public class HtmlStructureExtractor {
 		if (srcUrl == null) {
 			sc = new StructScript(startToken, endToken,
 					      StructScript.ELEMENT,
-					      sb.toString());
+					      (sb != null) ? sb.toString()
+							   : null,
+					      contentDigest);
 		} else {
-			// retrieve the url and hash pointed to
-			// document. If that doesn't work, hash
-			// url.
-			HttpURLConnection conn = null;
-			try {
-				conn = hc.prepareConnection(srcUrl, true);
-			} catch (IOException e) {
-				// ignore
-			}
-			if (conn != null) {
-				conn.disconnect();
-			}
-			
+			// retrieved in complete()
 			if (srcUrl != null) {
 				sc = new StructScript(startToken, endToken,
 						      StructScript.SOURCED,
@@ -367,81 +623,111 @@ public class HtmlStructureExtractor {
 	 * run a non-recursive extractor.
 	 */
 	protected StructElem extractIFrameElement(TagToken startToken,
-						  Iterator<Token> it) {
-
-		TagToken endToken = null;
-		StringBuilder sb = new StringBuilder();
-		LinkedList<Token> et = new LinkedList<Token>();
+						  TagToken endToken,
+						  StringBuilder sb) {
+		return new StructFrame(startToken, sourceUrl(startToken));
+	}
 
-		endToken = collectFlatElement(startToken, it, sb, et);
 
-		int srcAttrIdx = startToken.attrIndex("src");
-		String src = startToken.getValue(srcAttrIdx);
-		URL srcUrl = null;
+	/* The absolute URL given by the src attribute of the tag, or
+	 * null if there is none.
+	 */
+	protected URL sourceUrl(TagToken t) {
+		String src = t.getValue(t.attrIndex("src"));
+		if (src == null) {
+			return null;
+		}
 		try {
-			srcUrl = new URL(htmlSrc, src);
+			return new URL(htmlSrc, src);
 		} catch (MalformedURLException e) {
-			srcUrl = null;
+			return null;
 		}
-		return null;
 	}
 
 
 	/* Extract an element that cannot contain itself as a sibling from
-	 * the stream of tokens.
+	 * the stream of tokens. The element starts with the given
+	 * opening tag. All following tokens up to the closing tag are
+	 * captured from the dispatcher and collected by
+	 * collectFlatElement(). Once the element is complete,
+	 * endFlatElement() adds it to the structure.
 	 *
 	 * @param startToken    opening tag of the element
-	 * @param it            iterator for getting more tokens from the
-	 *                      HTML document
-	 * @param elemText      output parameter to be filled with the
-	 *                      element's contents. The start and end tags
-	 *                      are not included here.
-	 * @param et            output parameter that collects all tokens
-	 *                      belonging to the element, including start
-	 *                      and end tags.
-	 * @returns             the token ending the element. It is also
-	 *                      the last token in @param et.
+	 * @param td            the dispatcher to capture tokens from
 	 */
-	protected TagToken collectFlatElement(TagToken startToken,
-					  Iterator<Token> it,
-					  StringBuilder elemText,
-					  LinkedList<Token> et) {
-		Token t;
-		TagToken tt;
-		TagToken endToken = null;
-		String endName = "/"+startToken.getName();
+	protected void startFlatElement(TagToken startToken,
+					TokenDispatcher td) {
 
 		if (Debug.get(Debug.HTML)) {
 			System.err.println("extractFlatElement: "					   +startToken.toString());
 		}
 
-		// Collect everything that belongs to this element
-		et.add(startToken);
-		while (it.hasNext()) {
-			t = it.next();
-			et.add(t);
+		flatStart = startToken;
+		// only scripts and iframes are collected
+		flatEndName = (startToken.getCanonicalName()
+			       == HtmlNames.SCRIPT)
+			? HtmlNames.END_SCRIPT : HtmlNames.END_IFRAME;
+		// the element's contents. The start and end tags
+		// are not included here. The text is kept for
+		// debugging only, a script's contents is hashed
+		// while it is read.
+		flatText = null;
+		if (Debug.get(Debug.HTML)) {
+			flatText = new StringBuilder();
+		}
+		hashFlat = (startToken.getCanonicalName()
+			    == HtmlNames.SCRIPT);
+		if (hashFlat && (scriptHasher == null)) {
+			scriptMd = d.getDigester();
+			scriptHasher = new StructHasher(scriptMd);
+		}
+		td.capture(this);
+	}
+
+
+	protected void collectFlatElement(Token t, TokenDispatcher td) {
+		TagToken tt;
+
+		if (Debug.get(Debug.HTMLDetail)) {
+			System.err.println(t.toString());
+		}
+		if (t instanceof TagToken) {
+			tt = (TagToken)t;
 			if (Debug.get(Debug.HTMLDetail)) {
-				System.err.println(t.toString());
+				System.err.println(dbgPref
+					+".extractFlatElement: "
+					+"Found tag "
+					+tt.getName()+": ");
 			}
-			if (t instanceof TagToken) {
-				tt = (TagToken)t;
-				if (Debug.get(Debug.HTMLDetail)) {
-					System.err.println(dbgPref
-						+".extractFlatElement: "
-						+"Found tag "
-						+tt.getName()+": ");
-				}
-				if (tt.getName().equalsIgnoreCase(endName)) {
-					endToken = tt;
-					break;
-				}
+			if (tt.getCanonicalName() == flatEndName) {
+				td.release(this);
+				endFlatElement(tt);
+				return;
 			}
-			// Collect the contents from all tokens before
-			// the closing tag </script>.
-			// Do it here as we will not get here if we are
-			// handling the closing tag.
-			elemText.append(t.toString());
 		}
+		// Collect the contents from all tokens before
+		// the closing tag </script>.
+		// Do it here as we will not get here if we are
+		// handling the closing tag.
+		if (hashFlat) {
+			scriptHasher.append(t.toString());
+		}
+		if (flatText != null) {
+			flatText.append(t.toString());
+		}
+	}
+
+
+	/* @param endToken      the token ending the element, or null if
+	 *                      the document ended before. It is also
+	 *                      the last token collected.
+	 */
+	protected void endFlatElement(TagToken endToken) {
+		TagToken startToken = flatStart;
+		StringBuilder elemText = flatText;
+
+		flatStart = null;
+		flatText = null;
 		if (Debug.get(Debug.HTML)) {
 			System.err.println(dbgPref+".extractFltElement "
 					   +"==============");
@@ -450,7 +736,16 @@ public class HtmlStructureExtractor {
 					   +((endToken!=null)
 					     ?endToken.toString():""));
 		}
-		return endToken;
+		StructElem e;
+		if (hashFlat) {
+			e = extractScriptElement(startToken, endToken,
+						 elemText,
+						 scriptHasher.digest());
+		} else {
+			e = extractIFrameElement(startToken, endToken,
+						 elemText);
+		}
+		addElement(e);
 	}
 
 
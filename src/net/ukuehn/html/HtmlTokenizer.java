@@ -27,25 +27,74 @@ import java.nio.charset.Charset;
 import java.net.URLConnection;
 import java.net.HttpURLConnection;
 import java.util.StringTokenizer;
-import java.util.LinkedList;
-import java.lang.StringBuilder;
 
 import net.ukuehn.util.Debug;
 
 
 
 
+/* Tokenizer for html documents.
+ *
+ * The input is read in blocks into a character window. Scanning
+ * works on indices into the window, and lookahead simply moves the
+ * index back. Line endings "\r\n" and "\r" are normalised to "\n"
+ * when a block is read. The window keeps all characters from the
+ * start of the current token, so the text of a token is cut from
+ * the window only once the token is complete.
+ *
+ * Markup only uses ASCII characters. So if the charset of the
+ * document is ASCII compatible, the bytes are put into the window
+ * as they are, one char per byte, without going through a decoder.
+ * The tokens then carry the charset and decode their text only
+ * when it is used, see Token.
+ *
+ * A body with Content-Encoding gzip or deflate is decoded while it
+ * is read, see DecodingInputStream.
+ */
 public class HtmlTokenizer {
 
 	public static final String DEFAULT_CONTENT_TYPE = "text/html";
 	public static final String DEFAULT_CHARSET_NAME= "ISO-8859-1";
 	public static final int EOF = -1;
 
+	protected static final int WINDOW_SIZE = 8192;
+
 
 	protected InputStream is;
-	protected PushbackReader in;
+	protected CountingInputStream wire;
+	protected BoundedInputStream bis;
+	protected Reader in;
 	protected boolean eof;
 
+	/* In byte mode, the input is read into bytes instead of through
+	 * the reader in. Tokens are then in charset, or already decoded
+	 * if charset is null.
+	 */
+	protected byte[] bytes;
+	protected Charset charset;
+
+	/* The character window. Valid characters are buf[0..lim),
+	 * the next character to scan is buf[pos], and the current
+	 * token starts at buf[tokStart].
+	 */
+	protected char[] buf;
+	protected int pos;
+	protected int lim;
+	protected int tokStart;
+	protected boolean inputDone;
+	protected boolean skipLF;
+	protected boolean lastEOF;
+
+	/* Offsets of the parts of the current tag, relative to the
+	 * token start, see addPart()
+	 */
+	protected int[] parts;
+	protected int nParts;
+
+	/* Debug flags, fixed when the tokenizer is created */
+	protected boolean dbgToken;
+	protected boolean dbgDetail;
+
 	/* This number is a position within the scanned document.
 	 * As it is used in exceptions, make it human-readable
 	 * by starting at 1.
@@ -54,27 +103,35 @@ public class HtmlTokenizer {
 
 
 	public HtmlTokenizer() {
-		is = null;
-		in = new PushbackReader(new StringReader(""), 8);
-		eof = false;
-		lineNo = 1;
+		this("");
 	}
 
 
 	public HtmlTokenizer(HttpURLConnection conn)
 		throws ParserException {
+		this(conn, ReadLimits.NONE);
+	}
 
-		eof = false;
-		lineNo = 1;
+
+	/* Tokenize the body of the given connection, reading no more
+	 * than the given limits allow.
+	 */
+	public HtmlTokenizer(HttpURLConnection conn, ReadLimits limits)
+		throws ParserException {
+
+		init(new char[WINDOW_SIZE], 0);
+		wire = null;
+		bis = null;
 		String ctypeStr = conn.getContentType();
 		String contentEnc = conn.getContentEncoding();
 
 		String contentType = getContentType(ctypeStr);
 		String charsetName = getCharsetName(ctypeStr);
 
-		if (Debug.get(Debug.HToken)) {
+		if (dbgToken) {
 			System.err.println("content-type: "+contentType);
 			System.err.println("charset: "+charsetName);
+			System.err.println("content-encoding: "+contentEnc);
 		}
 
 		if (!contentType.equalsIgnoreCase("text/html")) {
@@ -82,30 +139,118 @@ public class HtmlTokenizer {
 						  +contentType
 						  +", text/html expected.");
 		}
+		if (!DecodingInputStream.isSupported(contentEnc)) {
+			throw new ParserException("Unsupported content "
+						  +"encoding "+contentEnc
+						  +".");
+		}
 
 		try {
 			is = conn.getInputStream();
-			InputStreamReader isr
-				= new InputStreamReader(is, charsetName);
-			BufferedReader br = new BufferedReader(isr);
-			in = new PushbackReader(br, 8);
+			// the limits apply to the decoded body
+			wire = new CountingInputStream(is);
+			bis = new BoundedInputStream(
+				    new DecodingInputStream(wire, contentEnc),
+				    conn, limits);
+			Charset cs = Charset.forName(charsetName);
+			if (isAsciiCompatible(cs)) {
+				in = null;
+				bytes = new byte[WINDOW_SIZE];
+				if (!cs.name().equals(DEFAULT_CHARSET_NAME)) {
+					charset = cs;
+				}
+			} else {
+				in = new InputStreamReader(bis, cs);
+			}
 		} catch (IOException e) {
 			throw new ParserException("Cannot setup input.");
 		}
+		if (dbgToken) {
+			System.err.println("byte mode: "
+					   +String.valueOf(bytes != null));
+		}
 	}
 
 
 	public HtmlTokenizer(String htmlParm) {
+		init(new char[WINDOW_SIZE], 0);
+		is = null;
+		wire = null;
+		bis = null;
+		in = new StringReader(htmlParm);
+	}
+
+
+	protected void init(char[] b, int len) {
+		bytes = null;
+		charset = null;
 		eof = false;
 		lineNo = 1;
-		is = null;
-		StringReader sr = new StringReader(htmlParm);
-		in = new PushbackReader(sr, 8);
+		buf = b;
+		pos = 0;
+		lim = len;
+		tokStart = 0;
+		inputDone = false;
+		skipLF = false;
+		lastEOF = false;
+		parts = new int[32];
+		nParts = 0;
+		dbgToken = Debug.get(Debug.HToken);
+		dbgDetail = Debug.get(Debug.HTokenDetail);
 	}
 
 
 	public void close() throws IOException {
-		in.close();
+		if (in != null) {
+			in.close();
+		} else if (bis != null) {
+			bis.close();
+		}
+	}
+
+
+	/* True if the characters used by markup are encoded as single
+	 * bytes with their ASCII values, and other bytes never take
+	 * these values. Stateful encodings like ISO-2022 and multibyte
+	 * ones like Shift_JIS are not.
+	 */
+	public static boolean isAsciiCompatible(Charset cs) {
+		String n = cs.name();
+		return n.equals("US-ASCII") || n.equals("UTF-8")
+			|| n.startsWith("ISO-8859-")
+			|| n.startsWith("windows-125")
+			|| n.startsWith("KOI8-");
+	}
+
+
+	/* Reason why the input was cut short by the read limits, or
+	 * null if it was not.
+	 */
+	public String getLimitMessage() {
+		if (bis == null) {
+			return null;
+		}
+		return bis.getLimitMessage();
+	}
+
+
+	/* Number of body bytes read from the connection so far, as
+	 * they came over the wire, i.e. before content decoding.
+	 */
+	public long getWireBytes() {
+		if (wire == null) {
+			return 0;
+		}
+		return wire.getCount();
+	}
+
+
+	/* Number of body bytes read so far after content decoding. */
+	public long getBodyBytes() {
+		if (bis == null) {
+			return 0;
+		}
+		return bis.getCount();
 	}
 
 
@@ -171,61 +316,56 @@ public class HtmlTokenizer {
 
 
 	public Token nextTokenNonHTML() throws ParserException {
-		char ch;
-		StringBuilder sb = new StringBuilder();
-		Token resToken;
-
-		if (Debug.get(Debug.HToken)) {
+		if (dbgToken) {
 			System.err.println("nextTokenNonHTML()");
 		}
 		if (eof) {
 			return null;
 		}
-		return scanPCDATA(sb);
+		tokStart = pos;
+		return scanPCDATA();
 	}
 	
 
 	public Token nextToken() throws ParserException {
 		char ch;
-		StringBuilder sb = new StringBuilder();
 		Token resToken;
 
-		if (Debug.get(Debug.HToken)) {
+		if (dbgToken) {
 			System.err.println("nextToken()");
 		}
 		if (eof) {
 			return null;
 		}
-		//for (ch = nextChar(); ch != (char)EOF; ch = nextChar() ) {
+		tokStart = pos;
 		ch = nextChar();
 		switch (ch) {
 		case (char)EOF:
 			resToken = null;
 			break;
 		case '<':
-			sb.append(ch);
 			ch = nextChar();
 			if (ch == (char)EOF) {
 				// parse as a string, as no fully specified
 				// tag is here
 				//
 				resToken = null;
-			} else if (Character.isLetter(ch) || (ch == '/')) {
+			} else if ((ch == '/') || isLetterAt(-1)) {
 				// Opening or closing tag
 				// closed by > outside of quoted value
-				if (Debug.get(Debug.HTokenDetail)) {
+				if (dbgDetail) {
 					System.err.println("  isletter or /");
 				}
 				pushback(ch);
-				resToken = scanTag(sb);
+				resToken = scanTag();
 			} else if (ch == '!') {
 				// Markup declaration, including comment
 				// closed by >,
-				if (Debug.get(Debug.HTokenDetail)) {
+				if (dbgDetail) {
 					System.err.println("  markup");
 				}
 				pushback(ch);
-				resToken = scanMarkup(sb);
+				resToken = scanMarkup();
 			} else {
 				throw new ParserException(
 					   "Cannot parse <"+
@@ -233,48 +373,143 @@ public class HtmlTokenizer {
 			}
 			break;
 		default:
-			if (Debug.get(Debug.HTokenDetail)) {
+			if (dbgDetail) {
 				System.err.println("  text");
 			}
 			pushback(ch);  // let scanText read the full thing
-			resToken = scanText(sb);
+			resToken = scanText();
 			break;
 		}
 		return resToken;
 	}
 
 
-	protected char nextChar() throws ParserException {
-		int i;
-		char res = (char)EOF;
+	/* Replace "\r\n" and "\r" by "\n" in b[off..off+len), in place,
+	 * and return the new length. A "\r" at the end of the block is
+	 * remembered, so that a "\n" at the start of the next block is
+	 * dropped.
+	 */
+	protected int normalise(char[] b, int off, int len) {
+		int end = off + len;
+		int w = off;
+
+		for (int r = off;  r < end;  r++) {
+			char c = b[r];
+			if (c == '\r') {
+				b[w++] = '\n';
+				skipLF = true;
+			} else {
+				if ((c != '\n') || !skipLF) {
+					b[w++] = c;
+				}
+				skipLF = false;
+			}
+		}
+		return w - off;
+	}
 
-		try {
-			i = in.read();
-			if (i == EOF) {
-				res = (char)EOF;
+
+	/* Same as normalise(), but taking the n bytes in src as chars,
+	 * and putting the result into b starting at off.
+	 */
+	protected int normalise(byte[] src, int n, char[] b, int off) {
+		int w = off;
+
+		for (int r = 0;  r < n;  r++) {
+			char c = (char)(src[r] & 0xff);
+			if (c == '\r') {
+				b[w++] = '\n';
+				skipLF = true;
 			} else {
-				res = (char)i;
+				if ((c != '\n') || !skipLF) {
+					b[w++] = c;
+				}
+				skipLF = false;
 			}
-			// inspired by htmlparser: normalise line endings:
-			// replace "\r\n" and "\r" by "\n"
-			if (res == '\r') {
-				res = '\n'; // normalise
-				i = in.read();
-				if (i != EOF) {
-					char nc = (char)i;
-					if (nc != '\n') {
-						in.unread((int)nc);
-					}
+		}
+		return w - off;
+	}
+
+
+	/* Read the next block of input into the window. Characters
+	 * before the start of the current token are dropped, and the
+	 * window grows if the current token fills it completely.
+	 *
+	 * @return    false if the input is exhausted.
+	 */
+	protected boolean fill() throws ParserException {
+		int n;
+
+		if (inputDone) {
+			return false;
+		}
+		if (tokStart > 0) {
+			System.arraycopy(buf, tokStart, buf, 0, lim - tokStart);
+			pos -= tokStart;
+			lim -= tokStart;
+			tokStart = 0;
+		}
+		if (lim == buf.length) {
+			char[] nb = new char[2 * buf.length];
+			System.arraycopy(buf, 0, nb, 0, lim);
+			buf = nb;
+		}
+		try {
+			do {
+				if (bytes != null) {
+					n = Math.min(bytes.length,
+						     buf.length - lim);
+					n = bis.read(bytes, 0, n);
+				} else {
+					n = in.read(buf, lim, buf.length - lim);
+				}
+				if (n < 0) {
+					inputDone = true;
+					return false;
 				}
+				if (bytes != null) {
+					n = normalise(bytes, n, buf, lim);
+				} else {
+					n = normalise(buf, lim, n);
+				}
+			} while (n == 0);
+		} catch (IOException e) {
+			eof = true;
+			inputDone = true;
+			throw new ParserException("Cannot read character");
+		}
+		lim += n;
+		return true;
+	}
+
+
+	/* Make sure that at least n characters are available in the
+	 * window starting at the current position.
+	 */
+	protected boolean ensure(int n) throws ParserException {
+		while (lim - pos < n) {
+			if (!fill()) {
+				return false;
 			}
+		}
+		return true;
+	}
+
+
+	protected char nextChar() throws ParserException {
+		char res;
+
+		if ((pos >= lim) && !fill()) {
+			lastEOF = true;
+			res = (char)EOF;
+		} else {
+			lastEOF = false;
+			res = buf[pos++];
 			if (res == '\n') {
 				lineNo += 1;
 			}
-		} catch (IOException e) {
-			eof = true;
-			throw new ParserException("Cannot read character");
 		}
-		if (Debug.get(Debug.HTokenDetail)) {
+		if (dbgDetail) {
 			if (res != (char)EOF) {
 				System.err.println("Read: '"
 						   +String.valueOf(res)
@@ -289,33 +524,78 @@ public class HtmlTokenizer {
 	}
 
 
+	/* Step back over the character last read. Pushing back EOF
+	 * does nothing, as reading EOF does not consume anything.
+	 */
 	protected void pushback(char c) throws ParserException {
-		if (Debug.get(Debug.HTokenDetail)) {
+		if (dbgDetail) {
 			System.err.println("Pushback '"
 					   +String.valueOf(c)
 					   +"' ("
 					   +String.valueOf((int)c)
 					   +")");
 		}
-		try {
-			in.unread((int)c);
-			if (c == '\n') {
-				if (lineNo > 1) {
-					lineNo -= 1;
-				} else {
-					lineNo = 1;
-				}
+		if (lastEOF) {
+			lastEOF = false;
+			return;
+		}
+		pos -= 1;
+		if (c == '\n') {
+			if (lineNo > 1) {
+				lineNo -= 1;
+			} else {
+				lineNo = 1;
 			}
-		} catch (IOException e) {
-			eof = true;
-			throw new ParserException("Cannot push back "
-						  +"character");
 		}
 	}
 
 
-	protected Token scanMarkup(StringBuilder sb)
-		throws ParserException {
+	/* True if the character starting at buf[pos+off] is a letter.
+	 * In byte mode, a byte from 0x80 on is only part of a
+	 * character in charset, so that character is decoded first.
+	 * Without a charset, the bytes are ISO-8859-1 and each one is
+	 * its own character.
+	 */
+	protected boolean isLetterAt(int off) throws ParserException {
+		char ch = buf[pos+off];
+		if ((bytes == null) || (charset == null) || (ch < 0x80)) {
+			return Character.isLetter(ch);
+		}
+		// a character takes at most 4 bytes, in UTF-8
+		ensure(off+4);
+		int n = Math.min(4, lim - pos - off);
+		byte[] b = new byte[n];
+		for (int i = 0;  i < n;  i++) {
+			b[i] = (byte)buf[pos+off+i];
+		}
+		String s = new String(b, charset);
+		return Character.isLetter(s.charAt(0));
+	}
+
+
+	/* Text of the current token scanned so far. */
+	protected String tokenText() {
+		return new String(buf, tokStart, pos - tokStart);
+	}
+
+
+	/* Record a part of the current tag, from offset off relative
+	 * to the token start up to the current position, less the last
+	 * skip characters.
+	 */
+	protected void addPart(int off, int skip) {
+		if (2*nParts+2 > parts.length) {
+			int[] np = new int[2*parts.length];
+			System.arraycopy(parts, 0, np, 0, 2*nParts);
+			parts = np;
+		}
+		parts[2*nParts] = off;
+		parts[2*nParts+1] = pos - skip - tokStart;
+		nParts += 1;
+	}
+
+
+	protected Token scanMarkup() throws ParserException {
 
 		char ch, ch1;
 		Token resToken = null;
@@ -331,32 +611,28 @@ public class HtmlTokenizer {
 		ch1 = nextChar();
 		if (ch1 == '>') {
 			// found empty comment "<!>"
-			sb.append(ch);
-			sb.append(ch1);
-			if (Debug.get(Debug.HTokenDetail)) {
+			if (dbgDetail) {
 				System.err.println(
 					"  constructing CommentToken");
 			}
-			resToken = new CommentToken(sb.toString());
+			resToken = new CommentToken(tokenText(), charset);
 		} else if (ch1 == '-') {
 			pushback(ch1);
-			sb.append(ch);
-			resToken = scanComment(sb);
+			resToken = scanComment();
 		} else if (ch1 == '[') {
 			pushback(ch1);
-			sb.append(ch);
-			resToken = scanCDATA(sb);
+			resToken = scanCDATA();
 		} else {
 			pushback(ch1);
 			pushback(ch);
-			resToken = scanTag(sb);
+			resToken = scanTag();
 		}
 		return resToken;
 	}
 
 
-	/* Scan CDATA markup. Assumption is that sb contains already the
-	 * starting markup indicator "<!".
+	/* Scan CDATA markup. Assumption is that the leading "<!" has
+	 * been read already.
 	 * Scan for "[CDATA[" to start, then scan for "]]>" to close the
 	 * tag.
 	 * Implemented as a state machine as follows. Indicated is the
@@ -367,12 +643,9 @@ public class HtmlTokenizer {
 	 * the last character that leads to accepting state. Thus, next call
 	 * to nextToken() can again start with getting the next character.
 	 *
-	 * @param sb  StringBuilder containing the leading "<!" of the
-	 *            CDATA tag.
 	 * @return    CDATA token.
 	 */
-	protected Token scanCDATA(StringBuilder sb)
-		throws ParserException {
+	protected Token scanCDATA() throws ParserException {
 		int state;
 		char ch;
 
@@ -386,14 +659,13 @@ public class HtmlTokenizer {
 						  +String.valueOf(lineNo)
 						  +".");
 			}
-			sb.append(ch);
 			switch (state) {
 			case 0:
 			case 6:
 				if (ch != '[') {
 					throw new ParserException(
 					    "scanCDATA(): no CDATA open "
-					    +"starting with "+sb.toString()
+					    +"starting with "+tokenText()
 					    +", line "
 					    +String.valueOf(lineNo)
 					    +".");
@@ -408,7 +680,7 @@ public class HtmlTokenizer {
 				if (ch != 'C') {
 					throw new ParserException(
 					    "scanCDATA(): no CDATA open "
-					    +"starting with "+sb.toString()
+					    +"starting with "+tokenText()
 					    +", line "
 					    +String.valueOf(lineNo)
 					    +".");
@@ -419,7 +691,7 @@ public class HtmlTokenizer {
 				if (ch != 'D') {
 					throw new ParserException(
 					    "scanCDATA(): no CDATA open "
-					    +"starting with "+sb.toString()
+					    +"starting with "+tokenText()
 					    +", line "
 					    +String.valueOf(lineNo)
 					    +".");
@@ -431,7 +703,7 @@ public class HtmlTokenizer {
 				if (ch != 'A') {
 					throw new ParserException(
 					    "scanCDATA(): no CDATA open "
-					    +"starting with "+sb.toString()
+					    +"starting with "+tokenText()
 					    +", line "
 					    +String.valueOf(lineNo)
 					    +".");
@@ -446,7 +718,7 @@ public class HtmlTokenizer {
 				if (ch != 'T') {
 					throw new ParserException(
 					    "scanCDATA(): no CDATA open "
-					    +"starting with "+sb.toString()
+					    +"starting with "+tokenText()
 					    +", line "
 					    +String.valueOf(lineNo)
 					    +".");
@@ -490,28 +762,32 @@ public class HtmlTokenizer {
 				// break;
 			}
 		}
-		CDATAToken resToken = new CDATAToken(sb.toString());
+		CDATAToken resToken = new CDATAToken(tokenText(), charset);
 		return resToken;
 	}
 
 
-	/* Scan a tag. Assumption is that sb contains alread the starting "<".
-	 * Names and attributes are collected into strings, where, e.g
+	/* Scan a tag. Assumption is that the starting "<" has been read
+	 * already.
+	 * Names and attributes are collected as parts, where, e.g
 	 * <tag attr="val"> is represented by tag, attr, =, "val" (quotes
 	 * are preserved. Essentially, the tag's contents is tokenised
-	 * while obeying quotes.
+	 * while obeying quotes. Only the offsets of the parts are
+	 * recorded, the TagToken cuts them from the text when needed.
 	 * Does not read past last character of the tag. Thus, next call
 	 * to nextToken() can again start with getting the next character.
 	 *
-	 * @param sb  StringBuilder containing the leading "<" of the tag
 	 * @return    Tag token.
 	 */
-	protected Token scanTag(StringBuilder sb) throws ParserException {
+	protected Token scanTag() throws ParserException {
 
 		char ch;
-		StringBuilder tn = new StringBuilder(10);
-		LinkedList<String> attr = new LinkedList<String>();
+		int tn;  // start of the current part, relative to tokStart
+		boolean closedAfterSpace = false;
 
+		nParts = 0;
+
+		tn = pos - tokStart;
 		ch = nextChar();
 		for ( /* nothing */;
 		     !Character.isWhitespace(ch) && (ch != '>');
@@ -521,30 +797,28 @@ public class HtmlTokenizer {
 					   "Unfinished tag in line "
 					   +String.valueOf(lineNo)+".");
 			}
-			if (Debug.get(Debug.HTokenDetail)) {
+			if (dbgDetail) {
 				System.err.println("  is in tag name");
 			}
-			sb.append(ch);
-			tn.append(ch);
 		}
-		if (Debug.get(Debug.HToken)) {
+		addPart(tn, 1);
+		if (dbgToken) {
 			System.err.println("Found tag name '"
-					   +tn.toString()+"', line "
+					   +new String(buf, tokStart+tn,
+						       parts[1]-tn)
+					   +"', line "
 					   +String.valueOf(lineNo));
 		}
-		attr.add(tn.toString());
 
 		while (ch != '>') {
-			tn = new StringBuilder(10);
 
 			// Handle preceeding whitespace
 			for ( /* nothing */;
 			      Character.isWhitespace(ch);
 			      ch = nextChar()) {
-				if (Debug.get(Debug.HTokenDetail)) {
+				if (dbgDetail) {
 					System.err.println("  is whitespace");
 				}
-				sb.append(ch);
 			}
 			if (ch == (char)EOF) {
 				throw new ParserException(
@@ -552,18 +826,15 @@ public class HtmlTokenizer {
 					   +String.valueOf(lineNo)+".");
 			}
 			if (ch == '"') {
-				// double quoted value
-				sb.append(ch);
-				tn.append(ch);
+				// double quoted value, including quotes
+				tn = pos - 1 - tokStart;
 				ch = nextChar();
 				for ( ; (ch != (char)EOF) && (ch != '"');
 				      ch = nextChar()) {
-					if (Debug.get(Debug.HTokenDetail)) {
+					if (dbgDetail) {
 						System.err.println(
 						      "  is in double quote");
 					}
-					sb.append(ch);
-					tn.append(ch);
 				}
 				if (ch == (char)EOF) {
 					throw new ParserException(
@@ -572,24 +843,18 @@ public class HtmlTokenizer {
 						    +String.valueOf(lineNo)
 						    +".");
 				}
-				// include the quote
-				sb.append(ch);
-				tn.append(ch);
-				attr.add(tn.toString());
+				addPart(tn, 0);
 				ch = nextChar();
 			} else if (ch == '\'') {
-				// single quoted value
-				sb.append(ch);
-				tn.append(ch);
+				// single quoted value, including quotes
+				tn = pos - 1 - tokStart;
 				ch = nextChar();
 				for ( ; (ch != (char)EOF) && (ch != '\'');
 				      ch = nextChar()) {
-					if (Debug.get(Debug.HTokenDetail)) {
+					if (dbgDetail) {
 						System.err.println(
 						      "  is in single quote");
 					}
-					sb.append(ch);
-					tn.append(ch);
 				}
 				if (ch == (char)EOF) {
 					throw new ParserException(
@@ -598,28 +863,25 @@ public class HtmlTokenizer {
 						    +String.valueOf(lineNo)
 						    +".");
 				}
-				// include the quote
-				sb.append(ch);
-				tn.append(ch);
-				attr.add(tn.toString());
+				addPart(tn, 0);
 				ch = nextChar();
 			} else if (ch == '=') {
 				// equal
-				if (Debug.get(Debug.HTokenDetail)) {
+				if (dbgDetail) {
 					System.err.println(
 					   "  is =");
 				}
-				sb.append(ch);
-				tn.append(ch);
-				attr.add(tn.toString());
+				addPart(pos-1-tokStart, 0);
 				ch = nextChar();
 			} else if (ch == '>') {
 				// end of tag reached
-				if (Debug.get(Debug.HTokenDetail)) {
+				if (dbgDetail) {
 					System.err.println(
 					   "  is > -> done");
 				}
-				sb.append(ch);
+				// the token text has always carried the
+				// '>' twice in this case, keep it that way
+				closedAfterSpace = true;
 				break;
 			} else if (ch == '/') { // potential xml-style tag end
 				char ch1 = nextChar();
@@ -632,16 +894,14 @@ public class HtmlTokenizer {
 						+String.valueOf(lineNo)
 						+".");
 				}
-				if (Debug.get(Debug.HTokenDetail)) {
+				if (dbgDetail) {
 					System.err.println(
 						"  is /> -> done");
 				}
-				sb.append(ch);
 				ch = nextChar();
-				//sb.append(ch1);
-				//break;
 			} else {
 				// unquoted stuff
+				tn = pos - 1 - tokStart;
 				for ( ; (ch != (char)EOF) &&
 					      !Character.isWhitespace(ch) &&
 					      (ch != '>') &&
@@ -649,7 +909,7 @@ public class HtmlTokenizer {
 					      (ch != '"') &&
 					      (ch != '\'');
 				      ch = nextChar()) {
-					if (Debug.get(Debug.HTokenDetail)) {
+					if (dbgDetail) {
 						System.err.println(
 						   "  is in unquoted");
 					}
@@ -659,9 +919,6 @@ public class HtmlTokenizer {
 						if (ch1 == '>') {
 							// xml-style ending
 							break;
-						} else {
-							sb.append(ch);
-							tn.append(ch);
 						}
 						continue;
 					}
@@ -674,8 +931,7 @@ public class HtmlTokenizer {
 					     (ch == '{') || (ch == '}') ||
 					     (ch == ';') || (ch == ',') ||
 					     (ch == '#') || (ch == '&')) {
-						sb.append(ch);
-						tn.append(ch);
+						// ok
 					} else {
 						throw new ParserException(
 						    "Forbidden character '"
@@ -695,21 +951,25 @@ public class HtmlTokenizer {
 				}
 				// do not include the break character here
 				// and do not get a next character
-				attr.add(tn.toString());
+				addPart(tn, 1);
 			}
 		}
-		// record break character
-		sb.append(ch);
-		TagToken resToken
-			= new TagToken(sb.toString(),
-				       attr.toArray(new String[1]));
+		String text = tokenText();
+		String html = text;
+		if (closedAfterSpace) {
+			html = text + ">";
+		}
+		int[] p = new int[2*nParts];
+		System.arraycopy(parts, 0, p, 0, 2*nParts);
+		TagToken resToken = new TagToken(html, text, p, nParts,
+						 charset);
 
 		return resToken;
 	}
 
 
-	/* Scan a comment. Assumption is that sb contains already the
-	 * starting markup indicator "<!".
+	/* Scan a comment. Assumption is that the leading "<!" has been
+	 * read already.
 	 * Scan for "--" to start the comment, then scan for "--" to close
 	 * the comment, and finally scan for the trailing ">".
 	 * Implemented as a state machine as follows. Indicated is the
@@ -720,12 +980,9 @@ public class HtmlTokenizer {
 	 * last character that leads to accepting state. Thus, next call
 	 * to nextToken() can again start with getting the next character.
 	 *
-	 * @param sb  StringBuilder containing the leading "<!" of the
-	 *            comment
 	 * @return    Commen token.
 	 */
-	protected Token scanComment(StringBuilder sb)
-		throws ParserException {
+	protected Token scanComment() throws ParserException {
 		int state;
 		char ch;
 
@@ -739,14 +996,13 @@ public class HtmlTokenizer {
 						  +String.valueOf(lineNo)
 						  +".");
 			}
-			sb.append(ch);
 			switch (state) {
 			case 0:
 			case 1:
 				if (ch != '-') {
 					throw new ParserException(
 					     "scanComment(): not a comment "
-					     +"starting with "+sb.toString()
+					     +"starting with "+tokenText()
 					     +", line "
 					     +String.valueOf(lineNo)
 					     +".");
@@ -798,53 +1054,60 @@ public class HtmlTokenizer {
 				// break;
 			}
 		}
-		CommentToken resToken = new CommentToken(sb.toString());
+		CommentToken resToken = new CommentToken(tokenText(),
+							  charset);
 		return resToken;
 	}
 
 
-	/* Scan the input stream until input is exhausted, or a string
-	 * delimiter is encountered, which is "&lt;/" (start of end tag),
-	 * "&lt;!" (start of markup tag), "&lt;" followed by a letter
-	 * (start of start tag).
+	/* Scan the input until it is exhausted, or a string delimiter
+	 * is encountered, which is "&lt;/" (start of end tag), "&lt;!"
+	 * (start of markup tag), "&lt;" followed by a letter (start of
+	 * start tag). Works on the window directly, as text is the bulk
+	 * of most documents.
 	 *
-	 * @param sb     String builder containing characters leading to
-	 *               the text (the first character of the text).
 	 * @return       Text token representing the text.
 	 */
-	protected Token scanText(StringBuilder sb)
-		throws ParserException {
-		boolean done;
+	protected Token scanText() throws ParserException {
+		int end;
 		char ch;
 
-		done = false;
-		do {
-			ch = nextChar();
-			if (ch == (char)EOF) {
-				done = true;
-			} else if (ch == '<') {
-				char ch1 = nextChar();
-				if ( (ch1 == '/') ||
-				     (ch1 == '!') ||
-				     Character.isLetter(ch1) ) {
-					// put stuff back into stream
-					pushback(ch1);
-					pushback(ch);
-					done = true;
-				} else {
-					// No full end delimiter, so push
-					// back the next character and
-					// add the read character to the
-					// buffer.
-					pushback(ch1);
-					sb.append(ch);
+		while (true) {
+			if ((pos >= lim) && !fill()) {
+				end = pos;
+				break;
+			}
+			ch = buf[pos];
+			if (ch == '<') {
+				if (ensure(2)) {
+					char ch1 = buf[pos+1];
+					if ( (ch1 == '/') ||
+					     (ch1 == '!') ||
+					     isLetterAt(1) ) {
+						// leave delimiter for
+						// the next token
+						end = pos;
+						break;
+					}
 				}
+				// No full end delimiter, so the '<'
+				// is part of the text
+				pos += 1;
+			} else if (ch == (char)EOF) {
+				// the reader's EOF value, ends the text
+				// and is dropped
+				end = pos;
+				pos += 1;
+				break;
 			} else {
-				sb.append(ch);
+				if (ch == '\n') {
+					lineNo += 1;
+				}
+				pos += 1;
 			}
-		} while (!done);
-		TextToken tt = new TextToken(sb.toString());
-		return tt;
+		}
+		return new TextToken(new String(buf, tokStart,
+						end - tokStart), charset);
 	}
 
 
@@ -866,14 +1129,9 @@ public class HtmlTokenizer {
 	 * "</z" end marker, so the next call to nextToken() can again
 	 * start with getting the </z.
 	 *
-	 * The implementation uses a StringBuilder and appends chars while
-	 * scanning, and removes the trailing </ later.
-	 *
-	 * @param sb  StringBuilder for collecting the characters up to </
 	 * @return    Text token.
 	 */
-	protected Token scanPCDATA(StringBuilder sb)
-		throws ParserException {
+	protected Token scanPCDATA() throws ParserException {
 		int state;
 		char ch;
 
@@ -885,7 +1143,6 @@ public class HtmlTokenizer {
 					  "Unfinished PCDATA, line"
 					  +String.valueOf(lineNo)+".");
 			}
-			sb.append(ch);
 			switch(state) {
 			case 0:
 				if (ch == '<') {
@@ -918,18 +1175,17 @@ public class HtmlTokenizer {
 			}
 		}
 
-		// Now push back the last 3 characters "</z" in reverse order
-		int len = sb.length();
-		if (len < 3) {
+		// Now step back over the last 3 characters "</z"
+		if (pos - tokStart < 3) {
 			throw new ParserException("Read 3-char end of PCDATA, "
 						  +"but have less data, line "
 						  +String.valueOf(lineNo)
 						  +".");
 		}
 		for (int i = 0;  i < 3;  i++) {
-			pushback(sb.charAt(len-1-i));
+			pushback(buf[pos-1]);
 		}
-		return new TextToken(sb.substring(0, len-3));
+		return new TextToken(tokenText(), charset);
 	}
 
 
@@ -35,106 +35,143 @@ import net.ukuehn.util.Debug;
 
 
 
-public class HttpEquivExtractor {
+public class HttpEquivExtractor implements TokenVisitor {
 
 	HtmlBuffer html;
+	TokenCursor cursor;
+	LinkedList<String> keys;
+	LinkedList<String> vals;
 
 	public HttpEquivExtractor(HttpURLConnection conn)
 		throws ParserException {
-		html = new HtmlBuffer(conn);
+		this(new TokenCursor(conn, false, ReadLimits.DEFAULT));
 	}
 
 	public HttpEquivExtractor(HtmlBuffer hb) {
 		html = hb;
+		cursor = null;
+	}
+
+	/* Extract from the tokens of the cursor in a single pass. The
+	 * cursor is used up afterwards, so extract() works only once.
+	 */
+	public HttpEquivExtractor(TokenCursor tc) {
+		html = null;
+		cursor = tc;
+	}
+
+	/* Extract as one of the visitors of a TokenDispatcher. The
+	 * result is available from getResult() after the pass.
+	 */
+	public HttpEquivExtractor() {
+		html = null;
+		cursor = null;
 	}
 
 
 	public HttpEquivResult extract() throws ParserException {
-		Token t;
+
+		if (Debug.get(Debug.HToken)) {
+			System.err.println("HttpEquivExtractor.extract()");
+		}
+
+		TokenDispatcher td = new TokenDispatcher();
+		td.add(this);
+		if (html != null) {
+			td.run(html.iterator());
+		} else {
+			td.run(cursor);
+		}
+		return getResult();
+	}
+
+
+	public void register(TokenDispatcher d) {
+		keys = new LinkedList<String>();
+		vals = new LinkedList<String>();
+		d.registerTag(this, HtmlNames.META);
+	}
+
+
+	public void visit(Token t, TokenDispatcher d) {
 		TagToken tt;
-		LinkedList<String> keys = new LinkedList<String>();
-		LinkedList<String> vals = new LinkedList<String>();
 		String equivHdr;
 		String equivContent;
-		Iterator<Token> it;
 		int i;
 
-		if (Debug.get(Debug.HToken)) {
-			System.err.println("HttpEquivExtractor.extract()");
+		if (!(t instanceof TagToken)) {
+			return;
 		}
+		tt = (TagToken)t;
 
-		it = html.iterator();
-		while (it.hasNext()) {
-			t = it.next();
-			if (!(t instanceof TagToken)) {
-				continue;
-			}
-			tt = (TagToken)t;
-			if (!tt.getName().equalsIgnoreCase("meta")) {
-				continue;
-			}
-
-			if (Debug.get(Debug.HToken)) {
-				System.err.print("HEE.extract: Found tag "
-						 +tt.getName()+": ");
-				for (i = 0;
-				     i < tt.getAttrCount();  i++) {
-					if (i > 0) {
-						System.err.print(" ");
-					}
-					System.err.print(tt.getAttr(i)
-							 +"=\""
-							 +tt.getValue(i)
-							 +"\"");
+		if (Debug.get(Debug.HToken)) {
+			System.err.print("HEE.extract: Found tag "
+					 +tt.getName()+": ");
+			for (i = 0;
+			     i < tt.getAttrCount();  i++) {
+				if (i > 0) {
+					System.err.print(" ");
 				}
-				System.err.println("'");
+				System.err.print(tt.getAttr(i)
+						 +"=\""
+						 +tt.getValue(i)
+						 +"\"");
 			}
+			System.err.println("'");
+		}
 
-			equivHdr = null;
-			equivContent = null;
+		equivHdr = null;
+		equivContent = null;
 
-			i = tt.attrIndex("http-equiv");
+		i = tt.attrIndex("http-equiv");
+		if (Debug.get(Debug.HToken)) {
+			System.err.println("HEE.extract: got index "
+					   +String.valueOf(i)
+					   +" for http-equiv");
+		}
+		if (i >= 0) {
+			equivHdr = tt.getValue(i);
 			if (Debug.get(Debug.HToken)) {
-				System.err.println("HEE.extract: got index "
-						   +String.valueOf(i)
-						   +" for http-equiv");
+				System.err.println("  -> '"
+						   +equivHdr+"'");
 			}
-			if (i >= 0) {
-				equivHdr = tt.getValue(i);
-				if (Debug.get(Debug.HToken)) {
-					System.err.println("  -> '"
-							   +equivHdr+"'");
-				}
-			}
-			i = tt.attrIndex("content");
+		}
+		i = tt.attrIndex("content");
+		if (Debug.get(Debug.HToken)) {
+			System.err.println("HEE.extract: got index "
+					   +String.valueOf(i)
+					   +" for content");
+		}
+		if (i >= 0) {
+			equivContent = tt.getValue(i);
 			if (Debug.get(Debug.HToken)) {
-				System.err.println("HEE.extract: got index "
-						   +String.valueOf(i)
-						   +" for content");
-			}
-			if (i >= 0) {
-				equivContent = tt.getValue(i);
-				if (Debug.get(Debug.HToken)) {
-					System.err.println("  -> '"
-							   +equivContent+"'");
-				}
+				System.err.println("  -> '"
+						   +equivContent+"'");
 			}
+		}
 
-			if ((equivHdr != null) && (equivContent != null)) {
-				if (Debug.get(Debug.HToken)) {
-					System.err.println(
-						"Adding equiv header "
-						+equivHdr+": "+equivContent);
-				}
-				keys.add(equivHdr);
-				vals.add(equivContent);
-			} else {
-				// could throw exception here, but
-				// try to continue with other meta tags,
-				// so ignore ...
+		if ((equivHdr != null) && (equivContent != null)) {
+			if (Debug.get(Debug.HToken)) {
+				System.err.println(
+					"Adding equiv header "
+					+equivHdr+": "+equivContent);
 			}
+			keys.add(equivHdr);
+			vals.add(equivContent);
+		} else {
+			// could throw exception here, but
+			// try to continue with other meta tags,
+			// so ignore ...
 		}
+	}
+
+
+	public void end() {
+		// nothing
+	}
+
 
+	public HttpEquivResult getResult() {
 		HttpEquivResult res
 			= new HttpEquivResult(keys.toArray(new String[0]),
 					      vals.toArray(new String[0]));
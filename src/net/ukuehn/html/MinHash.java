@@ -0,0 +1,104 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import net.ukuehn.util.Murmur3;
+
+
+
+/* MinHash signature over the structural elements of a document.
+ * Every element is hashed on its own, and the signature keeps the
+ * minimum of SIZE different hash functions over all elements. The
+ * share of equal positions in two signatures estimates the Jaccard
+ * similarity of the two element sets, see similarity().
+ *
+ * The hash functions are derived from one 128 bit Murmur3 hash per
+ * element as h1 + i*h2, so an element is hashed only once.
+ */
+public class MinHash {
+
+	public static final int SIZE = 32;
+
+	private StructHasher feature;
+	private int[] mins;
+	private int count;
+
+
+	public MinHash() {
+		feature = new StructHasher(new Murmur3());
+		mins = new int[SIZE];
+		for (int i = 0;  i < SIZE;  i++) {
+			mins[i] = Integer.MAX_VALUE;
+		}
+		count = 0;
+	}
+
+
+	public void add(StructElem e) {
+		e.digestTo(feature);
+		byte[] d = feature.digest();
+		long h1 = getLong(d, 0);
+		long h2 = getLong(d, 8);
+		for (int i = 0;  i < SIZE;  i++) {
+			int v = (int)((h1 + i*h2) >>> 32);
+			if (v < mins[i]) {
+				mins[i] = v;
+			}
+		}
+		count += 1;
+	}
+
+
+	/* Number of elements added. */
+	public int getCount() {
+		return count;
+	}
+
+
+	public int[] getSignature() {
+		return mins.clone();
+	}
+
+
+	/* Estimated Jaccard similarity of the element sets of two
+	 * signatures, between 0 and 1.
+	 */
+	public static double similarity(int[] a, int[] b) {
+		int n = 0;
+		for (int i = 0;  i < SIZE;  i++) {
+			if (a[i] == b[i]) {
+				n += 1;
+			}
+		}
+		return (double)n / SIZE;
+	}
+
+
+	private static long getLong(byte[] b, int off) {
+		long v = 0;
+		for (int i = 7;  i >= 0;  i--) {
+			v = (v << 8) | (b[off+i] & 0xffL);
+		}
+		return v;
+	}
+
+}
@@ -0,0 +1,112 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.util.StringTokenizer;
+
+
+
+/* Limits for reading a single response body: the number of bytes,
+ * the number of tokens, and the wall-clock time for reading. A
+ * value of zero means no limit.
+ */
+public class ReadLimits {
+
+	public static final ReadLimits NONE = new ReadLimits(0, 0, 0);
+
+	public static final ReadLimits DEFAULT
+		= new ReadLimits(8*1024*1024, 1000000, 60000);
+
+	protected long maxBytes;
+	protected int maxTokens;
+	protected long maxMillis;
+
+
+	public ReadLimits(long bytes, int tokens, long millis) {
+		maxBytes = bytes;
+		maxTokens = tokens;
+		maxMillis = millis;
+	}
+
+
+	/* Parse a specification of the form bytes[:tokens[:millis]].
+	 * Omitted parts keep their default value.
+	 */
+	public static ReadLimits parse(String spec)
+		throws NumberFormatException {
+		long bytes = DEFAULT.maxBytes;
+		int tokens = DEFAULT.maxTokens;
+		long millis = DEFAULT.maxMillis;
+
+		StringTokenizer st = new StringTokenizer(spec, ":", true);
+		String[] part = new String[3];
+		int n = 0;
+		while (st.hasMoreTokens() && (n < part.length)) {
+			String s = st.nextToken();
+			if (s.equals(":")) {
+				n += 1;
+			} else {
+				part[n] = s;
+			}
+		}
+		if (st.hasMoreTokens()) {
+			throw new NumberFormatException("Too many parts in "
+							+spec);
+		}
+		if (part[0] != null) {
+			bytes = Long.parseLong(part[0]);
+		}
+		if (part[1] != null) {
+			tokens = Integer.parseInt(part[1]);
+		}
+		if (part[2] != null) {
+			millis = Long.parseLong(part[2]);
+		}
+		if ((bytes < 0) || (tokens < 0) || (millis < 0)) {
+			throw new NumberFormatException("Negative limit in "
+							+spec);
+		}
+		return new ReadLimits(bytes, tokens, millis);
+	}
+
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+
+	public int getMaxTokens() {
+		return maxTokens;
+	}
+
+
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+
+
+	public String toString() {
+		return String.valueOf(maxBytes)+":"+String.valueOf(maxTokens)
+			+":"+String.valueOf(maxMillis);
+	}
+
+}
@@ -0,0 +1,414 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.io.*;
+import java.net.URL;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.ukuehn.util.Debug;
+import net.ukuehn.util.Hex;
+import net.ukuehn.wfat.ConnectionHandler;
+import net.ukuehn.wfat.Digester;
+import net.ukuehn.wfat.PolitenessScheduler;
+
+
+
+/* Digests of external scripts and frames, keyed by absolute URL.
+ * Many sites load the same libraries from the same CDN, so each
+ * script is fetched and hashed once per run. Concurrent requests for the same
+ * URL share one fetch. Scripts that cannot be fetched are
+ * remembered as well, with a null digest, so that a broken source
+ * is not asked again for every page.
+ *
+ * Only the digests are kept in memory, the least recently used are
+ * dropped if the cache is full. If a store directory is set, the
+ * bodies are written there, named by the hex digest of their
+ * contents, so that every distinct script is stored once. The cache
+ * is shared by all worker threads.
+ *
+ * Fetches started by getAsync() run on a pool of threads, so that
+ * the sources of a page can be fetched at the same time. The number
+ * of fetches of one page at a time, and the time they may take
+ * together, are limited by getPageLimit() and getPageMillis().
+ * With a scheduler, each fetch waits for its slot like any other
+ * request, so fetches from one host are still kept apart.
+ */
+public class ScriptCache {
+
+	protected static final int DEFAULT_MAX_ENTRIES = 4096;
+	protected static final int DEFAULT_PAGE_LIMIT = 6;
+	protected static final int FETCH_THREADS = 16;
+
+	ConnectionHandler hc;
+	Digester digester;
+	ReadLimits limits;
+	File store;
+	LinkedHashMap<String, Script> map;
+	int pageLimit;
+	long pageMillis;
+	ThreadPoolExecutor executor;
+	PolitenessScheduler scheduler;
+
+	/* statistics, guarded by this */
+	long hits;
+	long shared;
+	long fetches;
+	long failures;
+	long stored;
+
+
+	public ScriptCache(ConnectionHandler h, Digester d,
+			   ReadLimits readLimits) {
+		this(h, d, readLimits, DEFAULT_MAX_ENTRIES);
+	}
+
+
+	public ScriptCache(ConnectionHandler h, Digester d,
+			   ReadLimits readLimits, final int maxEntries) {
+		hc = h;
+		digester = d;
+		limits = readLimits;
+		store = null;
+		scheduler = null;
+		pageLimit = DEFAULT_PAGE_LIMIT;
+		pageMillis = readLimits.getMaxMillis();
+		executor = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS,
+						  30, TimeUnit.SECONDS,
+					  new LinkedBlockingQueue<Runnable>(),
+						  new FetchThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		map = new LinkedHashMap<String, Script>(256, 0.75f, true) {
+			protected boolean removeEldestEntry(
+				      Map.Entry<String, Script> eldest) {
+				// keep fetches under way
+				return (size() > maxEntries)
+					&& eldest.getValue().task.isDone();
+			}
+		};
+		hits = 0;
+		shared = 0;
+		fetches = 0;
+		failures = 0;
+		stored = 0;
+	}
+
+
+	/* Write the script bodies into the given directory, which is
+	 * created if needed.
+	 */
+	public void setStore(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create script store "
+					      +dir.getPath());
+		}
+		store = dir;
+	}
+
+
+	/* Use the given scheduler to keep fetches from the same host
+	 * apart, see PolitenessScheduler.
+	 */
+	public void setScheduler(PolitenessScheduler sched) {
+		scheduler = sched;
+	}
+
+
+	public Digester getDigester() {
+		return digester;
+	}
+
+
+	/* Fetch at most n sources of one page at the same time, and
+	 * give up on those not done after the given time for all of
+	 * them. 0 means no time limit.
+	 */
+	public void setPageLimits(int n, long millis) {
+		pageLimit = Math.max(1, n);
+		pageMillis = millis;
+	}
+
+
+	public int getPageLimit() {
+		return pageLimit;
+	}
+
+
+	public long getPageMillis() {
+		return pageMillis;
+	}
+
+
+	/* Return the digest of the script at the given URL, fetching
+	 * it if it is not known yet, or null if it cannot be fetched.
+	 */
+	public byte[] get(URL u) {
+		Script e = lookup(u);
+		// fetch here, unless another thread does already
+		if (e.started.compareAndSet(false, true)) {
+			e.task.run();
+		}
+		return result(e.task);
+	}
+
+
+	/* Start fetching the script at the given URL, unless it is
+	 * known or being fetched already. The result is the digest,
+	 * or null if it cannot be fetched.
+	 */
+	public Future<byte[]> getAsync(URL u) {
+		Script e = lookup(u);
+		if (e.started.compareAndSet(false, true)) {
+			executor.execute(e.task);
+		}
+		return e.task;
+	}
+
+
+	/* Look up the entry for the given URL, or make a new one whose
+	 * task is still to be run.
+	 */
+	protected synchronized Script lookup(URL u) {
+		String key = u.toString();
+		Script e = map.get(key);
+		if (e != null) {
+			if (e.task.isDone()) {
+				hits += 1;
+			} else {
+				shared += 1;
+			}
+			return e;
+		}
+		e = new Script(u);
+		map.put(key, e);
+		return e;
+	}
+
+
+	public static byte[] result(Future<byte[]> f) {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+
+	/* Wait at most the given time for the result, null if it is
+	 * not there by then.
+	 */
+	public static byte[] result(Future<byte[]> f, long millis) {
+		try {
+			return f.get(millis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		} catch (TimeoutException e) {
+			return null;
+		}
+	}
+
+
+	/* Fetch the script and return the digest of its body. */
+	protected byte[] fetch(URL u) {
+		HttpURLConnection conn = null;
+		MessageDigest md = null;
+		InputStream is = null;
+
+		try {
+			conn = hc.prepareConnection(u, true);
+			if ((conn == null) ||
+			    (conn.getResponseCode()
+			     != HttpURLConnection.HTTP_OK)) {
+				return null;
+			}
+			BoundedInputStream bis = new BoundedInputStream(
+				new DecodingInputStream(conn.getInputStream(),
+						conn.getContentEncoding()),
+				conn, limits);
+			is = bis;
+			ByteArrayOutputStream body = null;
+			if (store != null) {
+				body = new ByteArrayOutputStream();
+			}
+			md = digester.getDigester();
+			byte[] b = new byte[8192];
+			int n;
+			while ((n = is.read(b, 0, b.length)) >= 0) {
+				md.update(b, 0, n);
+				if (body != null) {
+					body.write(b, 0, n);
+				}
+			}
+			if (bis.getLimitMessage() != null) {
+				// only part of the script, do not use
+				if (Debug.get(Debug.Connection)) {
+					System.err.println("ScriptCache: "+u
+						   +": "+bis.getLimitMessage());
+				}
+				return null;
+			}
+			byte[] res = md.digest();
+			if (body != null) {
+				write(res, body);
+			}
+			return res;
+		} catch (IOException e) {
+			if (Debug.get(Debug.Connection)) {
+				System.err.println("ScriptCache: "+u
+						   +": "+e.toString());
+			}
+			return null;
+		} finally {
+			digester.release(md);
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			if (conn != null) {
+				conn.disconnect();
+			}
+		}
+	}
+
+
+	/* Write the body into the store, unless it is there already.
+	 * It is written under a temporary name first, so that other
+	 * threads and runs never see a partial file.
+	 */
+	protected void write(byte[] digest, ByteArrayOutputStream body) {
+		File f = new File(store, Hex.toHex(digest));
+		if (f.exists()) {
+			return;
+		}
+		File tmp = null;
+		try {
+			tmp = File.createTempFile("script", ".tmp", store);
+			FileOutputStream os = new FileOutputStream(tmp);
+			try {
+				body.writeTo(os);
+			} finally {
+				os.close();
+			}
+			if (tmp.renameTo(f)) {
+				tmp = null;
+				synchronized (this) {
+					stored += 1;
+				}
+			}
+		} catch (IOException e) {
+			if (Debug.get(Debug.Connection)) {
+				System.err.println("ScriptCache: cannot store "
+						   +f.getPath()+": "
+						   +e.toString());
+			}
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+
+	protected synchronized void fetchDone(boolean ok) {
+		fetches += 1;
+		if (!ok) {
+			failures += 1;
+		}
+	}
+
+
+	public synchronized String getStats() {
+		return "ScriptCache: "+String.valueOf(fetches)+" fetches, "
+			+String.valueOf(failures)+" failed, "
+			+String.valueOf(hits)+" hits, "
+			+String.valueOf(shared)+" shared fetches, "
+			+String.valueOf(map.size())+" entries, "
+			+String.valueOf(stored)+" stored";
+	}
+
+
+	/* Cache entry, the task fetches the script once. */
+	class Script implements Callable<byte[]> {
+
+		URL url;
+		FutureTask<byte[]> task;
+		AtomicBoolean started;
+
+
+		Script(URL u) {
+			url = u;
+			task = new FutureTask<byte[]>(this);
+			started = new AtomicBoolean(false);
+		}
+
+
+		public byte[] call() {
+			if (scheduler != null) {
+				scheduler.acquire(url.getHost());
+			}
+			byte[] res = fetch(url);
+			fetchDone(res != null);
+			if (Debug.get(Debug.Connection)) {
+				System.err.println("ScriptCache: fetched "+url
+						   +((res != null) ? ""
+						     : " failed"));
+			}
+			return res;
+		}
+	}
+
+
+	static class FetchThreadFactory implements ThreadFactory {
+
+		int n = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "wfat-fetch-"
+					      +String.valueOf(n++));
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+}
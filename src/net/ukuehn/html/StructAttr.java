@@ -59,4 +59,11 @@ public class StructAttr extends StructElem {
 		return sb.toString();
 	}
 
+
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.ATTRIBUTE);
+		h.update(attr);
+		h.update(val);
+	}
+
 }
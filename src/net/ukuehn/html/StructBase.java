@@ -50,10 +50,16 @@ public class StructBase extends StructElem {
 		StringBuilder sb = new StringBuilder();
 		
 		sb.append("<BaseElement BaseUrl=");
-		String s = bu.toString();
+		String s = (bu != null) ? bu.toString() : "";
 		sb.append(XML.quote(s));
 		sb.append(" />");
 		return sb.toString();
 	}
 
+
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.BASE);
+		h.update((bu != null) ? bu.toString() : null);
+	}
+
 }
@@ -53,5 +53,11 @@ public class StructDoctype extends StructElem {
 		sb.append(" />");
 		return sb.toString();
 	}
+
+
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.DOCTYPE);
+		h.update(htmlVal);
+	}
 	
 }
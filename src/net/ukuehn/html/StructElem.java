@@ -43,4 +43,27 @@ public class StructElem {
 		return htmlVal;
 	}
 
+
+	/* URL of a document the element refers to, that has to be
+	 * fetched to hash the element, or null if there is none.
+	 */
+	public String getFetchSource() {
+		return null;
+	}
+
+
+	/* Digest of the document given by getFetchSource(), or null
+	 * if it could not be fetched.
+	 */
+	public void setContentDigest(byte[] digest) {
+		// nothing
+	}
+
+
+	/* Feed the element into the running structural hash. */
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.OTHER);
+		h.update(htmlVal);
+	}
+
 }
@@ -0,0 +1,88 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+import net.ukuehn.wfat.Digester;
+import net.ukuehn.util.Hex;
+import net.ukuehn.xml.XML;
+
+import java.net.URL;
+import java.lang.StringBuilder;
+
+
+/* A frame or iframe, hashed by its source and the digest of the
+ * document it shows, once that has been fetched.
+ */
+public class StructFrame extends StructElem {
+
+	protected String htmlVal;
+	protected TagToken ft;
+	protected String name;
+	protected URL src;
+	protected byte[] contentDigest;
+
+	public StructFrame(TagToken frameToken, URL srcUrl) {
+		ft = frameToken;
+		name = frameToken.getCanonicalName();
+		src = srcUrl;
+		contentDigest = null;
+		htmlVal = frameToken.toString();
+	}
+
+
+	public String toString() {
+		return htmlVal;
+	}
+
+
+	public String getFetchSource() {
+		return (src != null) ? src.toString() : null;
+	}
+
+
+	public void setContentDigest(byte[] digest) {
+		contentDigest = digest;
+	}
+
+
+	public String digestInput(Digester d) {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("<Frame Element=");
+		sb.append(XML.quote(name));
+		sb.append(" Src=");
+		sb.append(XML.quote((src != null) ? src.toString() : ""));
+		sb.append(" ContentHash=");
+		sb.append(XML.quote((contentDigest != null)
+				    ? Hex.toHex(contentDigest) : ""));
+		sb.append(" />");
+		return sb.toString();
+	}
+
+
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.FRAME);
+		h.update(name);
+		h.update(getFetchSource());
+		h.update(contentDigest);
+	}
+
+}
@@ -0,0 +1,166 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.security.MessageDigest;
+
+import net.ukuehn.util.Hex;
+
+
+
+/* Running structural hash of a document. The elements found by the
+ * HtmlStructureExtractor are fed into one message digest as they
+ * turn up, so no text representation of the structure is built.
+ *
+ * Each element starts with a byte telling its kind. Strings are
+ * encoded as UTF-8 and terminated by a byte that cannot occur in
+ * UTF-8, so that "ab","c" and "a","bc" give different hashes.
+ */
+public class StructHasher {
+
+	public static final byte DOCTYPE = 1;
+	public static final byte BASE = 2;
+	public static final byte ATTRIBUTE = 3;
+	public static final byte SCRIPT = 4;
+	public static final byte SRCSCRIPT = 5;
+	public static final byte OTHER = 6;
+	public static final byte FRAME = 7;
+
+	protected static final byte END = (byte)0xff;
+	protected static final byte NULL = (byte)0xfe;
+
+	protected static final int BUFSIZE = 512;
+
+	private MessageDigest md;
+	private byte[] buf;
+	private int len;
+	private int elements;
+
+
+	public StructHasher(MessageDigest digest) {
+		md = digest;
+		buf = new byte[BUFSIZE];
+		len = 0;
+		elements = 0;
+	}
+
+
+	public String getAlgorithm() {
+		return md.getAlgorithm();
+	}
+
+
+	/* Number of elements hashed since the last digest(). */
+	public int getElementCount() {
+		return elements;
+	}
+
+
+	/* Start the next element of the given kind. */
+	public void element(byte kind) {
+		if (len == buf.length) {
+			flush();
+		}
+		buf[len++] = kind;
+		elements += 1;
+	}
+
+
+	/* Add the string and its terminator. A null string is told
+	 * apart from an empty one.
+	 */
+	public void update(String s) {
+		if (s != null) {
+			append(s);
+		}
+		if (len == buf.length) {
+			flush();
+		}
+		buf[len++] = (s != null) ? END : NULL;
+	}
+
+
+	public void update(byte[] b) {
+		if (b == null) {
+			update((String)null);
+			return;
+		}
+		flush();
+		md.update(b);
+		update("");
+	}
+
+
+	/* Add the string without a terminator, use for text that
+	 * arrives in pieces.
+	 */
+	public void append(String s) {
+		int n = s.length();
+		for (int i = 0;  i < n;  i++) {
+			if (len > buf.length-4) {
+				flush();
+			}
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buf[len++] = (byte)c;
+			} else if (c < 0x800) {
+				buf[len++] = (byte)(0xc0 | (c >> 6));
+				buf[len++] = (byte)(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) &&
+				   (i+1 < n) &&
+				   Character.isLowSurrogate(s.charAt(i+1))) {
+				int cp = Character.toCodePoint(c,
+							  s.charAt(++i));
+				buf[len++] = (byte)(0xf0 | (cp >> 18));
+				buf[len++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+				buf[len++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+				buf[len++] = (byte)(0x80 | (cp & 0x3f));
+			} else {
+				buf[len++] = (byte)(0xe0 | (c >> 12));
+				buf[len++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+				buf[len++] = (byte)(0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+
+	/* Finish the hash and start over. */
+	public byte[] digest() {
+		flush();
+		elements = 0;
+		return md.digest();
+	}
+
+
+	public String digestHex() {
+		return Hex.toHex(digest());
+	}
+
+
+	protected void flush() {
+		if (len > 0) {
+			md.update(buf, 0, len);
+			len = 0;
+		}
+	}
+
+}
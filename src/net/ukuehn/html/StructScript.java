@@ -48,6 +48,17 @@ public class StructScript extends StructElem {
 
 	public StructScript(TagToken openToken, TagToken closeToken,
 			    int scriptType, String value) {
+		this(openToken, closeToken, scriptType, value, null);
+	}
+
+
+	/* The digest of the script's contents may be given if it has
+	 * been computed while the contents was read, value may be
+	 * null then. The closing tag is null if the document ended
+	 * within the script.
+	 */
+	public StructScript(TagToken openToken, TagToken closeToken,
+			    int scriptType, String value, byte[] digest) {
 		ot = openToken;
 		ct = closeToken;
 		lang = ot.getValue(ot.attrIndex("type"));
@@ -57,22 +68,46 @@ public class StructScript extends StructElem {
 		switch (type) {
 		case ELEMENT:
 			scVal = value;
-			htmlVal = ot.toString()+scVal+ct.toString();
 			break;
 		case SOURCED:
 		case INLINE:
 			src = value;
-			htmlVal = ot.toString()+ct.toString();
 			break;
 		}
+		htmlVal = null;
 		srcDigest = null;
 		srcHash = "";
-		contentDigest = null;
-		contentHash = "";
+		contentDigest = digest;
+		contentHash = (digest != null) ? Hex.toHex(digest) : "";
+	}
+
+
+	public int getType() {
+		return type;
+	}
+
+
+	/* The URL of a sourced script */
+	public String getFetchSource() {
+		return (type == SOURCED) ? src : null;
+	}
+
+
+	/* Digest of the contents of a sourced script, once it has
+	 * been fetched.
+	 */
+	public void setContentDigest(byte[] digest) {
+		contentDigest = digest;
+		contentHash = (digest != null) ? Hex.toHex(digest) : "";
 	}
 
 
 	public String toString() {
+		if (htmlVal == null) {
+			htmlVal = ot.toString()
+				+((scVal != null) ? scVal : "")
+				+((ct != null) ? ct.toString() : "");
+		}
 		return htmlVal;
 	}
 
@@ -81,8 +116,12 @@ public class StructScript extends StructElem {
 		MessageDigest md = d.getDigester();
 		switch (type) {
 		case ELEMENT:
-			contentDigest = md.digest(scVal.getBytes());
-			contentHash = Hex.toHex(contentDigest);
+			if (contentDigest == null) {
+				StructHasher sh = new StructHasher(md);
+				sh.append(scVal);
+				contentDigest = sh.digest();
+				contentHash = Hex.toHex(contentDigest);
+			}
 			break;
 		case SOURCED:
 			srcDigest = md.digest(src.getBytes());
@@ -93,6 +132,7 @@ public class StructScript extends StructElem {
 			srcHash = Hex.toHex(srcDigest);
 			break;
 		}
+		d.release(md);
 
 		StringBuilder sb = new StringBuilder();
 		sb.append("<Script");
@@ -122,4 +162,17 @@ public class StructScript extends StructElem {
 		return sb.toString();
 	}
 
+
+	/* Scripts are hashed by the digest of their contents, which
+	 * must have been given to the constructor or set for sourced
+	 * scripts. A sourced script that could not be fetched is
+	 * hashed by its URL only.
+	 */
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.SCRIPT);
+		h.update(lang);
+		h.update(src);
+		h.update(contentDigest);
+	}
+
 }
@@ -65,4 +65,11 @@ public class StructSrcScript extends StructElem {
 		return sb.toString();
 	}
 
+
+	public void digestTo(StructHasher h) {
+		h.element(StructHasher.SRCSCRIPT);
+		h.update(src);
+		h.update(lang);
+	}
+
 }
@@ -20,9 +20,19 @@
 
 package net.ukuehn.html;
 
+import java.nio.charset.Charset;
+import java.util.Locale;
+
 import net.ukuehn.util.Debug;
 
 
+/* A tag. The tokenizer splits the tag into parts, e.g.
+ * <tag attr="val"> into tag, attr, =, "val", and hands over the
+ * text of the tag with the offsets of the parts. The attributes are
+ * only decoded from the parts when they are first asked for, as
+ * most tags are never looked at. Their structure is checked right
+ * away, though.
+ */
 public class TagToken extends Token {
 
 	protected String[] scanAttr;
@@ -30,6 +40,15 @@ public class TagToken extends Token {
 	protected String[] value;
 	protected int nAttr;
 
+	/* Undecoded form: the parts are src[parts[2*i]..parts[2*i+1]) */
+	protected String src;
+	protected int[] parts;
+	protected int nParts;
+
+	protected String name;
+	protected String canonicalName;
+	protected boolean decoded;
+
 
 	public TagToken(String parm, String[] parmAttr)
 		throws ParserException {
@@ -39,12 +58,65 @@ public class TagToken extends Token {
 			scanAttr = new String[1];
 			scanAttr[0] = new String();
 		}
-		scanAttrToAttrib();
+		name = scanAttr[0];
+		canonicalName = HtmlNames.lookup(name);
+		src = null;
+		parts = null;
+		nParts = scanAttr.length;
+		checkStructure();
+		decoded = false;
+	}
+
+
+	/* Tag with text parm, whose parts are given by offsets into
+	 * source, which is parm itself or a prefix of it. If cs is not
+	 * null, both are undecoded text in that charset, see Token.
+	 */
+	protected TagToken(String parm, String source,
+			   int[] partOffsets, int numParts, Charset cs)
+		throws ParserException {
+		setText(parm, cs);
+		src = source;
+		parts = partOffsets;
+		nParts = numParts;
+		scanAttr = null;
+		if (nParts == 0) {
+			name = new String();
+			canonicalName = null;
+			nParts = 1;
+			src = name;
+			parts = new int[] { 0, 0 };
+		} else {
+			int start = parts[0];
+			int end = parts[1];
+			canonicalName = HtmlNames.lookup(src, start, end);
+			if ((canonicalName != null) &&
+			    src.regionMatches(start, canonicalName, 0,
+					      end-start)) {
+				// written as the canonical name
+				name = canonicalName;
+			} else {
+				name = decode(src.substring(start, end), cs);
+			}
+		}
+		checkStructure();
+		decoded = false;
 	}
 
 
 	public String getName() {
-		return scanAttr[0];
+		return name;
+	}
+
+
+	/* The name in lower case. For known names, this is the instance
+	 * from HtmlNames, so it can be compared by reference.
+	 */
+	public String getCanonicalName() {
+		if (canonicalName == null) {
+			canonicalName = name.toLowerCase(Locale.ENGLISH);
+		}
+		return canonicalName;
 	}
 
 
@@ -55,6 +127,7 @@ public class TagToken extends Token {
 
 	public String getAttr(int i) {
 		if ((i >= 0) && (i < nAttr)) {
+			decode();
 			return attr[i];
 		} else {
 			return null;
@@ -62,8 +135,36 @@ public class TagToken extends Token {
 	}
 
 
+	/* Name of attribute i. Unlike getAttr(), this does not decode
+	 * the other attributes and the values, so it is cheap for
+	 * matching names. A name is only decoded if it is not plain
+	 * ASCII.
+	 */
+	public String getAttrName(int i) {
+		if ((i < 0) || (i >= nAttr)) {
+			return null;
+		}
+		if (decoded) {
+			return attr[i];
+		}
+		int p = (name.startsWith("!")) ? i+1 : 1+(3*i);
+		if (src == null) {
+			return scanAttr[p];
+		}
+		int start = parts[2*p];
+		int end = parts[2*p+1];
+		for (int k = start;  k < end;  k++) {
+			if (src.charAt(k) >= 0x80) {
+				return part(p);
+			}
+		}
+		return src.substring(start, end);
+	}
+
+
 	public int attrIndex(String a) {
 		if (a != null) {
+			decode();
 			if (Debug.get(Debug.HToken)) {
 				System.err.println("TagToken.getAttr("
 						   +a+"):");
@@ -85,6 +186,7 @@ public class TagToken extends Token {
 
 	public String getValue(int i) {
 		if ((i >= 0) && (i < nAttr)) {
+			decode();
 			return value[i];
 		} else {
 			return null;
@@ -102,45 +204,98 @@ public class TagToken extends Token {
 	}
 
 
-	protected void scanAttrToAttrib()
-		throws ParserException {
+	protected String part(int i) {
+		if (src == null) {
+			return scanAttr[i];
+		}
+		return decode(src.substring(parts[2*i], parts[2*i+1]),
+			      charset);
+	}
 
-		int n, i;
 
-		if (scanAttr[0].startsWith("!")) {
+	/* Same as ensureUnquoted(part(i)), without the intermediate
+	 * string.
+	 */
+	protected String unquotedPart(int i) {
+		if (src == null) {
+			return ensureUnquoted(scanAttr[i]);
+		}
+		int start = parts[2*i];
+		int end = parts[2*i+1];
+		char c0 = src.charAt(start);
+		char c1 = src.charAt(end-1);
+		if ( ((c0 == '"') && (c1 == '"')) ||
+		     ((c0 == '\'') && (c1 == '\'')) ) {
+			start += 1;
+			end -= 1;
+		}
+		return decode(src.substring(start, end), charset);
+	}
+
+
+	protected boolean isEquals(int i) {
+		if (src == null) {
+			return scanAttr[i].equals("=");
+		}
+		return (parts[2*i+1] - parts[2*i] == 1) &&
+			(src.charAt(parts[2*i]) == '=');
+	}
+
+
+	/* Check that the parts form key = value triples, and count
+	 * the attributes.
+	 */
+	protected void checkStructure()
+		throws ParserException {
+
+		if (name.startsWith("!")) {
 			// Markup tag, like <!DOCTPYE ...>
-			nAttr = scanAttr.length-1;
-			attr = new String[nAttr];
-			value = new String[nAttr];
-			for (i = 0;  i < nAttr;  i += 1) {
-				attr[i] = scanAttr[i+1];
-				value[i] = null;
-			}
+			nAttr = nParts-1;
 			return;
 		}
-		if ( ((scanAttr.length-1) % 3) != 0 ) {
+		if ( ((nParts-1) % 3) != 0 ) {
 			throw new ParserException("Illegal attribute "
 						  +"structure in tag "
-						  +scanAttr[0]+".");
+						  +name+".");
 		}
-		if (Debug.get(Debug.HToken)) {
-			System.err.println("TagToken: Attributes for tag "
-					   +scanAttr[0]);
+		nAttr = (nParts-1) / 3;
+		for (int n = 0;  n < nAttr;  n += 1) {
+			if (!isEquals(1+(3*n)+1)) {
+				throw new ParserException(
+					      "Illegal attribute structure "
+					      +"in tag "+name
+					      +", must be key = value.");
+			}
 		}
+	}
+
+
+	protected void decode() {
+
+		int n;
 
-		nAttr = (scanAttr.length-1) / 3;
+		if (decoded) {
+			return;
+		}
+		decoded = true;
 		attr = new String[nAttr];
 		value = new String[nAttr];
 
-		for (n = 0, i = 1;  n < nAttr;  n += 1, i += 3) {
-			if (!scanAttr[1+(3*n)+1].equals("=")) {
-				throw new ParserException(
-					      "Illegal attribute structure "
-					      +"in tag "+scanAttr[0]
-					      +", must be key = value.");
+		if (name.startsWith("!")) {
+			// Markup tag, like <!DOCTPYE ...>
+			for (n = 0;  n < nAttr;  n += 1) {
+				attr[n] = part(n+1);
+				value[n] = null;
 			}
-			attr[n] = scanAttr[1+(3*n)];
-			value[n] = ensureUnquoted(scanAttr[1+(3*n)+2]);
+			return;
+		}
+		if (Debug.get(Debug.HToken)) {
+			System.err.println("TagToken: Attributes for tag "
+					   +name);
+		}
+		for (n = 0;  n < nAttr;  n += 1) {
+			attr[n] = part(1+(3*n));
+			value[n] = unquotedPart(1+(3*n)+2);
 			if (Debug.get(Debug.HToken)) {
 				System.err.println("  "+attr[n]
 						   +" = "+value[n]);
@@ -21,6 +21,9 @@
 package net.ukuehn.html;
 
 
+import java.nio.charset.Charset;
+
+
 
 
 public class TextToken extends Token {
@@ -30,8 +33,13 @@ public class TextToken extends Token {
 	}
 
 
+	public TextToken(String raw, Charset cs) {
+		super(raw, cs);
+	}
+
+
 	public String getText() {
-		return htmlVal;
+		return toString();
 	}
 
 }
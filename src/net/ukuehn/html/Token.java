@@ -21,14 +21,25 @@
 package net.ukuehn.html;
 
 
+import java.nio.charset.Charset;
 
 
 
 
+/* A token of an html document. Tokens from a byte window carry the
+ * text as read, one char per byte, and the charset of the document.
+ * The text is then only decoded when it is asked for.
+ */
 public class Token {
 
+	protected static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
 	protected String htmlVal;
 
+	/* Undecoded text, one char per byte, and its charset */
+	protected String rawVal;
+	protected Charset charset;
+
 	public Token() {
 	}
 
@@ -37,8 +48,48 @@ public class Token {
 		htmlVal = parm;
 	}
 
+
+	/* Token with undecoded text raw in charset cs. If cs is null,
+	 * raw is the text already.
+	 */
+	public Token(String raw, Charset cs) {
+		setText(raw, cs);
+	}
+
+
+	protected void setText(String raw, Charset cs) {
+		charset = cs;
+		if (cs == null) {
+			htmlVal = raw;
+		} else {
+			rawVal = raw;
+		}
+	}
+
+
 	public String toString() {
+		if (rawVal != null) {
+			htmlVal = decode(rawVal, charset);
+			rawVal = null;
+		}
 		return htmlVal;
 	}
 
+
+	/* Decode text read as one char per byte. The charset is ASCII
+	 * compatible, so text with no byte above 0x7f stays as it is.
+	 */
+	protected static String decode(String raw, Charset cs) {
+		if (cs == null) {
+			return raw;
+		}
+		int len = raw.length();
+		for (int i = 0;  i < len;  i++) {
+			if (raw.charAt(i) >= 0x80) {
+				return new String(raw.getBytes(LATIN1), cs);
+			}
+		}
+		return raw;
+	}
+
 }
@@ -0,0 +1,282 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import java.net.HttpURLConnection;
+
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Forward-only stream of the tokens of a document. Tokens are read
+ * from the tokenizer as they are asked for, and are not kept, so
+ * memory does not grow with the size of the document. Use an
+ * HtmlBuffer where the tokens are needed more than once.
+ *
+ * As an Iterator cannot throw a ParserException, a parse error ends
+ * the stream early and is kept, see checkException(). Running into
+ * one of the read limits ends the stream as well, but is not an
+ * error, see getLimitMessage().
+ */
+public class TokenCursor implements Iterator<Token> {
+
+	HtmlTokenizer ht;
+	HttpURLConnection conn;
+	Token nextToken;
+	Token lastToken;
+	int count;
+	int maxTokens;
+	boolean done;
+	boolean closed;
+	boolean headOnly;
+	boolean truncated;
+	String limitMsg;
+	ParserException error;
+
+
+	/* If headOnly is set, the stream ends after the head section of
+	 * the document, i.e. at </head> or at the first <body>, and
+	 * the connection is dropped.
+	 */
+	public TokenCursor(HttpURLConnection theConn, boolean headOnly,
+			   ReadLimits limits)
+		throws ParserException {
+		this(new HtmlTokenizer(theConn, limits), headOnly,
+		     limits.getMaxTokens());
+		conn = theConn;
+	}
+
+
+	public TokenCursor(HtmlTokenizer tokenizer) {
+		this(tokenizer, false, 0);
+	}
+
+
+	protected TokenCursor(HtmlTokenizer tokenizer, boolean headOnly,
+			      int maxTokens) {
+		ht = tokenizer;
+		conn = null;
+		nextToken = null;
+		lastToken = null;
+		count = 0;
+		this.maxTokens = maxTokens;
+		done = false;
+		closed = false;
+		this.headOnly = headOnly;
+		truncated = false;
+		limitMsg = null;
+		error = null;
+	}
+
+
+	public boolean hasNext() {
+		if ((nextToken == null) && !done) {
+			advance();
+		}
+		return (nextToken != null);
+	}
+
+
+	public Token next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Token t = nextToken;
+		nextToken = null;
+		return t;
+	}
+
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+
+	/* Throw the parse error that ended the stream, if any. */
+	public void checkException() throws ParserException {
+		if (error != null) {
+			throw error;
+		}
+	}
+
+
+	/* True if the document was not read completely, as reading
+	 * stopped at the end of the head section or at a read limit.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+
+	/* Reason why the document was cut short by the read limits,
+	 * or null if it was not.
+	 */
+	public String getLimitMessage() {
+		return limitMsg;
+	}
+
+
+	/* Body bytes read so far, as they came over the wire and after
+	 * content decoding, see HtmlTokenizer.
+	 */
+	public long getWireBytes() {
+		return ht.getWireBytes();
+	}
+
+
+	public long getBodyBytes() {
+		return ht.getBodyBytes();
+	}
+
+
+	/* Release the document. If the stream has not ended yet, the
+	 * document is abandoned and the connection is dropped. Can be
+	 * called more than once.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		boolean abandoned = !done;
+		closed = true;
+		done = true;
+		nextToken = null;
+		try {
+			ht.close();
+		} catch (Exception e) {
+			// ignore
+		}
+		if ((truncated || abandoned) && (conn != null)) {
+			// do not wait for the rest of the document
+			conn.disconnect();
+		}
+	}
+
+
+	protected void advance() {
+		Token t;
+
+		if ((lastToken != null) && headOnly && isEndOfHead(lastToken)) {
+			truncated = true;
+			finish();
+			return;
+		}
+		try {
+			if (needsNonHTMLParsingNext(lastToken)) {
+				t = ht.nextTokenNonHTML();
+			} else {
+				t = ht.nextToken();
+			}
+		} catch (ParserException e) {
+			limitMsg = ht.getLimitMessage();
+			if (limitMsg == null) {
+				error = e;
+			}
+			finish();
+			return;
+		}
+		if (t == null) {
+			finish();
+			return;
+		}
+		if ((maxTokens > 0) && (count >= maxTokens)) {
+			limitMsg = "Token limit of "
+				+String.valueOf(maxTokens)
+				+" exceeded";
+			finish();
+			return;
+		}
+		count += 1;
+		if (Debug.get(Debug.HToken)) {
+			debugToken(t);
+		}
+		lastToken = t;
+		nextToken = t;
+	}
+
+
+	protected void finish() {
+		if (limitMsg == null) {
+			limitMsg = ht.getLimitMessage();
+		}
+		if (limitMsg != null) {
+			truncated = true;
+			if (Debug.get(Debug.HTML)) {
+				System.err.println("TokenCursor: "+limitMsg);
+			}
+		}
+		done = true;
+		close();
+	}
+
+
+	protected boolean needsNonHTMLParsingNext(Token t) {
+		if (t instanceof TagToken) {
+			String name = ((TagToken)t).getCanonicalName();
+			if ((name == HtmlNames.SCRIPT) ||
+			    (name == HtmlNames.STYLE)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	protected boolean isEndOfHead(Token t) {
+		if (t instanceof TagToken) {
+			String name = ((TagToken)t).getCanonicalName();
+			if ((name == HtmlNames.END_HEAD) ||
+			    (name == HtmlNames.BODY)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	protected void debugToken(Token t) {
+
+		if (t instanceof TagToken) {
+			TagToken tt = (TagToken)t;
+			System.err.print("TokenCursor: Found tag "
+					 +tt.getName()+": '");
+			for (int i = 0;  i < tt.getAttrCount();  i++) {
+				if (i > 0) {
+					System.err.print(" ");
+				}
+				System.err.print(tt.getAttr(i)
+						 +"=\""
+						 +tt.getValue(i)
+						 +"\"");
+			}
+			System.err.println("'");
+		} else {
+			System.err.println("TokenCursor: " + t.toString());
+		}
+		System.err.println();
+	}
+
+}
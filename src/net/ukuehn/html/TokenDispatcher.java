@@ -0,0 +1,223 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+
+
+
+/* Runs several TokenVisitors in a single pass over the tokens of a
+ * document. Each token is given only to the visitors that asked for
+ * it: tags by name or by the names of their attributes, and the
+ * other tokens (text, comments, CDATA) to those that registered for
+ * text. A visitor gets each token at most once, even if it matches
+ * several registrations.
+ *
+ * A visitor that needs the contents of an element can capture the
+ * token stream. It then gets all tokens, until it releases it. The
+ * other visitors are not affected by this.
+ *
+ * Tag and attribute names are matched ignoring case. Matching an
+ * attribute name does not decode the tag, see TagToken.getAttrName().
+ */
+public class TokenDispatcher {
+
+	HashMap<String, ArrayList<Slot>> byTag;
+	HashMap<String, ArrayList<Slot>> byAttr;
+	ArrayList<Slot> byText;
+	ArrayList<Slot> slots;
+	ArrayList<Slot> capturing;
+	int serial;
+
+
+	public TokenDispatcher() {
+		byTag = new HashMap<String, ArrayList<Slot>>();
+		byAttr = new HashMap<String, ArrayList<Slot>>();
+		byText = new ArrayList<Slot>();
+		slots = new ArrayList<Slot>();
+		capturing = new ArrayList<Slot>();
+		serial = 0;
+	}
+
+
+	/* Register the visitor, which then registers its interests. */
+	public void add(TokenVisitor v) {
+		slot(v);
+		v.register(this);
+	}
+
+
+	public void registerTag(TokenVisitor v, String name) {
+		register(byTag, lower(name), slot(v));
+	}
+
+
+	public void registerAttribute(TokenVisitor v, String name) {
+		register(byAttr, lower(name), slot(v));
+	}
+
+
+	public void registerText(TokenVisitor v) {
+		Slot s = slot(v);
+		if (!byText.contains(s)) {
+			byText.add(s);
+		}
+	}
+
+
+	/* Give all following tokens to the visitor, starting with the
+	 * next one.
+	 */
+	public void capture(TokenVisitor v) {
+		Slot s = slot(v);
+		if (!capturing.contains(s)) {
+			capturing.add(s);
+		}
+	}
+
+
+	public void release(TokenVisitor v) {
+		capturing.remove(slot(v));
+	}
+
+
+	/* Dispatch all tokens, then end all visitors. */
+	public void run(Iterator<Token> it) throws ParserException {
+		while (it.hasNext()) {
+			dispatch(it.next());
+		}
+		end();
+	}
+
+
+	/* As above, then throw the parse error that ended the cursor,
+	 * if there was one.
+	 */
+	public void run(TokenCursor tc) throws ParserException {
+		run((Iterator<Token>)tc);
+		tc.checkException();
+	}
+
+
+	public void dispatch(Token t) throws ParserException {
+		int i;
+
+		serial += 1;
+		// visitors may release while being called, so go
+		// backwards
+		for (i = capturing.size()-1;  i >= 0;  i--) {
+			deliver(capturing.get(i), t);
+		}
+		if (t instanceof TagToken) {
+			TagToken tt = (TagToken)t;
+			deliver(byTag.get(tt.getCanonicalName()), t);
+			if (!byAttr.isEmpty()) {
+				for (i = 0;  i < tt.getAttrCount();  i++) {
+					// by name only, the values
+					// are decoded if a visitor
+					// asks for them
+					String a = tt.getAttrName(i);
+					if (a == null) {
+						continue;
+					}
+					deliver(byAttr.get(lower(a)), t);
+				}
+			}
+		} else if (t != null) {
+			deliver(byText, t);
+		}
+	}
+
+
+	public void end() throws ParserException {
+		for (int i = 0;  i < slots.size();  i++) {
+			slots.get(i).visitor.end();
+		}
+	}
+
+
+	protected static String lower(String s) {
+		return s.toLowerCase(Locale.ENGLISH);
+	}
+
+
+	protected void deliver(ArrayList<Slot> l, Token t)
+		throws ParserException {
+		if (l == null) {
+			return;
+		}
+		for (int i = 0;  i < l.size();  i++) {
+			deliver(l.get(i), t);
+		}
+	}
+
+
+	protected void deliver(Slot s, Token t) throws ParserException {
+		if (s.seen == serial) {
+			return;
+		}
+		s.seen = serial;
+		s.visitor.visit(t, this);
+	}
+
+
+	protected void register(HashMap<String, ArrayList<Slot>> m,
+				String key, Slot s) {
+		ArrayList<Slot> l = m.get(key);
+		if (l == null) {
+			l = new ArrayList<Slot>(2);
+			m.put(key, l);
+		}
+		if (!l.contains(s)) {
+			l.add(s);
+		}
+	}
+
+
+	protected Slot slot(TokenVisitor v) {
+		for (int i = 0;  i < slots.size();  i++) {
+			Slot s = slots.get(i);
+			if (s.visitor == v) {
+				return s;
+			}
+		}
+		Slot s = new Slot(v);
+		slots.add(s);
+		return s;
+	}
+
+
+	static class Slot {
+
+		TokenVisitor visitor;
+		int seen;
+
+		Slot(TokenVisitor v) {
+			visitor = v;
+			seen = 0;
+		}
+	}
+
+}
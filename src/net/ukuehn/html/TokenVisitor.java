@@ -0,0 +1,43 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.html;
+
+
+
+/* An analysis of the tokens of a document, run by a TokenDispatcher
+ * together with other analyses in a single pass over the tokens.
+ */
+public interface TokenVisitor {
+
+	/* Tell the dispatcher which tokens are of interest, e.g. by
+	 * calling registerTag() for each tag name.
+	 */
+	public void register(TokenDispatcher d);
+
+	/* Called for each token the visitor registered for, in document
+	 * order, and for every token while the visitor captures.
+	 */
+	public void visit(Token t, TokenDispatcher d) throws ParserException;
+
+	/* Called once after the last token of the document. */
+	public void end() throws ParserException;
+
+}
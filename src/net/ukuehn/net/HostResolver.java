@@ -0,0 +1,314 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.net;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import java.security.Security;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Shared host name resolver. Lookups run asynchronously on a thread
+ * pool, so a caller can start a lookup early and pick up the result
+ * when it needs it. A caller waiting for a lookup that is still
+ * queued runs it itself, so slow lookups of other hosts that occupy
+ * the pool do not hold it up. Results are cached, successful lookups
+ * for the positive TTL and failed lookups for the negative TTL.
+ * Concurrent lookups of the same host share one query.
+ *
+ * The TTLs are taken from the security properties
+ * networkaddress.cache.ttl and networkaddress.cache.negative.ttl
+ * if set, as for the resolver of the Java runtime.
+ */
+public class HostResolver {
+
+	protected static final int DEFAULT_TTL = 60;
+	protected static final int DEFAULT_NEGATIVE_TTL = 10;
+	protected static final int LOOKUP_THREADS = 8;
+	protected static final int PURGE_THRESHOLD = 4096;
+
+	private static HostResolver defaultResolver = null;
+
+	long ttl;
+	long negativeTtl;
+	HashMap<String, Entry> cache;
+	int purgeAt;
+	ThreadPoolExecutor executor;
+
+	/* statistics, guarded by this */
+	long requests;
+	long hits;
+	long negativeHits;
+	long shared;
+	long lookups;
+	long failures;
+	long lookupNanos;
+	long maxLookupNanos;
+
+
+	public HostResolver(int ttlSecs, int negativeTtlSecs) {
+		ttl = ttlSecs * 1000L;
+		negativeTtl = negativeTtlSecs * 1000L;
+		cache = new HashMap<String, Entry>();
+		purgeAt = PURGE_THRESHOLD;
+		executor = new ThreadPoolExecutor(LOOKUP_THREADS,
+						  LOOKUP_THREADS,
+						  30, TimeUnit.SECONDS,
+					  new LinkedBlockingQueue<Runnable>(),
+						  new LookupThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+
+	public static synchronized HostResolver getDefault() {
+		if (defaultResolver == null) {
+			defaultResolver = new HostResolver(
+				  getTtlProperty("networkaddress.cache.ttl",
+						 DEFAULT_TTL),
+				  getTtlProperty(
+				      "networkaddress.cache.negative.ttl",
+				      DEFAULT_NEGATIVE_TTL));
+		}
+		return defaultResolver;
+	}
+
+
+	protected static int getTtlProperty(String name, int def) {
+		String val = Security.getProperty(name);
+		if (val == null) {
+			return def;
+		}
+		try {
+			int n = Integer.parseInt(val.trim());
+			// a negative value means forever
+			return (n < 0) ? Integer.MAX_VALUE / 1000 : n;
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+
+	/* Start the lookup of the given host, unless the result is
+	 * already cached or a lookup is under way.
+	 */
+	public Future<InetAddress> resolveAsync(String host) {
+		return resolveTask(host);
+	}
+
+
+	protected FutureTask<InetAddress> resolveTask(String host) {
+		String key = host.toLowerCase();
+		Entry e;
+		long now;
+
+		synchronized (this) {
+			requests += 1;
+			now = System.currentTimeMillis();
+			e = cache.get(key);
+			if (e != null) {
+				if (e.expires == 0) {
+					shared += 1;
+					return e.task;
+				} else if (e.expires > now) {
+					if (e.failed) {
+						negativeHits += 1;
+					} else {
+						hits += 1;
+					}
+					return e.task;
+				}
+			}
+			e = new Entry(host);
+			cache.put(key, e);
+			if (cache.size() >= purgeAt) {
+				purge(now);
+			}
+		}
+		executor.execute(e.task);
+		return e.task;
+	}
+
+
+	/* Use at least n threads for lookups, e.g. one per worker
+	 * that may wait for a lookup.
+	 */
+	public synchronized void setThreads(int n) {
+		if (n > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(n);
+			executor.setCorePoolSize(n);
+		}
+	}
+
+
+	/* Look up the given host and wait for the result. */
+	public InetAddress resolve(String host)
+		throws UnknownHostException {
+
+		FutureTask<InetAddress> f = resolveTask(host);
+		// run the lookup here if no pool thread has taken it
+		// yet, the pool thread then finds it done
+		f.run();
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UnknownHostException(host);
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof UnknownHostException) {
+				throw (UnknownHostException)t;
+			}
+			UnknownHostException ue
+				= new UnknownHostException(host);
+			ue.initCause(t);
+			throw ue;
+		}
+	}
+
+
+	/* Remove expired entries, and grow the threshold if the
+	 * table is still full of valid ones.
+	 */
+	protected void purge(long now) {
+		Iterator<Entry> it = cache.values().iterator();
+		while (it.hasNext()) {
+			Entry e = it.next();
+			if ((e.expires != 0) && (e.expires <= now)) {
+				it.remove();
+			}
+		}
+		if (cache.size() >= purgeAt / 2) {
+			purgeAt = cache.size() * 2;
+		}
+	}
+
+
+	protected synchronized void lookupDone(Entry e, boolean ok,
+					       long nanos) {
+		long now = System.currentTimeMillis();
+		e.failed = !ok;
+		e.expires = now + ((ok) ? ttl : negativeTtl);
+		lookups += 1;
+		if (!ok) {
+			failures += 1;
+		}
+		lookupNanos += nanos;
+		if (nanos > maxLookupNanos) {
+			maxLookupNanos = nanos;
+		}
+	}
+
+
+	public synchronized String getStats() {
+		StringBuilder sb = new StringBuilder();
+		long served = hits + negativeHits + shared;
+		sb.append("HostResolver: ").append(requests);
+		sb.append(" requests, ").append(hits).append(" hits, ");
+		sb.append(negativeHits).append(" negative hits, ");
+		sb.append(shared).append(" shared lookups");
+		if (requests > 0) {
+			sb.append(", hit rate ");
+			sb.append(String.valueOf((served * 1000 / requests)
+						 / 10.0));
+			sb.append("%");
+		}
+		sb.append("\nHostResolver: ").append(lookups);
+		sb.append(" lookups, ").append(failures);
+		sb.append(" failed");
+		if (lookups > 0) {
+			sb.append(", latency avg ");
+			sb.append(String.valueOf(lookupNanos / lookups
+						 / 1000000L));
+			sb.append(" ms, max ");
+			sb.append(String.valueOf(maxLookupNanos / 1000000L));
+			sb.append(" ms");
+		}
+		return sb.toString();
+	}
+
+
+	/* Cache entry. expires is zero while the lookup is running. */
+	class Entry implements Callable<InetAddress> {
+
+		String host;
+		FutureTask<InetAddress> task;
+		long expires;
+		boolean failed;
+
+
+		Entry(String theHost) {
+			host = theHost;
+			task = new FutureTask<InetAddress>(this);
+			expires = 0;
+			failed = false;
+		}
+
+
+		public InetAddress call() throws UnknownHostException {
+			long start = System.nanoTime();
+			boolean ok = false;
+			try {
+				InetAddress ia = InetAddress.getByName(host);
+				ok = true;
+				return ia;
+			} finally {
+				long t = System.nanoTime() - start;
+				lookupDone(this, ok, t);
+				if (Debug.get(Debug.Connection)) {
+					System.err.println("HostResolver: "
+						   +host+((ok) ? "" : " failed")
+						   +" after "
+						   +String.valueOf(t/1000000L)
+						   +" ms");
+				}
+			}
+		}
+	}
+
+
+	static class LookupThreadFactory implements ThreadFactory {
+
+		int n = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "wfat-dns-"
+					      +String.valueOf(n++));
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+}
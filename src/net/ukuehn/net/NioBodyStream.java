@@ -0,0 +1,192 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.net;
+
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import java.util.LinkedList;
+
+
+
+/* Response body of a NioExchange. The event loop appends data, the
+ * requesting thread reads it. If more than HIGH_WATER bytes are
+ * buffered, the event loop stops reading from the socket until the
+ * reader has consumed the buffer down to LOW_WATER bytes.
+ */
+class NioBodyStream extends InputStream {
+
+	static final int HIGH_WATER = 256*1024;
+	static final int LOW_WATER = 64*1024;
+
+	NioExchange ex;
+	int readTimeout;
+	LinkedList<byte[]> chunks;
+	int headOff;
+	int avail;
+	boolean done;
+	boolean closed;
+	boolean suspended;
+	IOException error;
+
+
+	NioBodyStream(NioExchange exchange, int timeout) {
+		ex = exchange;
+		readTimeout = timeout;
+		chunks = new LinkedList<byte[]>();
+		headOff = 0;
+		avail = 0;
+		done = false;
+		closed = false;
+		suspended = false;
+		error = null;
+	}
+
+
+	/* Called by the event loop */
+	synchronized void add(byte[] b, int off, int len) {
+		if (closed || (len <= 0)) {
+			return;
+		}
+		byte[] c = new byte[len];
+		System.arraycopy(b, off, c, 0, len);
+		chunks.add(c);
+		avail += len;
+		notifyAll();
+	}
+
+
+	/* Called by the event loop */
+	synchronized boolean isFull() {
+		if (avail >= HIGH_WATER) {
+			suspended = true;
+			return true;
+		}
+		return false;
+	}
+
+
+	/* Called by the event loop */
+	synchronized void finish() {
+		done = true;
+		notifyAll();
+	}
+
+
+	/* Called by the event loop */
+	synchronized void fail(IOException e) {
+		if (!done) {
+			error = e;
+			done = true;
+		}
+		notifyAll();
+	}
+
+
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		if (n <= 0) {
+			return -1;
+		}
+		return b[0] & 0xff;
+	}
+
+
+	public synchronized int read(byte[] b, int off, int len)
+		throws IOException {
+
+		if (len == 0) {
+			return 0;
+		}
+		long deadline = 0;
+		if (readTimeout > 0) {
+			deadline = System.currentTimeMillis() + readTimeout;
+		}
+		while ((avail == 0) && !done && !closed) {
+			long wait = 0;
+			if (deadline > 0) {
+				wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					throw new SocketTimeoutException(
+							  "Read timed out");
+				}
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted");
+			}
+		}
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (avail == 0) {
+			if (error != null) {
+				throw error;
+			}
+			return -1;
+		}
+
+		int n = 0;
+		while ((n < len) && !chunks.isEmpty()) {
+			byte[] c = chunks.getFirst();
+			int k = Math.min(len - n, c.length - headOff);
+			System.arraycopy(c, headOff, b, off+n, k);
+			n += k;
+			headOff += k;
+			if (headOff == c.length) {
+				chunks.removeFirst();
+				headOff = 0;
+			}
+		}
+		avail -= n;
+		if (suspended && (avail < LOW_WATER) && !done) {
+			suspended = false;
+			ex.resume();
+		}
+		return n;
+	}
+
+
+	public synchronized int available() {
+		return avail;
+	}
+
+
+	public void close() {
+		boolean abort;
+		synchronized (this) {
+			abort = !done;
+			closed = true;
+			chunks.clear();
+			avail = 0;
+			notifyAll();
+		}
+		if (abort) {
+			ex.abort();
+		}
+	}
+
+}
@@ -0,0 +1,937 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.net;
+
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import java.util.ArrayList;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* One request/response exchange on a non-blocking socket. All
+ * methods that touch the channel or the buffers run on the event
+ * loop thread. The thread that issued the request waits in
+ * awaitHeaders() and then reads the body from a NioBodyStream.
+ *
+ * The exchange runs through the following phases:
+ *
+ * P_CONNECT      non-blocking connect in progress
+ * P_TUNNEL_SEND  sending CONNECT request to the proxy (https only)
+ * P_TUNNEL_RECV  reading the proxy's response to CONNECT
+ * P_SEND         sending the request, including TLS handshake
+ * P_HEADERS      reading status line and headers
+ * P_BODY         reading the response body
+ * P_DONE         finished or failed, channel closed
+ */
+class NioExchange {
+
+	static final int P_CONNECT = 0;
+	static final int P_TUNNEL_SEND = 1;
+	static final int P_TUNNEL_RECV = 2;
+	static final int P_SEND = 3;
+	static final int P_HEADERS = 4;
+	static final int P_BODY = 5;
+	static final int P_DONE = 6;
+
+	/* States for decoding a chunked body */
+	static final int CH_SIZE = 0;
+	static final int CH_DATA = 1;
+	static final int CH_DATA_END = 2;
+	static final int CH_TRAILER = 3;
+
+	static final int IN_BUFFER_SIZE = 32768;
+	static final int MAX_LINE = 8192;
+
+	static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	NioHttpClient.EventLoop loop;
+	InetSocketAddress addr;
+	String host;
+	int port;
+	SSLContext sslContext;
+	byte[] request;
+	byte[] tunnelRequest;
+	boolean noBody;
+
+	SocketChannel ch;
+	SelectionKey key;
+	SSLEngine engine;
+	ByteBuffer appOut;
+	ByteBuffer appIn;
+	ByteBuffer netIn;
+	ByteBuffer netOut;
+	int phase;
+	boolean eof;
+	boolean startTlsPending;
+
+	ArrayList<String> hdrKeys;
+	ArrayList<String> hdrVals;
+	int respCode;
+	String respMsg;
+	boolean headersReady;
+	IOException error;
+
+	long contentLength;
+	long received;
+	boolean chunked;
+	int chunkState;
+	long chunkRemaining;
+	NioBodyStream body;
+
+
+	/* @param tunnelReq  CONNECT request to send to a proxy before
+	 *                   starting TLS, or null. If sslCtx is null,
+	 *                   no TLS is used.
+	 */
+	NioExchange(NioHttpClient.EventLoop l, InetSocketAddress a,
+		    String h, int p, SSLContext sslCtx,
+		    byte[] req, byte[] tunnelReq, boolean head,
+		    int readTimeout) {
+		loop = l;
+		addr = a;
+		host = h;
+		port = p;
+		sslContext = sslCtx;
+		request = req;
+		tunnelRequest = tunnelReq;
+		noBody = head;
+		phase = P_CONNECT;
+		eof = false;
+		startTlsPending = false;
+		appIn = ByteBuffer.allocate(IN_BUFFER_SIZE);
+		hdrKeys = new ArrayList<String>();
+		hdrVals = new ArrayList<String>();
+		respCode = -1;
+		respMsg = null;
+		headersReady = false;
+		error = null;
+		contentLength = -1;
+		received = 0;
+		chunked = false;
+		chunkState = CH_SIZE;
+		body = new NioBodyStream(this, readTimeout);
+	}
+
+
+	/* Called by the requesting thread */
+	void start() {
+		loop.execute(new Runnable() {
+				public void run() {
+					register();
+				}
+			});
+	}
+
+
+	/* Called by the requesting thread or the body stream to
+	 * terminate the exchange early.
+	 */
+	void abort() {
+		loop.execute(new Runnable() {
+				public void run() {
+					fail(new IOException(
+						  "Connection aborted"));
+				}
+			});
+	}
+
+
+	/* Called by the body stream when there is room again after
+	 * reading was suspended.
+	 */
+	void resume() {
+		loop.execute(new Runnable() {
+				public void run() {
+					handle();
+				}
+			});
+	}
+
+
+	synchronized void awaitHeaders(long timeout) throws IOException {
+		long deadline = 0;
+		if (timeout > 0) {
+			deadline = System.currentTimeMillis() + timeout;
+		}
+		while (!headersReady && (error == null)) {
+			long wait = 0;
+			if (deadline > 0) {
+				wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					abort();
+					throw new SocketTimeoutException(
+							  "Read timed out");
+				}
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort();
+				throw new IOException("Interrupted");
+			}
+		}
+		if (!headersReady) {
+			throw error;
+		}
+	}
+
+
+	synchronized int getResponseCode() {
+		return respCode;
+	}
+
+
+	synchronized String getResponseMessage() {
+		return respMsg;
+	}
+
+
+	synchronized int getHeaderCount() {
+		return hdrKeys.size();
+	}
+
+
+	synchronized String getHeaderKey(int i) {
+		if ((i < 0) || (i >= hdrKeys.size())) {
+			return null;
+		}
+		return hdrKeys.get(i);
+	}
+
+
+	synchronized String getHeaderValue(int i) {
+		if ((i < 0) || (i >= hdrVals.size())) {
+			return null;
+		}
+		return hdrVals.get(i);
+	}
+
+
+	/* Return the last value given for the header, like the
+	 * HttpURLConnection of the Java runtime.
+	 */
+	synchronized String getHeaderValue(String name) {
+		if (name == null) {
+			return null;
+		}
+		for (int i = hdrKeys.size()-1;  i > 0;  i--) {
+			if (name.equalsIgnoreCase(hdrKeys.get(i))) {
+				return hdrVals.get(i);
+			}
+		}
+		return null;
+	}
+
+
+	NioBodyStream getBody() {
+		return body;
+	}
+
+
+	void register() {
+		try {
+			ch = SocketChannel.open();
+			ch.configureBlocking(false);
+			key = ch.register(loop.getSelector(),
+					  SelectionKey.OP_CONNECT, this);
+			if (Debug.get(Debug.Connection)) {
+				System.err.println("NioExchange: connecting "
+						   +addr.toString());
+			}
+			ch.connect(addr);
+		} catch (IOException e) {
+			fail(e);
+			return;
+		}
+		handle();
+	}
+
+
+	/* Make as much progress as possible without blocking, then
+	 * register for the events needed to continue.
+	 */
+	void handle() {
+		if (phase == P_DONE) {
+			return;
+		}
+		try {
+			if (phase == P_CONNECT) {
+				if (!ch.finishConnect()) {
+					return;
+				}
+				connected();
+			}
+			boolean progress = true;
+			while (progress && (phase != P_DONE)) {
+				progress = flushOut();
+				if (readIn()) {
+					progress = true;
+				}
+				if (processIn()) {
+					progress = true;
+				}
+			}
+			if (phase != P_DONE) {
+				updateInterest();
+			}
+		} catch (IOException e) {
+			fail(e);
+		} catch (RuntimeException e) {
+			// do not let a broken exchange stop the event loop
+			fail(new IOException(e.toString()));
+		}
+	}
+
+
+	void connected() throws IOException {
+		if (tunnelRequest != null) {
+			appOut = ByteBuffer.wrap(tunnelRequest);
+			phase = P_TUNNEL_SEND;
+		} else {
+			if (sslContext != null) {
+				startTls();
+			}
+			appOut = ByteBuffer.wrap(request);
+			phase = P_SEND;
+		}
+	}
+
+
+	void startTls() throws IOException {
+		engine = sslContext.createSSLEngine(host, port);
+		engine.setUseClientMode(true);
+		SSLSession s = engine.getSession();
+		netIn = ByteBuffer.allocate(s.getPacketBufferSize());
+		netOut = ByteBuffer.allocate(s.getPacketBufferSize());
+		if (appIn.capacity() < s.getApplicationBufferSize()) {
+			appIn = ByteBuffer.allocate(
+				      s.getApplicationBufferSize());
+		}
+		appIn.clear();
+		engine.beginHandshake();
+	}
+
+
+	boolean isHandshaking() {
+		HandshakeStatus hs = engine.getHandshakeStatus();
+		return ( (hs != HandshakeStatus.NOT_HANDSHAKING) &&
+			 (hs != HandshakeStatus.FINISHED) );
+	}
+
+
+	void runTasks() {
+		Runnable r;
+		while ((r = engine.getDelegatedTask()) != null) {
+			r.run();
+		}
+	}
+
+
+	boolean sendComplete() {
+		if ((appOut != null) && appOut.hasRemaining()) {
+			return false;
+		}
+		if ((engine != null) && (netOut.position() > 0)) {
+			return false;
+		}
+		return true;
+	}
+
+
+	boolean flushOut() throws IOException {
+		boolean did = false;
+
+		if (engine != null) {
+			did = wrapOut();
+			netOut.flip();
+			if (netOut.hasRemaining()) {
+				if (ch.write(netOut) > 0) {
+					did = true;
+				}
+			}
+			netOut.compact();
+		} else if ((appOut != null) && appOut.hasRemaining()) {
+			if (ch.write(appOut) > 0) {
+				did = true;
+			}
+		}
+		if (sendComplete()) {
+			if (phase == P_TUNNEL_SEND) {
+				phase = P_TUNNEL_RECV;
+				did = true;
+			} else if (phase == P_SEND) {
+				phase = P_HEADERS;
+				did = true;
+			}
+		}
+		return did;
+	}
+
+
+	boolean wrapOut() throws IOException {
+		boolean did = false;
+
+		while (true) {
+			HandshakeStatus hs = engine.getHandshakeStatus();
+			if (hs == HandshakeStatus.NEED_TASK) {
+				runTasks();
+				did = true;
+				continue;
+			}
+			boolean app = (!isHandshaking() && (appOut != null)
+				       && appOut.hasRemaining());
+			if ((hs != HandshakeStatus.NEED_WRAP) && !app) {
+				break;
+			}
+			ByteBuffer src = (app) ? appOut : EMPTY;
+			SSLEngineResult r = engine.wrap(src, netOut);
+			SSLEngineResult.Status st = r.getStatus();
+			if (st == SSLEngineResult.Status.CLOSED) {
+				throw new IOException("TLS connection closed");
+			}
+			if (st == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+				// write pending data first
+				break;
+			}
+			if ((r.bytesConsumed() == 0) &&
+			    (r.bytesProduced() == 0)) {
+				break;
+			}
+			did = true;
+		}
+		return did;
+	}
+
+
+	boolean wantRead() {
+		if ((engine != null) && (engine.getHandshakeStatus()
+					 == HandshakeStatus.NEED_UNWRAP)) {
+			return true;
+		}
+		switch (phase) {
+		case P_TUNNEL_RECV:
+		case P_HEADERS:
+			return true;
+		case P_BODY:
+			return !body.isFull();
+		default:
+			return false;
+		}
+	}
+
+
+	boolean readIn() throws IOException {
+		boolean did = false;
+		int n;
+
+		if (!wantRead()) {
+			return false;
+		}
+		if (engine != null) {
+			if (!eof && netIn.hasRemaining()) {
+				n = ch.read(netIn);
+				if (n < 0) {
+					eof = true;
+					closeInbound();
+				}
+				if (n != 0) {
+					did = true;
+				}
+			}
+			if (unwrapIn()) {
+				did = true;
+			}
+		} else if (!eof && appIn.hasRemaining()) {
+			n = ch.read(appIn);
+			if (n < 0) {
+				eof = true;
+			}
+			if (n != 0) {
+				did = true;
+			}
+		}
+		return did;
+	}
+
+
+	void closeInbound() {
+		try {
+			engine.closeInbound();
+		} catch (SSLException e) {
+			// peer did not send close_notify, which is common
+		}
+	}
+
+
+	boolean unwrapIn() throws IOException {
+		boolean did = false;
+
+		netIn.flip();
+		try {
+			while (true) {
+				HandshakeStatus hs
+					= engine.getHandshakeStatus();
+				if (hs == HandshakeStatus.NEED_TASK) {
+					runTasks();
+					did = true;
+					continue;
+				}
+				if (hs == HandshakeStatus.NEED_WRAP) {
+					break;
+				}
+				if (!netIn.hasRemaining()) {
+					break;
+				}
+				SSLEngineResult r = engine.unwrap(netIn, appIn);
+				SSLEngineResult.Status st = r.getStatus();
+				if ((r.bytesConsumed() > 0) ||
+				    (r.bytesProduced() > 0)) {
+					did = true;
+				}
+				if (st == SSLEngineResult.Status.CLOSED) {
+					eof = true;
+					did = true;
+					break;
+				}
+				if ((st != SSLEngineResult.Status.OK) ||
+				    ((r.bytesConsumed() == 0) &&
+				     (r.bytesProduced() == 0) &&
+				     (r.getHandshakeStatus()
+				      != HandshakeStatus.NEED_TASK))) {
+					// underflow, overflow or stuck
+					break;
+				}
+			}
+		} finally {
+			netIn.compact();
+		}
+		return did;
+	}
+
+
+	boolean processIn() throws IOException {
+		boolean did = false;
+
+		appIn.flip();
+		try {
+			if ((phase == P_TUNNEL_RECV) ||
+			    (phase == P_HEADERS)) {
+				did = parseHeaders();
+			}
+			if ((phase == P_BODY) && appIn.hasRemaining()) {
+				if (deliverBody()) {
+					did = true;
+				}
+			}
+		} finally {
+			appIn.compact();
+		}
+		if (startTlsPending) {
+			startTlsPending = false;
+			appIn.clear();
+			startTls();
+			did = true;
+		}
+		if (eof && !did && (phase != P_DONE)) {
+			handleEof();
+			did = true;
+		}
+		return did;
+	}
+
+
+	void handleEof() {
+		switch (phase) {
+		case P_BODY:
+			if (!chunked && (contentLength < 0)) {
+				finish();
+			} else {
+				fail(new IOException("Premature end of "
+						     +"response body"));
+			}
+			break;
+		case P_TUNNEL_RECV:
+		case P_HEADERS:
+			fail(new IOException("Unexpected end of file "
+					     +"from server"));
+			break;
+		default:
+			fail(new IOException("Connection closed by peer"));
+			break;
+		}
+	}
+
+
+	/* Read one line terminated by LF from appIn, and strip the
+	 * line end. Returns null if no full line is available.
+	 */
+	String readLine() throws IOException {
+		byte[] b = appIn.array();
+		int start = appIn.position();
+		int lim = appIn.limit();
+		for (int i = start;  i < lim;  i++) {
+			if (b[i] == '\n') {
+				int end = i;
+				if ((end > start) && (b[end-1] == '\r')) {
+					end -= 1;
+				}
+				appIn.position(i+1);
+				return latin1(b, start, end-start);
+			}
+		}
+		if (lim - start > MAX_LINE) {
+			throw new IOException("Line too long in response");
+		}
+		return null;
+	}
+
+
+	static String latin1(byte[] b, int off, int len) {
+		try {
+			return new String(b, off, len, "ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			// every Java runtime has ISO-8859-1
+			return new String(b, off, len);
+		}
+	}
+
+
+	/* Parse the status line and the header block, if it is
+	 * completely available in appIn.
+	 */
+	boolean parseHeaders() throws IOException {
+		byte[] b = appIn.array();
+		int start = appIn.position();
+		int lim = appIn.limit();
+		int end = -1;
+		int ls = start;
+
+		for (int i = start;  i < lim;  i++) {
+			if (b[i] == '\n') {
+				int le = i;
+				if ((le > ls) && (b[le-1] == '\r')) {
+					le -= 1;
+				}
+				if ((le == ls) && (ls > start)) {
+					end = i+1;
+					break;
+				}
+				ls = i+1;
+			}
+		}
+		if (end < 0) {
+			if ((start == 0) && (lim == appIn.capacity())) {
+				throw new IOException("Response header "
+						      +"too large");
+			}
+			return false;
+		}
+
+		ArrayList<String> keys = new ArrayList<String>();
+		ArrayList<String> vals = new ArrayList<String>();
+		String statusLine = readLine();
+		keys.add(null);
+		vals.add(statusLine);
+		int code = parseStatus(statusLine);
+		String line;
+		while ((line = readLine()) != null) {
+			if (line.length() == 0) {
+				break;
+			}
+			char c = line.charAt(0);
+			if (((c == ' ') || (c == '\t')) && (keys.size() > 1)) {
+				// continuation of previous header line
+				int last = vals.size()-1;
+				vals.set(last, vals.get(last)+" "
+					 +line.trim());
+				continue;
+			}
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				keys.add(line.trim());
+				vals.add("");
+			} else {
+				keys.add(line.substring(0, colon).trim());
+				vals.add(line.substring(colon+1).trim());
+			}
+		}
+
+		if (phase == P_TUNNEL_RECV) {
+			if (code == 200) {
+				// tunnel established, discard response
+				// and start TLS with the server
+				appIn.position(appIn.limit());
+				startTlsPending = true;
+				appOut = ByteBuffer.wrap(request);
+				phase = P_SEND;
+				return true;
+			}
+			// otherwise the proxy's response is what
+			// the caller gets
+		} else if ((code >= 100) && (code < 200)) {
+			// interim response, wait for the final one
+			return true;
+		}
+
+		setFraming(code, keys, vals);
+		phase = P_BODY;
+		synchronized (this) {
+			hdrKeys = keys;
+			hdrVals = vals;
+			respCode = code;
+			respMsg = statusMessage(statusLine);
+			headersReady = true;
+			notifyAll();
+		}
+		if (!chunked && (contentLength == 0)) {
+			finish();
+		}
+		return true;
+	}
+
+
+	int parseStatus(String statusLine) throws IOException {
+		if ((statusLine == null) || !statusLine.startsWith("HTTP/")) {
+			throw new IOException("Invalid status line: "
+					      +statusLine);
+		}
+		int sp = statusLine.indexOf(' ');
+		if (sp < 0) {
+			throw new IOException("Invalid status line: "
+					      +statusLine);
+		}
+		int sp2 = statusLine.indexOf(' ', sp+1);
+		if (sp2 < 0) {
+			sp2 = statusLine.length();
+		}
+		try {
+			return Integer.parseInt(
+				     statusLine.substring(sp+1, sp2).trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: "
+					      +statusLine);
+		}
+	}
+
+
+	String statusMessage(String statusLine) {
+		int sp = statusLine.indexOf(' ');
+		int sp2 = statusLine.indexOf(' ', sp+1);
+		if (sp2 < 0) {
+			return "";
+		}
+		return statusLine.substring(sp2+1).trim();
+	}
+
+
+	void setFraming(int code, ArrayList<String> keys,
+			ArrayList<String> vals) {
+		String te = null;
+		String cl = null;
+
+		for (int i = 1;  i < keys.size();  i++) {
+			if ("Transfer-Encoding".equalsIgnoreCase(keys.get(i))) {
+				te = vals.get(i);
+			} else if ("Content-Length".
+				   equalsIgnoreCase(keys.get(i))) {
+				cl = vals.get(i);
+			}
+		}
+		chunked = false;
+		contentLength = -1;
+		if (noBody || (code == 204) || (code == 304)) {
+			contentLength = 0;
+		} else if ((te != null) &&
+			   (te.toLowerCase().indexOf("chunked") >= 0)) {
+			chunked = true;
+		} else if (cl != null) {
+			try {
+				contentLength = Long.parseLong(cl.trim());
+			} catch (NumberFormatException e) {
+				contentLength = -1;
+			}
+		}
+	}
+
+
+	boolean deliverBody() throws IOException {
+		boolean did = false;
+		byte[] b = appIn.array();
+
+		if (!chunked) {
+			int n = appIn.remaining();
+			if (contentLength >= 0) {
+				n = (int)Math.min(n, contentLength - received);
+			}
+			if (n > 0) {
+				body.add(b, appIn.position(), n);
+				appIn.position(appIn.position()+n);
+				received += n;
+				did = true;
+			}
+			if ((contentLength >= 0) &&
+			    (received >= contentLength)) {
+				finish();
+			}
+			return did;
+		}
+
+		while (appIn.hasRemaining() && (phase == P_BODY)) {
+			String line;
+			switch (chunkState) {
+			case CH_SIZE:
+				line = readLine();
+				if (line == null) {
+					return did;
+				}
+				chunkRemaining = parseChunkSize(line);
+				chunkState = (chunkRemaining == 0)
+					? CH_TRAILER : CH_DATA;
+				break;
+			case CH_DATA:
+				int n = (int)Math.min(appIn.remaining(),
+						      chunkRemaining);
+				body.add(b, appIn.position(), n);
+				appIn.position(appIn.position()+n);
+				chunkRemaining -= n;
+				received += n;
+				if (chunkRemaining == 0) {
+					chunkState = CH_DATA_END;
+				}
+				break;
+			case CH_DATA_END:
+				line = readLine();
+				if (line == null) {
+					return did;
+				}
+				chunkState = CH_SIZE;
+				break;
+			case CH_TRAILER:
+				line = readLine();
+				if (line == null) {
+					return did;
+				}
+				if (line.length() == 0) {
+					finish();
+				}
+				break;
+			}
+			did = true;
+		}
+		return did;
+	}
+
+
+	long parseChunkSize(String line) throws IOException {
+		int semi = line.indexOf(';');
+		if (semi >= 0) {
+			line = line.substring(0, semi);
+		}
+		try {
+			return Long.parseLong(line.trim(), 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid chunk size: "+line);
+		}
+	}
+
+
+	void updateInterest() {
+		int ops = 0;
+
+		if (!key.isValid()) {
+			return;
+		}
+		if (!sendComplete() ||
+		    ((engine != null) && (engine.getHandshakeStatus()
+					  == HandshakeStatus.NEED_WRAP))) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		if (wantRead()) {
+			ops |= SelectionKey.OP_READ;
+		}
+		key.interestOps(ops);
+	}
+
+
+	void finish() {
+		phase = P_DONE;
+		close();
+		body.finish();
+		if (Debug.get(Debug.Connection)) {
+			System.err.println("NioExchange: "+host+" done, "
+					   +String.valueOf(received)
+					   +" bytes");
+		}
+	}
+
+
+	void fail(IOException e) {
+		if (phase == P_DONE) {
+			return;
+		}
+		phase = P_DONE;
+		close();
+		if (Debug.get(Debug.Connection)) {
+			System.err.println("NioExchange: "+host+" failed: "
+					   +e.getMessage());
+		}
+		synchronized (this) {
+			if (error == null) {
+				error = e;
+			}
+			notifyAll();
+		}
+		body.fail(e);
+	}
+
+
+	void close() {
+		if (key != null) {
+			key.cancel();
+		}
+		if (ch != null) {
+			try {
+				ch.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+}
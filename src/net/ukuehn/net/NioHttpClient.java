@@ -0,0 +1,190 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.net;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.Proxy;
+import java.net.HttpURLConnection;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.net.ssl.SSLContext;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Transport based on non-blocking sockets. A small number of event
+ * loop threads, each with its own selector, drive all connections.
+ * The thread using a connection only waits for the response headers
+ * and reads the body from a buffer that is filled by the event loop.
+ *
+ * Connections are never kept alive, and redirects are only followed
+ * if requested via setInstanceFollowRedirects(). Server certificates
+ * and host names are checked by the given SSL context only.
+ */
+public class NioHttpClient implements HttpTransport {
+
+	Proxy proxy;
+	SSLContext sslContext;
+	EventLoop[] loops;
+	int nextLoop;
+
+
+	public NioHttpClient(Proxy theProxy, SSLContext ctx, int nThreads)
+		throws IOException {
+		proxy = theProxy;
+		sslContext = ctx;
+		if (nThreads < 1) {
+			nThreads = 1;
+		}
+		loops = new EventLoop[nThreads];
+		for (int i = 0;  i < nThreads;  i++) {
+			loops[i] = new EventLoop(i);
+			loops[i].start();
+		}
+		nextLoop = 0;
+	}
+
+
+	public HttpURLConnection openConnection(URL u) throws IOException {
+		String p = u.getProtocol();
+		if (!p.equalsIgnoreCase("http") &&
+		    !p.equalsIgnoreCase("https")) {
+			throw new IOException("Unsupported protocol "+p);
+		}
+		return new NioHttpConnection(u, this);
+	}
+
+
+	public void close() {
+		for (int i = 0;  i < loops.length;  i++) {
+			loops[i].shutdown();
+		}
+	}
+
+
+	Proxy getProxy() {
+		return proxy;
+	}
+
+
+	SSLContext getSSLContext() {
+		return sslContext;
+	}
+
+
+	/* Hand out the event loops round robin. */
+	synchronized EventLoop nextLoop() {
+		EventLoop l = loops[nextLoop];
+		nextLoop = (nextLoop + 1) % loops.length;
+		return l;
+	}
+
+
+	/* One thread running a selector. All operations on the channels
+	 * registered with the selector are done on this thread; other
+	 * threads submit tasks to be run here.
+	 */
+	static class EventLoop extends Thread {
+
+		Selector selector;
+		ConcurrentLinkedQueue<Runnable> tasks;
+		volatile boolean running;
+
+
+		EventLoop(int n) throws IOException {
+			super("wfat-nio-"+String.valueOf(n));
+			setDaemon(true);
+			selector = Selector.open();
+			tasks = new ConcurrentLinkedQueue<Runnable>();
+			running = true;
+		}
+
+
+		Selector getSelector() {
+			return selector;
+		}
+
+
+		void execute(Runnable r) {
+			tasks.add(r);
+			selector.wakeup();
+		}
+
+
+		void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+
+		public void run() {
+			while (running) {
+				try {
+					selector.select(1000);
+				} catch (IOException e) {
+					// try again
+					continue;
+				}
+				Runnable r;
+				while ((r = tasks.poll()) != null) {
+					r.run();
+				}
+				Iterator<SelectionKey> it
+					= selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey k = it.next();
+					it.remove();
+					NioExchange ex
+						= (NioExchange)k.attachment();
+					if (k.isValid() && (ex != null)) {
+						ex.handle();
+					}
+				}
+			}
+			Iterator<SelectionKey> it = selector.keys().iterator();
+			while (it.hasNext()) {
+				NioExchange ex
+					= (NioExchange)it.next().attachment();
+				if (ex != null) {
+					ex.fail(new IOException(
+						      "Transport closed"));
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			if (Debug.get(Debug.Connection)) {
+				System.err.println(getName()+" terminated");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,421 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.net;
+
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.io.UnsupportedEncodingException;
+
+import java.net.URL;
+import java.net.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.Authenticator;
+import java.net.PasswordAuthentication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* HttpURLConnection on top of the NioHttpClient, so that the rest
+ * of the toolkit can use it like the connections of the Java
+ * runtime. Only requests without a body are supported.
+ */
+public class NioHttpConnection extends HttpURLConnection {
+
+	protected static final int MAX_REDIRECTS = 20;
+
+	protected static final String DEFAULT_ACCEPT
+		= "text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2";
+
+	NioHttpClient client;
+	NioExchange ex;
+	boolean proxied;
+
+
+	NioHttpConnection(URL u, NioHttpClient c) {
+		super(u);
+		client = c;
+		ex = null;
+		Proxy p = client.getProxy();
+		proxied = ((p != null) && (p.type() == Proxy.Type.HTTP));
+	}
+
+
+	public void connect() throws IOException {
+		int redirects = 0;
+		String proxyAuth = null;
+		boolean triedAuth = false;
+
+		if (connected) {
+			return;
+		}
+		while (true) {
+			ex = send(url, proxyAuth);
+			long timeout = 0;
+			if ((getConnectTimeout() > 0) &&
+			    (getReadTimeout() > 0)) {
+				timeout = getConnectTimeout()
+					+ getReadTimeout();
+			}
+			ex.awaitHeaders(timeout);
+			int code = ex.getResponseCode();
+
+			if ((code == HTTP_PROXY_AUTH) && proxied
+			    && !triedAuth) {
+				triedAuth = true;
+				proxyAuth = proxyCredentials();
+				if (proxyAuth != null) {
+					ex.abort();
+					continue;
+				}
+			}
+			if (instanceFollowRedirects &&
+			    (redirects < MAX_REDIRECTS) &&
+			    ((code == HTTP_MOVED_PERM) ||
+			     (code == HTTP_MOVED_TEMP) ||
+			     (code == HTTP_SEE_OTHER) ||
+			     (code == 307))) {
+				String loc = ex.getHeaderValue("Location");
+				URL next = null;
+				if (loc != null) {
+					next = new URL(url, loc);
+				}
+				if ((next != null) &&
+				    next.getProtocol().equalsIgnoreCase(
+						      url.getProtocol())) {
+					ex.abort();
+					url = next;
+					redirects += 1;
+					continue;
+				}
+			}
+			break;
+		}
+		responseCode = ex.getResponseCode();
+		responseMessage = ex.getResponseMessage();
+		connected = true;
+	}
+
+
+	protected NioExchange send(URL u, String proxyAuth)
+		throws IOException {
+
+		boolean secure = u.getProtocol().equalsIgnoreCase("https");
+		String host = u.getHost();
+		int port = u.getPort();
+		if (port < 0) {
+			port = u.getDefaultPort();
+		}
+		String hostHdr = host;
+		if ((u.getPort() >= 0) && (u.getPort() != u.getDefaultPort())) {
+			hostHdr = host+":"+String.valueOf(port);
+		}
+
+		Proxy p = client.getProxy();
+		InetSocketAddress addr;
+		if ((p != null) && (p.type() == Proxy.Type.SOCKS)) {
+			throw new IOException("SOCKS proxy not supported");
+		}
+		if (proxied) {
+			SocketAddress sa = p.address();
+			if (!(sa instanceof InetSocketAddress)) {
+				throw new IOException("Unsupported proxy "
+						      +"address");
+			}
+			addr = (InetSocketAddress)sa;
+			if (addr.isUnresolved()) {
+				addr = new InetSocketAddress(
+				     HostResolver.getDefault().resolve(
+						   addr.getHostName()),
+					       addr.getPort());
+			}
+		} else {
+			addr = new InetSocketAddress(
+				   HostResolver.getDefault().resolve(host),
+				   port);
+		}
+
+		String target;
+		if (proxied && !secure) {
+			target = u.getProtocol()+"://"+hostHdr+pathOf(u);
+		} else {
+			target = pathOf(u);
+		}
+
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(method).append(' ').append(target);
+		sb.append(" HTTP/1.1\r\n");
+		sb.append("Host: ").append(hostHdr).append("\r\n");
+		Map<String, List<String>> props = getRequestProperties();
+		boolean haveUA = false;
+		boolean haveAccept = false;
+		Iterator<Map.Entry<String, List<String>>> it
+			= props.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, List<String>> e = it.next();
+			String k = e.getKey();
+			if (k == null) {
+				continue;
+			}
+			if (k.equalsIgnoreCase("User-Agent")) {
+				haveUA = true;
+			} else if (k.equalsIgnoreCase("Accept")) {
+				haveAccept = true;
+			}
+			Iterator<String> vi = e.getValue().iterator();
+			while (vi.hasNext()) {
+				sb.append(k).append(": ");
+				sb.append(vi.next()).append("\r\n");
+			}
+		}
+		String ua = "Java/"+System.getProperty("java.version");
+		if (!haveUA) {
+			sb.append("User-Agent: ").append(ua).append("\r\n");
+		}
+		if (!haveAccept) {
+			sb.append("Accept: ").append(DEFAULT_ACCEPT);
+			sb.append("\r\n");
+		}
+		if ((proxyAuth != null) && !secure) {
+			sb.append("Proxy-Authorization: ").append(proxyAuth);
+			sb.append("\r\n");
+		}
+		sb.append("Connection: close\r\n\r\n");
+
+		byte[] tunnelReq = null;
+		if (proxied && secure) {
+			StringBuilder tb = new StringBuilder(128);
+			String hp = host+":"+String.valueOf(port);
+			tb.append("CONNECT ").append(hp);
+			tb.append(" HTTP/1.1\r\n");
+			tb.append("Host: ").append(hp).append("\r\n");
+			tb.append("User-Agent: ");
+			tb.append(haveUA ? getRequestProperty("User-Agent")
+				  : ua);
+			tb.append("\r\n");
+			if (proxyAuth != null) {
+				tb.append("Proxy-Authorization: ");
+				tb.append(proxyAuth).append("\r\n");
+			}
+			tb.append("\r\n");
+			tunnelReq = latin1(tb.toString());
+		}
+
+		if (Debug.get(Debug.Connection)) {
+			System.err.println("NioHttpConnection: "+method+" "
+					   +u.toString());
+		}
+		SSLContext ctx = (secure) ? client.getSSLContext() : null;
+		if (secure && (ctx == null)) {
+			try {
+				ctx = SSLContext.getDefault();
+			} catch (Exception e) {
+				throw new IOException("No SSL context");
+			}
+		}
+		NioExchange x = new NioExchange(client.nextLoop(), addr,
+						host, port, ctx,
+						latin1(sb.toString()),
+						tunnelReq,
+						method.equals("HEAD"),
+						getReadTimeout());
+		x.start();
+		return x;
+	}
+
+
+	protected static String pathOf(URL u) {
+		String f = u.getFile();
+		if ((f == null) || (f.length() == 0)) {
+			return "/";
+		}
+		return f;
+	}
+
+
+	protected static byte[] latin1(String s) {
+		try {
+			return s.getBytes("ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			return s.getBytes();
+		}
+	}
+
+
+	/* Ask the default Authenticator for the proxy credentials,
+	 * and return the value for the Proxy-Authorization header.
+	 */
+	protected String proxyCredentials() {
+		InetSocketAddress pa
+			= (InetSocketAddress)client.getProxy().address();
+		PasswordAuthentication auth
+			= Authenticator.requestPasswordAuthentication(
+				  pa.getHostName(), pa.getAddress(),
+				  pa.getPort(), "http", "", "basic", url,
+				  Authenticator.RequestorType.PROXY);
+		if (auth == null) {
+			return null;
+		}
+		String cred = auth.getUserName()+":"
+			+new String(auth.getPassword());
+		return "Basic "+base64(latin1(cred));
+	}
+
+
+	protected static String base64(byte[] b) {
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+			+"abcdefghijklmnopqrstuvwxyz0123456789+/";
+		StringBuilder sb = new StringBuilder((b.length+2)/3*4);
+		for (int i = 0;  i < b.length;  i += 3) {
+			int n = (b[i] & 0xff) << 16;
+			if (i+1 < b.length) {
+				n |= (b[i+1] & 0xff) << 8;
+			}
+			if (i+2 < b.length) {
+				n |= (b[i+2] & 0xff);
+			}
+			sb.append(alphabet.charAt((n >> 18) & 0x3f));
+			sb.append(alphabet.charAt((n >> 12) & 0x3f));
+			sb.append((i+1 < b.length)
+				  ? alphabet.charAt((n >> 6) & 0x3f) : '=');
+			sb.append((i+2 < b.length)
+				  ? alphabet.charAt(n & 0x3f) : '=');
+		}
+		return sb.toString();
+	}
+
+
+	public int getResponseCode() throws IOException {
+		connect();
+		return responseCode;
+	}
+
+
+	public String getResponseMessage() throws IOException {
+		connect();
+		return responseMessage;
+	}
+
+
+	public InputStream getInputStream() throws IOException {
+		connect();
+		if (responseCode >= 400) {
+			if ((responseCode == HTTP_NOT_FOUND) ||
+			    (responseCode == HTTP_GONE)) {
+				throw new FileNotFoundException(
+					      url.toString());
+			}
+			throw new IOException("Server returned HTTP "
+					      +"response code: "
+					      +String.valueOf(responseCode)
+					      +" for URL: "+url.toString());
+		}
+		return ex.getBody();
+	}
+
+
+	public InputStream getErrorStream() {
+		if (connected && (responseCode >= 400)) {
+			return ex.getBody();
+		}
+		return null;
+	}
+
+
+	protected boolean tryConnect() {
+		try {
+			connect();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	public String getHeaderField(int n) {
+		if (!tryConnect()) {
+			return null;
+		}
+		return ex.getHeaderValue(n);
+	}
+
+
+	public String getHeaderFieldKey(int n) {
+		if (!tryConnect()) {
+			return null;
+		}
+		return ex.getHeaderKey(n);
+	}
+
+
+	public String getHeaderField(String name) {
+		if (!tryConnect()) {
+			return null;
+		}
+		return ex.getHeaderValue(name);
+	}
+
+
+	public Map<String, List<String>> getHeaderFields() {
+		LinkedHashMap<String, List<String>> m
+			= new LinkedHashMap<String, List<String>>();
+		if (!tryConnect()) {
+			return m;
+		}
+		int n = ex.getHeaderCount();
+		for (int i = 0;  i < n;  i++) {
+			String k = ex.getHeaderKey(i);
+			List<String> l = m.get(k);
+			if (l == null) {
+				l = new ArrayList<String>();
+				m.put(k, l);
+			}
+			l.add(ex.getHeaderValue(i));
+		}
+		return Collections.unmodifiableMap(m);
+	}
+
+
+	public void disconnect() {
+		if (ex != null) {
+			ex.abort();
+		}
+	}
+
+
+	public boolean usingProxy() {
+		return proxied;
+	}
+
+}
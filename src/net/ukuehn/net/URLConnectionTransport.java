@@ -0,0 +1,79 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.net;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.Proxy;
+import java.net.HttpURLConnection;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+
+
+/* Transport using the blocking HttpURLConnection of the Java
+ * runtime, with one thread and one socket per connection.
+ */
+public class URLConnectionTransport implements HttpTransport {
+
+	Proxy proxy;
+	SSLSocketFactory sf;
+	HostnameVerifier hv;
+
+
+	public URLConnectionTransport(Proxy theProxy,
+				      SSLSocketFactory sslFactory,
+				      HostnameVerifier verifier) {
+		proxy = theProxy;
+		sf = sslFactory;
+		hv = verifier;
+	}
+
+
+	public HttpURLConnection openConnection(URL u) throws IOException {
+		HttpURLConnection conn;
+
+		if (proxy != null) {
+			conn = (HttpURLConnection)u.openConnection(proxy);
+		} else {
+			conn = (HttpURLConnection)u.openConnection();
+		}
+		if (conn instanceof HttpsURLConnection) {
+			HttpsURLConnection sconn = (HttpsURLConnection)conn;
+			if (sf != null) {
+				sconn.setSSLSocketFactory(sf);
+			}
+			if (hv != null) {
+				sconn.setHostnameVerifier(hv);
+			}
+		}
+		return conn;
+	}
+
+
+	public void close() {
+		// nothing
+	}
+
+}
@@ -0,0 +1,183 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ */
+
+package net.ukuehn.util;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+
+
+/* Compresses with gzip on a thread of its own. The data is handed
+ * over in blocks, which are reused once the compressing thread is
+ * done with them. If the compressing thread falls behind by more
+ * than a few blocks, write() waits for it.
+ *
+ * flush() does not force compressed output, as that would spoil the
+ * compression. All data is written when the stream is closed.
+ * Errors of the compressing thread are reported by the next write(),
+ * flush() or close().
+ */
+public class AsyncGzipOutputStream extends OutputStream implements Runnable {
+
+	protected static final int BLOCKSIZE = 65536;
+	protected static final int BLOCKS = 8;
+
+	static class Block {
+		byte[] buf;
+		int len;
+
+		Block(int size) {
+			buf = new byte[size];
+			len = 0;
+		}
+	}
+
+	/* marks the end of the data */
+	protected static final Block EOF = new Block(0);
+
+	OutputStream out;
+	ArrayBlockingQueue<Block> full;
+	ArrayBlockingQueue<Block> free;
+	Block cur;
+	Thread worker;
+	volatile IOException failure;
+	boolean closed;
+
+
+	public AsyncGzipOutputStream(OutputStream os) throws IOException {
+		out = new GZIPOutputStream(os, BLOCKSIZE);
+		full = new ArrayBlockingQueue<Block>(BLOCKS + 1);
+		free = new ArrayBlockingQueue<Block>(BLOCKS);
+		for (int i = 1;  i < BLOCKS;  i++) {
+			free.add(new Block(BLOCKSIZE));
+		}
+		cur = new Block(BLOCKSIZE);
+		failure = null;
+		closed = false;
+		worker = new Thread(this, "wfat-gzip");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+
+	public void write(int b) throws IOException {
+		if (cur.len == cur.buf.length) {
+			pass();
+		}
+		cur.buf[cur.len++] = (byte)b;
+	}
+
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (cur.len == cur.buf.length) {
+				pass();
+			}
+			int n = Math.min(len, cur.buf.length - cur.len);
+			System.arraycopy(b, off, cur.buf, cur.len, n);
+			cur.len += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+
+	public void flush() throws IOException {
+		check();
+	}
+
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (cur.len > 0) {
+			pass();
+		}
+		try {
+			full.put(EOF);
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		check();
+	}
+
+
+	/* Hand the current block over and get a free one. */
+	protected void pass() throws IOException {
+		check();
+		try {
+			full.put(cur);
+			cur = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		cur.len = 0;
+	}
+
+
+	protected void check() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+
+	public void run() {
+		while (true) {
+			Block b;
+			try {
+				b = full.take();
+			} catch (InterruptedException e) {
+				failure = new InterruptedIOException();
+				return;
+			}
+			if (b == EOF) {
+				break;
+			}
+			if (failure == null) {
+				try {
+					out.write(b.buf, 0, b.len);
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			free.add(b);
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+}
@@ -55,6 +55,8 @@ public class Debug {
 
 	public static final int HTokenDetail = 12;
 
+	public static final int Stats = 13;
+
 
 	private static long debug = 0;
 
@@ -102,6 +104,9 @@ public class Debug {
 		if (Debug.get(Debug.HTokenDetail)) {
 			System.err.println("Debug: HtmlToken Details");
 		}
+		if (Debug.get(Debug.Stats)) {
+			System.err.println("Debug: Stats");
+		}
 	}
 
 	public static boolean get(int what) {
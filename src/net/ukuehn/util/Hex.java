@@ -23,26 +23,34 @@ package net.ukuehn.util;
 
 
 
-import java.lang.StringBuilder;
-
-
 
 public class Hex {
 
-	protected static final String hexchar = "0123456789abcdef";
+	protected static final char[] hexchar = {
+		'0', '1', '2', '3', '4', '5', '6', '7',
+		'8', '9', 'a', 'b', 'c', 'd', 'e', 'f',
+	};
 
 	public static String toHex(byte[] b) {
 		if (b == null) {
 			return null;
 		}
-		StringBuilder sb = new StringBuilder(b.length*2);
+		char[] c = new char[b.length*2];
+		toHex(b, c, 0);
+		return new String(c);
+	}
+
+
+	/* Write the hex digits of b into c, starting at off. c must
+	 * have room for 2*b.length chars. Returns the offset after
+	 * the last digit written.
+	 */
+	public static int toHex(byte[] b, char[] c, int off) {
 		for (int i = 0;  i < b.length;  i++) {
-			int hi = (b[i] >> 4) & 0x0f;
-			int lo = b[i] & 0x0f;
-			sb.append(hexchar.charAt(hi));
-			sb.append(hexchar.charAt(lo));
+			c[off++] = hexchar[(b[i] >> 4) & 0x0f];
+			c[off++] = hexchar[b[i] & 0x0f];
 		}
-		return sb.toString();
+		return off;
 	}
 
 }
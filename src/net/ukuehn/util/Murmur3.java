@@ -0,0 +1,201 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ */
+
+package net.ukuehn.util;
+
+
+import java.security.MessageDigest;
+
+
+
+/* MurmurHash3, x64 variant with 128 bit output and seed 0, as a
+ * MessageDigest. It is not a cryptographic hash, but much faster
+ * than SHA1 and good enough to cluster similar pages. The first 8
+ * bytes of the digest are the 64 bit variant of the hash.
+ *
+ * The digest bytes are h1 and h2 in little endian order, as the
+ * reference implementation writes them on x86.
+ */
+public class Murmur3 extends MessageDigest implements Cloneable {
+
+	public static final String ALGORITHM = "Murmur3-128";
+
+	protected static final long C1 = 0x87c37b91114253d5L;
+	protected static final long C2 = 0x4cf5ad432745937fL;
+
+	private long h1, h2;
+	private long length;
+	private byte[] block;
+	private int blockLen;
+
+
+	public Murmur3() {
+		super(ALGORITHM);
+		block = new byte[16];
+		engineReset();
+	}
+
+
+	public Object clone() throws CloneNotSupportedException {
+		Murmur3 m = (Murmur3)super.clone();
+		m.block = block.clone();
+		return m;
+	}
+
+
+	protected int engineGetDigestLength() {
+		return 16;
+	}
+
+
+	protected void engineReset() {
+		h1 = 0;
+		h2 = 0;
+		length = 0;
+		blockLen = 0;
+	}
+
+
+	protected void engineUpdate(byte b) {
+		block[blockLen++] = b;
+		length += 1;
+		if (blockLen == 16) {
+			mix(getLong(block, 0), getLong(block, 8));
+			blockLen = 0;
+		}
+	}
+
+
+	protected void engineUpdate(byte[] b, int off, int len) {
+		length += len;
+		if (blockLen > 0) {
+			// fill the partial block first
+			int n = Math.min(len, 16-blockLen);
+			System.arraycopy(b, off, block, blockLen, n);
+			blockLen += n;
+			off += n;
+			len -= n;
+			if (blockLen < 16) {
+				return;
+			}
+			mix(getLong(block, 0), getLong(block, 8));
+			blockLen = 0;
+		}
+		while (len >= 16) {
+			mix(getLong(b, off), getLong(b, off+8));
+			off += 16;
+			len -= 16;
+		}
+		if (len > 0) {
+			System.arraycopy(b, off, block, 0, len);
+			blockLen = len;
+		}
+	}
+
+
+	protected byte[] engineDigest() {
+		long k1 = 0;
+		long k2 = 0;
+		for (int i = blockLen-1;  i >= 8;  i--) {
+			k2 = (k2 << 8) | (block[i] & 0xffL);
+		}
+		for (int i = Math.min(blockLen, 8)-1;  i >= 0;  i--) {
+			k1 = (k1 << 8) | (block[i] & 0xffL);
+		}
+		if (blockLen > 8) {
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+		}
+		if (blockLen > 0) {
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		byte[] res = new byte[16];
+		putLong(res, 0, h1);
+		putLong(res, 8, h2);
+		engineReset();
+		return res;
+	}
+
+
+	private void mix(long k1, long k2) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		h1 ^= k1;
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1*5 + 0x52dce729;
+
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		h2 ^= k2;
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2*5 + 0x38495ab5;
+	}
+
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+
+	private static long getLong(byte[] b, int off) {
+		return (b[off] & 0xffL)
+			| ((b[off+1] & 0xffL) << 8)
+			| ((b[off+2] & 0xffL) << 16)
+			| ((b[off+3] & 0xffL) << 24)
+			| ((b[off+4] & 0xffL) << 32)
+			| ((b[off+5] & 0xffL) << 40)
+			| ((b[off+6] & 0xffL) << 48)
+			| ((b[off+7] & 0xffL) << 56);
+	}
+
+
+	private static void putLong(byte[] b, int off, long v) {
+		for (int i = 0;  i < 8;  i++) {
+			b[off+i] = (byte)v;
+			v >>>= 8;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ */
+
+package net.ukuehn.util;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+
+/* Bounded queue for exactly one producer and one consumer thread,
+ * without locks. The producer only ever writes tail, the consumer
+ * only ever writes head, so both can go ahead as long as the buffer
+ * is neither full nor empty. The capacity is rounded up to a power
+ * of two.
+ *
+ * offer() must only be called from one thread at a time, and so
+ * must poll().
+ */
+public class RingBuffer<E> {
+
+	AtomicReferenceArray<E> buf;
+	int mask;
+	AtomicLong head;
+	AtomicLong tail;
+
+
+	public RingBuffer(int capacity) {
+		int cap = 1;
+		while (cap < capacity) {
+			cap <<= 1;
+		}
+		buf = new AtomicReferenceArray<E>(cap);
+		mask = cap - 1;
+		head = new AtomicLong(0);
+		tail = new AtomicLong(0);
+	}
+
+
+	/* Append an element, false if the buffer is full. */
+	public boolean offer(E e) {
+		long t = tail.get();
+		if (t - head.get() > mask) {
+			return false;
+		}
+		buf.lazySet((int)t & mask, e);
+		tail.lazySet(t+1);
+		return true;
+	}
+
+
+	/* Take the oldest element, null if the buffer is empty. */
+	public E poll() {
+		long h = head.get();
+		if (h >= tail.get()) {
+			return null;
+		}
+		int i = (int)h & mask;
+		E e = buf.get(i);
+		buf.lazySet(i, null);
+		head.lazySet(h+1);
+		return e;
+	}
+
+
+	public int size() {
+		return (int)(tail.get() - head.get());
+	}
+
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+
+	public boolean isEmpty() {
+		return head.get() >= tail.get();
+	}
+
+}
@@ -0,0 +1,216 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.util.concurrent.locks.LockSupport;
+
+import net.ukuehn.util.Debug;
+import net.ukuehn.util.RingBuffer;
+
+
+
+/* Hands the events for one publisher over to a thread of its own,
+ * so that a slow publisher, e.g. one writing to a file, does not
+ * hold up the thread doing the fingerprinting. The events are kept
+ * in a bounded ring buffer. If it is full, the publishing thread
+ * either waits for the publisher to catch up (BLOCK), or leaves out
+ * the next targets until there is room again (DROP). Whole targets
+ * are left out, so the output stays well-formed.
+ *
+ * put() must only be called from one thread at a time.
+ *
+ * Neither thread polls. The publisher thread parks while the buffer
+ * is empty and is woken by put(). A publishing thread waiting for
+ * room parks as well, and is woken by the publisher thread.
+ *
+ * If the publisher fails, the failure is kept, see getFailure(), and
+ * all further events are discarded.
+ */
+public class AsyncSink implements Runnable {
+
+	public static final int BLOCK = 0;
+	public static final int DROP = 1;
+
+	public static final int DEFAULT_SIZE = 4096;
+
+	Publisher pub;
+	int policy;
+	RingBuffer<RecordingPublisher.Event> ring;
+	Thread drain;
+	volatile boolean closed;
+	volatile Exception failure;
+	/* set while the publisher thread is about to park */
+	volatile boolean idle;
+	/* the publishing thread, while it waits for room */
+	volatile Thread waiting;
+
+	/* only touched by the publishing thread */
+	boolean dropping;
+	long dropped;
+
+
+	public AsyncSink(Publisher p, int backpressure) {
+		this(p, backpressure, DEFAULT_SIZE);
+	}
+
+
+	public AsyncSink(Publisher p, int backpressure, int size) {
+		pub = p;
+		policy = backpressure;
+		ring = new RingBuffer<RecordingPublisher.Event>(size);
+		closed = false;
+		failure = null;
+		idle = false;
+		waiting = null;
+		dropping = false;
+		dropped = 0;
+		drain = new Thread(this, "wfat-publish-"
+				   +p.getClass().getSimpleName());
+		drain.setDaemon(true);
+		drain.start();
+	}
+
+
+	/* Pass an event on to the publisher. */
+	public void put(RecordingPublisher.Event e) {
+		if (failure != null) {
+			return;
+		}
+		if (e instanceof RecordingPublisher.StartEvent) {
+			// leave out the target if less than a quarter of
+			// the buffer is free
+			int cap = ring.capacity();
+			dropping = (policy == DROP)
+				&& (ring.size() > cap - cap/4);
+			if (dropping) {
+				dropped += 1;
+			}
+		}
+		if (dropping) {
+			if (e instanceof RecordingPublisher.EndEvent) {
+				dropping = false;
+			}
+			return;
+		}
+		while (!ring.offer(e)) {
+			if (failure != null) {
+				return;
+			}
+			waiting = Thread.currentThread();
+			// try again, the publisher thread may have made
+			// room before it could see waiting
+			if (ring.offer(e)) {
+				waiting = null;
+				break;
+			}
+			LockSupport.unpark(drain);
+			LockSupport.park(this);
+			waiting = null;
+		}
+		if (idle) {
+			LockSupport.unpark(drain);
+		}
+	}
+
+
+	/* Wait until all events have been passed to the publisher. No
+	 * more events must be put after that.
+	 */
+	public void close() {
+		closed = true;
+		LockSupport.unpark(drain);
+		boolean interrupted = false;
+		while (drain.isAlive()) {
+			try {
+				drain.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	public void run() {
+		while (true) {
+			RecordingPublisher.Event e = ring.poll();
+			if (e == null) {
+				if (closed && ring.isEmpty()) {
+					break;
+				}
+				idle = true;
+				wakeProducer();
+				// check again, put() may not have seen idle
+				if (ring.isEmpty() && !closed) {
+					LockSupport.park(this);
+				}
+				idle = false;
+				continue;
+			}
+			wakeProducer();
+			if (failure != null) {
+				continue;
+			}
+			try {
+				e.replay(pub);
+			} catch (Exception ex) {
+				if (Debug.get(Debug.Publish)) {
+					ex.printStackTrace();
+				}
+				failure = ex;
+			}
+		}
+	}
+
+
+	/* Wake the publishing thread if it waits for room. */
+	protected void wakeProducer() {
+		Thread t = waiting;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+
+	public Publisher getPublisher() {
+		return pub;
+	}
+
+
+	/* The exception the publisher failed with, or null. */
+	public Exception getFailure() {
+		return failure;
+	}
+
+
+	/* Number of targets left out as the buffer was full. */
+	public long getDropped() {
+		return dropped;
+	}
+
+}
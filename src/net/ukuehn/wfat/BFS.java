@@ -0,0 +1,73 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+/* Binary File Structure, as written by BinaryPublisher and read by
+ * BinaryFileReplay.
+ *
+ * The file starts with MAGIC and VERSION. Then follow records of
+ * one byte type, the length of the contents as varint, and the
+ * contents. Readers skip records of unknown type.
+ *
+ * Numbers are unsigned LEB128 varints, signed ones zigzag encoded
+ * first. Strings are given as a varint: SNULL for null, SLITERAL
+ * followed by the length and the UTF-8 bytes, or n >= SDICT for the
+ * n-SDICT-th entry of the dictionary. A RDICT record holds a string
+ * literal that becomes the next dictionary entry. It always comes
+ * before the first record that uses it.
+ *
+ * The records correspond to the elements of the XML format, see
+ * XFS:
+ * RTARGET        TargetURL
+ * RRESPONSE      ReqURL, Host, IP, RespCode (signed), Redir (byte,
+ *                see Publisher.REDIRNONE etc.), Cached (byte 0 or 1)
+ * RHEADER        Source (byte, Publisher.HTTP or EQUIV), Key, Value
+ * REXCEPTION     msg
+ * RSTRUCTHASH    Alg, Value, Elements (signed)
+ * RSIMILARITY    Cluster (signed), Score (8 bytes, IEEE 754 double,
+ *                big endian)
+ * RRESPONSEEND   empty, end of the ServerResponse
+ * RTARGETEND     empty, end of the Target
+ */
+public class BFS {
+
+	public static final byte[] MAGIC = { 'W', 'F', 'A', 'T' };
+	public static final int VERSION = 1;
+
+	public static final int RDICT = 0;
+	public static final int RTARGET = 1;
+	public static final int RRESPONSE = 2;
+	public static final int RHEADER = 3;
+	public static final int REXCEPTION = 4;
+	public static final int RSTRUCTHASH = 5;
+	public static final int RSIMILARITY = 6;
+	public static final int RRESPONSEEND = 7;
+	public static final int RTARGETEND = 8;
+
+	public static final int SNULL = 0;
+	public static final int SLITERAL = 1;
+	public static final int SDICT = 2;
+}
@@ -0,0 +1,273 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.io.*;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Reads results in the binary format written by BinaryPublisher,
+ * see BFS, and passes them on to a publisher the same way as
+ * XMLFileReplay does for the XML format.
+ */
+public class BinaryFileReplay extends XMLFileReplay {
+
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+	ArrayList<String> dict;
+
+	/* the contents of the current record */
+	byte[] rec;
+	int pos;
+	int len;
+
+
+	public BinaryFileReplay(Publisher publisher, int parmVerbLevel)
+		throws ToolkitError {
+		super(publisher, parmVerbLevel);
+		dict = new ArrayList<String>();
+		rec = new byte[256];
+		pos = 0;
+		len = 0;
+	}
+
+
+	/* True if the file starts like a binary result file. */
+	public static boolean isBinary(File f) throws IOException {
+		InputStream in = new FileInputStream(f);
+		try {
+			byte[] b = new byte[BFS.MAGIC.length];
+			int n = 0;
+			while (n < b.length) {
+				int r = in.read(b, n, b.length - n);
+				if (r < 0) {
+					return false;
+				}
+				n += r;
+			}
+			return Arrays.equals(b, BFS.MAGIC);
+		} finally {
+			in.close();
+		}
+	}
+
+
+	public void replay(File f) throws IOException, ToolkitError {
+		InputStream in = new BufferedInputStream(
+					 new FileInputStream(f), 65536);
+		try {
+			replay(in);
+		} finally {
+			in.close();
+		}
+	}
+
+
+	public void replay(InputStream in) throws IOException, ToolkitError {
+		byte[] magic = new byte[BFS.MAGIC.length];
+		readFully(in, magic, magic.length);
+		if (!Arrays.equals(magic, BFS.MAGIC)) {
+			throw new ToolkitError("Not a binary result file");
+		}
+		int version = in.read();
+		if (version != BFS.VERSION) {
+			throw new ToolkitError("Unsupported version "
+					       +String.valueOf(version)
+					       +" of binary result file");
+		}
+		int type;
+		while ((type = in.read()) >= 0) {
+			len = readVarint(in);
+			if (len > rec.length) {
+				rec = new byte[Math.max(len, 2*rec.length)];
+			}
+			readFully(in, rec, len);
+			pos = 0;
+			if (Debug.get(Debug.Replay)) {
+				System.err.println("record "
+						   +String.valueOf(type)
+						   +", "+String.valueOf(len)
+						   +" bytes");
+			}
+			handleRecord(type);
+		}
+	}
+
+
+	protected void handleRecord(int type)
+		throws IOException, ToolkitError {
+		switch (type) {
+		case BFS.RDICT:
+			dict.add(getString());
+			break;
+		case BFS.RTARGET:
+			replayTarget(getString());
+			break;
+		case BFS.RRESPONSE: {
+			String respUrlStr = getString();
+			String host = getString();
+			String ip = getString();
+			int code = getSigned();
+			int redir = getByte();
+			boolean cached = (getByte() != 0);
+			replayResponse(respUrlStr, host, ip,
+				       code, redir, cached);
+			break;
+		}
+		case BFS.RHEADER: {
+			int src = getByte();
+			String key = getString();
+			replayHeader(src, key, getString());
+			break;
+		}
+		case BFS.REXCEPTION:
+			replayException(getString());
+			break;
+		case BFS.RSTRUCTHASH: {
+			String alg = getString();
+			String hash = getString();
+			replayStructHash(alg, hash, getSigned());
+			break;
+		}
+		case BFS.RSIMILARITY: {
+			int cluster = getSigned();
+			replaySimilarity(cluster, getDouble());
+			break;
+		}
+		case BFS.RRESPONSEEND:
+			replayResponseEnd();
+			break;
+		case BFS.RTARGETEND:
+			replayTargetEnd();
+			break;
+		default:
+			// unknown record, skip
+			break;
+		}
+	}
+
+
+	protected static void readFully(InputStream in, byte[] b, int n)
+		throws IOException {
+		int off = 0;
+		while (off < n) {
+			int r = in.read(b, off, n - off);
+			if (r < 0) {
+				throw new EOFException("Binary result file "
+						       +"ends within record");
+			}
+			off += r;
+		}
+	}
+
+
+	protected static int readVarint(InputStream in) throws IOException {
+		int v = 0;
+		for (int shift = 0;  shift < 35;  shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Binary result file "
+						       +"ends within record");
+			}
+			v |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Malformed number in binary "
+				      +"result file");
+	}
+
+
+	protected int getByte() throws IOException {
+		if (pos >= len) {
+			throw new IOException("Record too short in binary "
+					      +"result file");
+		}
+		return rec[pos++] & 0xff;
+	}
+
+
+	protected int getVarint() throws IOException {
+		int v = 0;
+		for (int shift = 0;  shift < 35;  shift += 7) {
+			int b = getByte();
+			v |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Malformed number in binary "
+				      +"result file");
+	}
+
+
+	protected int getSigned() throws IOException {
+		int v = getVarint();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+
+	protected double getDouble() throws IOException {
+		long l = 0;
+		for (int i = 0;  i < 8;  i++) {
+			l = (l << 8) | getByte();
+		}
+		return Double.longBitsToDouble(l);
+	}
+
+
+	protected String getString() throws IOException {
+		int ref = getVarint();
+		if (ref == BFS.SNULL) {
+			return null;
+		}
+		if (ref == BFS.SLITERAL) {
+			int n = getVarint();
+			if ((n < 0) || (n > len - pos)) {
+				throw new IOException("String too long in "
+						      +"binary result file");
+			}
+			String s = new String(rec, pos, n, UTF8);
+			pos += n;
+			return s;
+		}
+		ref -= BFS.SDICT;
+		if ((ref < 0) || (ref >= dict.size())) {
+			throw new IOException("Unknown string "
+					      +String.valueOf(ref)
+					      +" in binary result file");
+		}
+		return dict.get(ref);
+	}
+
+}
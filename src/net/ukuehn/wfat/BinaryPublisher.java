@@ -0,0 +1,320 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.net.*;
+import java.io.*;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+
+
+/* Writes the results in the compact binary format described in BFS.
+ * It holds the same as the XML output, and can be read back with -r
+ * as well.
+ *
+ * Strings that repeat a lot go into a dictionary and are written as
+ * a number from then on: host names, addresses, header keys and
+ * hash algorithms the first time they appear, other values once
+ * they have been seen twice. The dictionary stops growing at
+ * MAX_DICT entries.
+ */
+public class BinaryPublisher extends Publisher {
+
+	protected static final int MAX_DICT = 1 << 16;
+	protected static final int MAX_SEEN = 1 << 14;
+	protected static final int MAX_DICT_LENGTH = 256;
+
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+	OutputStream out;
+	HashMap<String, Integer> dict;
+	HashSet<String> seen;
+
+	/* the record being built */
+	byte[] rec;
+	int len;
+
+
+	public BinaryPublisher(OutputStream output) {
+		this(output, false, 0);
+	}
+
+
+	public BinaryPublisher(OutputStream output,
+			       boolean longOutput, int level) {
+		super(longOutput, level);
+		out = output;
+		dict = new HashMap<String, Integer>();
+		seen = new HashSet<String>();
+		rec = new byte[256];
+		len = 0;
+	}
+
+
+	protected void ensure(int n) {
+		if (len + n > rec.length) {
+			rec = Arrays.copyOf(rec, Math.max(2*rec.length, len+n));
+		}
+	}
+
+
+	protected void putByte(int b) {
+		ensure(1);
+		rec[len++] = (byte)b;
+	}
+
+
+	protected void putBytes(byte[] b) {
+		ensure(b.length);
+		System.arraycopy(b, 0, rec, len, b.length);
+		len += b.length;
+	}
+
+
+	protected void putVarint(int v) {
+		while ((v & ~0x7f) != 0) {
+			putByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		putByte(v);
+	}
+
+
+	protected void putSigned(int v) {
+		putVarint((v << 1) ^ (v >> 31));
+	}
+
+
+	protected void putDouble(double d) {
+		long l = Double.doubleToLongBits(d);
+		for (int i = 56;  i >= 0;  i -= 8) {
+			putByte((int)(l >>> i));
+		}
+	}
+
+
+	/* A string that is likely to repeat, put into the dictionary
+	 * right away.
+	 */
+	protected void putKey(String s) throws IOException {
+		putString(s, true);
+	}
+
+
+	/* A string that may repeat, put into the dictionary on the
+	 * second time it is seen.
+	 */
+	protected void putValue(String s) throws IOException {
+		boolean store = false;
+		if ((s != null) && (s.length() <= MAX_DICT_LENGTH)
+		    && !dict.containsKey(s)) {
+			if (seen.size() >= MAX_SEEN) {
+				seen.clear();
+			}
+			store = !seen.add(s);
+		}
+		putString(s, store);
+	}
+
+
+	protected void putString(String s, boolean store) throws IOException {
+		if (s == null) {
+			putVarint(BFS.SNULL);
+			return;
+		}
+		Integer ref = dict.get(s);
+		if ((ref == null) && store && (dict.size() < MAX_DICT)) {
+			ref = Integer.valueOf(dict.size());
+			dict.put(s, ref);
+			seen.remove(s);
+			writeDict(s);
+		}
+		if (ref != null) {
+			putVarint(BFS.SDICT + ref.intValue());
+		} else {
+			byte[] b = s.getBytes(UTF8);
+			putVarint(BFS.SLITERAL);
+			putVarint(b.length);
+			putBytes(b);
+		}
+	}
+
+
+	/* Write a dictionary entry, ahead of the record being built. */
+	protected void writeDict(String s) throws IOException {
+		byte[] b = s.getBytes(UTF8);
+		int lenb = varintLength(b.length);
+		out.write(BFS.RDICT);
+		writeVarint(1 + lenb + b.length);
+		out.write(BFS.SLITERAL);
+		writeVarint(b.length);
+		out.write(b);
+	}
+
+
+	protected static int varintLength(int v) {
+		int n = 1;
+		while ((v & ~0x7f) != 0) {
+			n += 1;
+			v >>>= 7;
+		}
+		return n;
+	}
+
+
+	protected void writeVarint(int v) throws IOException {
+		while ((v & ~0x7f) != 0) {
+			out.write((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+
+
+	protected void startRecord() {
+		len = 0;
+	}
+
+
+	protected void writeRecord(int type) throws IOException {
+		out.write(type);
+		writeVarint(len);
+		out.write(rec, 0, len);
+	}
+
+
+	public void publishGlobalStart() throws IOException, ToolkitError {
+		out.write(BFS.MAGIC);
+		out.write(BFS.VERSION);
+	}
+
+
+	public void publishGlobalEnd() throws IOException, ToolkitError {
+		out.flush();
+	}
+
+
+	public void publishStart(String urlstr)
+		throws IOException, ToolkitError {
+		targetUrlStr = urlstr;
+		startRecord();
+		putString(urlstr, false);
+		writeRecord(BFS.RTARGET);
+	}
+
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String respHostName,
+				       InetAddress respIP,
+				       int respCode,
+				       int redirState)
+		throws IOException, ToolkitError {
+		publishStartResult(theTargetUrl, theRespUrl,
+				   respHostName, respIP,
+				   respCode, redirState, false);
+	}
+
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String respHostName,
+				       InetAddress respIP,
+				       int respCode,
+				       int redirState,
+				       boolean cached)
+		throws IOException, ToolkitError {
+		startRecord();
+		putValue(theRespUrl.toString());
+		putKey((respHostName != null) ? respHostName : "");
+		putKey((respIP != null) ? respIP.getHostAddress() : "");
+		putSigned(respCode);
+		putByte(redirState);
+		putByte(cached ? 1 : 0);
+		writeRecord(BFS.RRESPONSE);
+	}
+
+
+	public void publishElement(String key, String value, int source)
+		throws IOException, ToolkitError {
+		// same as in the XML output
+		if (key == null) {
+			key = "";
+		}
+		if (value == null) {
+			value = "";
+		}
+		startRecord();
+		putByte(source);
+		putKey(key);
+		putValue(value);
+		writeRecord(BFS.RHEADER);
+	}
+
+
+	public void publishException(String msg)
+		throws IOException, ToolkitError {
+		startRecord();
+		putValue(msg);
+		writeRecord(BFS.REXCEPTION);
+	}
+
+
+	public void publishStructHash(String alg, String hash, int elements)
+		throws IOException, ToolkitError {
+		startRecord();
+		putKey(alg);
+		putValue(hash);
+		putSigned(elements);
+		writeRecord(BFS.RSTRUCTHASH);
+	}
+
+
+	public void publishSimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		startRecord();
+		putSigned(cluster);
+		putDouble(score);
+		writeRecord(BFS.RSIMILARITY);
+	}
+
+
+	public void publishEndResult() throws IOException, ToolkitError {
+		startRecord();
+		writeRecord(BFS.RRESPONSEEND);
+	}
+
+
+	public void publishEnd() throws IOException, ToolkitError {
+		startRecord();
+		writeRecord(BFS.RTARGETEND);
+	}
+
+}
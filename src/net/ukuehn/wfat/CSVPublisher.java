@@ -45,6 +45,10 @@ public class CSVPublisher extends Publisher {
 	private final String SEP = ";";
 	private final String SRCHTTP = "http";
 	private final String SRCEQUIV = "html";
+	private final String SRCSTRUCT = "struct";
+	private final String KEYSTRUCT = "StructHash";
+	private final String KEYCLUSTER = "Cluster";
+	private final String KEYSCORE = "ClusterScore";
 
 	public CSVPublisher(PrintWriter output) {
 		super();
@@ -115,6 +119,39 @@ public class CSVPublisher extends Publisher {
 
 	public void publishElement(String key, String value, int source)
 		throws IOException, ToolkitError {
+		String srcName;
+
+		if (source == HTTP) {
+			srcName = SRCHTTP;
+		} else if (source == EQUIV) {
+			srcName = SRCEQUIV;
+		} else {
+			throw new ToolkitError("Internal Error: Unknown source "
+					       +"indicated for header: "
+					       +String.valueOf(source));
+		}
+		publishRow(srcName, key, value);
+	}
+
+
+	/* The structural hash goes into a line of its own, with the
+	 * algorithm as part of the key.
+	 */
+	public void publishStructHash(String alg, String hash, int elements)
+		throws IOException, ToolkitError {
+		publishRow(SRCSTRUCT, KEYSTRUCT+"-"+alg, hash);
+	}
+
+
+	public void publishSimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		publishRow(SRCSTRUCT, KEYCLUSTER, String.valueOf(cluster));
+		publishRow(SRCSTRUCT, KEYSCORE, String.valueOf(score));
+	}
+
+
+	protected void publishRow(String srcName, String key, String value)
+		throws IOException, ToolkitError {
 
 		groupLineCounter += 1;
 
@@ -127,17 +164,7 @@ public class CSVPublisher extends Publisher {
 		}
 		sb.append(String.valueOf(responseCode)).append(SEP);
 		if (longMode) {
-			sb.append(DELIM);
-			if (source == HTTP) {
-				sb.append(SRCHTTP);
-			} else if (source == EQUIV) {
-				sb.append(SRCEQUIV);
-			} else {
-				throw new ToolkitError(
-					    "Internal Error: Unknown source "
-					    +"indicated for header: "
-					    +String.valueOf(source));
-			}
+			sb.append(DELIM).append(srcName);
 			sb.append(DELIM).append(SEP);
 		}
 		sb.append(DELIM).append(key).append(DELIM).append(SEP);
@@ -41,6 +41,8 @@ import java.security.KeyManagementException;
 import java.security.SecureRandom;
 
 
+import net.ukuehn.net.HttpTransport;
+import net.ukuehn.net.URLConnectionTransport;
 import net.ukuehn.security.NullTrustManager;
 import net.ukuehn.security.NullHostnameVerifier;
 import net.ukuehn.util.Debug;
@@ -52,9 +54,12 @@ public class ConnectionHandler {
 
 	String userAgent;
 	Proxy proxy;
+	SSLContext sslContext;
 	SSLSocketFactory sf;
 	HostnameVerifier hv;
+	HttpTransport transport;
 	HashSet<String> forbiddenHosts;
+	boolean acceptCompressed;
 
 	private String defaultProto = "http://";
 
@@ -63,7 +68,9 @@ public class ConnectionHandler {
 		userAgent = null;
 		proxy = theProxy;
 		initDisabledSSLChecks();
+		transport = new URLConnectionTransport(proxy, sf, hv);
 		forbiddenHosts = new HashSet<String>();
+		acceptCompressed = true;
 	}
 
 
@@ -77,6 +84,35 @@ public class ConnectionHandler {
 	}
 
 
+	/* Offer gzip and deflate content coding to servers. The
+	 * html tokenizer decodes such bodies while reading them.
+	 */
+	public void setAcceptCompressed(boolean accept) {
+		acceptCompressed = accept;
+	}
+
+
+	/* Replace the transport used to open connections. The
+	 * caller is responsible for closing the transport.
+	 */
+	public void setTransport(HttpTransport t) {
+		transport = t;
+	}
+
+
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+
+	/* SSL context with disabled certificate checks, for use by
+	 * other transports.
+	 */
+	public SSLContext getSSLContext() {
+		return sslContext;
+	}
+
+
 	protected void addForbidden(String host) {
 		URL u;
 
@@ -125,6 +161,7 @@ public class ConnectionHandler {
 		} catch (NoSuchAlgorithmException e) {
 			throw new InstallationError("No SSL in Java?", e);
 		}
+		sslContext = sc;
 		sf = sc.getSocketFactory();
 		HttpsURLConnection.setDefaultSSLSocketFactory(sf);
 
@@ -196,6 +233,17 @@ public class ConnectionHandler {
 	public HttpURLConnection prepareConnection(URL u,
 						   boolean follow)
 		throws IOException {
+		return prepareConnection(u, follow, "GET");
+	}
+
+
+	/* Open and connect a connection to the given url using the
+	 * given request method, e.g. HEAD when the body is not needed.
+	 */
+	public HttpURLConnection prepareConnection(URL u,
+						   boolean follow,
+						   String method)
+		throws IOException {
 
 		HttpURLConnection conn;
 
@@ -207,11 +255,7 @@ public class ConnectionHandler {
 			}
 			return null;
 		}
-		if (proxy != null) {
-			conn = (HttpURLConnection)u.openConnection(proxy);
-		} else {
-			conn = (HttpURLConnection)u.openConnection();
-		}
+		conn = transport.openConnection(u);
 		if (Debug.get(Debug.SSL)) {
 			if (conn instanceof HttpsURLConnection) {
 				System.err.println("HttpsURLConnection("
@@ -220,7 +264,7 @@ public class ConnectionHandler {
 			}
 		}
 		try {
-			conn.setRequestMethod("GET");
+			conn.setRequestMethod(method);
 		} catch (ProtocolException e) {
 			// ignore, get is used by default
 		}
@@ -228,6 +272,10 @@ public class ConnectionHandler {
 		if (userAgent != null) {
 			conn.setRequestProperty("User-Agent", userAgent);
 		}
+		if (acceptCompressed) {
+			conn.setRequestProperty("Accept-Encoding",
+						"gzip, deflate");
+		}
 		conn.connect();
 		return conn;
 	}
@@ -22,36 +22,126 @@
 package net.ukuehn.wfat;
 
 
-import javax.net.ssl.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 
+import net.ukuehn.util.Murmur3;
 
 
 
+/* Source of message digests for the structural hash. The algorithm
+ * is looked up once, further digests are cloned from that instance.
+ *
+ * Digests are pooled per thread: take one with getDigester() and
+ * give it back with release() once the digest is done. A digest
+ * that is not given back is simply not reused. One Digester can be
+ * shared by all worker threads.
+ */
 public class Digester {
 
-	protected final static String alg = "SHA1";
+	public static final String DEFAULT = "sha1";
+
+	// names for the command line and the algorithms they stand for
+	protected static final String[] names = {
+		"sha1", "sha256", "murmur3",
+	};
+	protected static final String[] algs = {
+		"SHA1", "SHA-256", Murmur3.ALGORITHM,
+	};
+
+	protected static final int POOLSIZE = 4;
+
+	protected String alg;
+	protected MessageDigest proto;
+	protected ThreadLocal<ArrayList<MessageDigest>> pool;
+
 
 	public Digester() throws InstallationError {
-		try {
-			MessageDigest md = MessageDigest.getInstance(alg);
-		} catch (NoSuchAlgorithmException e) {
-			throw new InstallationError("Hash algorithm "+alg
-						    +" not available: ", e);
+		this(DEFAULT);
+	}
+
+
+	/* @param name    one of sha1, sha256, or murmur3
+	 */
+	public Digester(String name) throws InstallationError {
+		alg = null;
+		for (int i = 0;  i < names.length;  i++) {
+			if (names[i].equalsIgnoreCase(name)) {
+				alg = algs[i];
+			}
+		}
+		if (alg == null) {
+			throw new InstallationError("Unknown hash algorithm "
+						    +name);
+		}
+		if (alg == Murmur3.ALGORITHM) {
+			proto = new Murmur3();
+		} else {
+			try {
+				proto = MessageDigest.getInstance(alg);
+			} catch (NoSuchAlgorithmException e) {
+				throw new InstallationError("Hash algorithm "
+							    +alg
+							    +" not available: ",
+							    e);
+			}
+		}
+		pool = new ThreadLocal<ArrayList<MessageDigest>>() {
+			protected ArrayList<MessageDigest> initialValue() {
+				return new ArrayList<MessageDigest>(POOLSIZE);
+			}
+		};
+	}
+
+
+	public static boolean isSupported(String name) {
+		for (int i = 0;  i < names.length;  i++) {
+			if (names[i].equalsIgnoreCase(name)) {
+				return true;
+			}
 		}
-	}		
+		return false;
+	}
+
+
+	public String getAlgorithm() {
+		return alg;
+	}
 
 
 	public MessageDigest getDigester() {
+		ArrayList<MessageDigest> l = pool.get();
+		int n = l.size();
+		if (n > 0) {
+			return l.remove(n-1);
+		}
 		try {
-			MessageDigest md = MessageDigest.getInstance(alg);
-			return md;
-		} catch (NoSuchAlgorithmException e) {
-			// ignore, constructor has checked already
-			//throw new InstallationError("Hash algorithm "+alg
-			//			    +" not available: ", e);
-			return null;
+			return (MessageDigest)proto.clone();
+		} catch (CloneNotSupportedException e) {
+			// provider without clone support, look it up
+			// again
+			try {
+				return MessageDigest.getInstance(alg);
+			} catch (NoSuchAlgorithmException ex) {
+				// ignore, constructor has checked already
+				return null;
+			}
+		}
+	}
+
+
+	/* Give a digest taken by getDigester() back for reuse. It
+	 * goes into the pool of the calling thread.
+	 */
+	public void release(MessageDigest md) {
+		if (md == null) {
+			return;
+		}
+		ArrayList<MessageDigest> l = pool.get();
+		if (l.size() < POOLSIZE) {
+			md.reset();
+			l.add(md);
 		}
 	}
 
@@ -33,6 +33,7 @@ import java.util.LinkedHashSet;
 import java.util.Iterator;
 import java.text.SimpleDateFormat;
 
+import net.ukuehn.net.HostResolver;
 import net.ukuehn.util.Debug;
 
 
@@ -82,9 +83,11 @@ public class EdgeCSVPublisher extends Publisher {
 				       URL theRespUrl,
 				       String respHostName,
 				       InetAddress respIP,
-				       int respCode)
+				       int respCode,
+				       int redirState)
 		throws IOException, ToolkitError {
 
+		targetUrl = theTargetUrl;
 		responseCode = respCode;
 		responseUrl = theRespUrl;
 		targetUrlStr = "";
@@ -194,7 +197,7 @@ public class EdgeCSVPublisher extends Publisher {
 			InetAddress ia = null;
 			String ip = "";
 			try {
-				ia = InetAddress.getByName(dst);
+				ia = HostResolver.getDefault().resolve(dst);
 				ip = ia.getHostAddress();
 				out.println(dst+SEP
 					    +DELIM+IPPREFIX+ip+DELIM);
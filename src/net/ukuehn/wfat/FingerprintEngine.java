@@ -0,0 +1,191 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.wfat;
+
+
+import java.io.*;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Runs the fingerprinting of a list of targets with a number of
+ * worker threads. Each worker records the events of its target
+ * in a RecordingPublisher, and the results are handed to the real
+ * publisher in the order of the target list, one target at a time.
+ * Thus, the output is the same as with sequential processing.
+ *
+ * With only one worker, the targets are processed sequentially on
+ * the calling thread and published directly.
+ */
+public class FingerprintEngine {
+
+	/* Number of targets per worker that may be in flight or
+	 * waiting to be published at any time.
+	 */
+	protected static final int PENDING_PER_WORKER = 4;
+
+	Publisher pub;
+	HTTPFingerprint proto;
+	int nWorkers;
+	ThreadLocal<HTTPFingerprint> workerFp;
+
+
+	public FingerprintEngine(Publisher publisher, HTTPFingerprint hfp,
+				 int workers) {
+		pub = publisher;
+		proto = hfp;
+		nWorkers = (workers > 0) ? workers : 1;
+		workerFp = new ThreadLocal<HTTPFingerprint>();
+	}
+
+
+	protected class WorkerFactory implements ThreadFactory {
+		int count = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			count += 1;
+			Thread t = new Thread(r, "wfat-worker-"
+					      +String.valueOf(count));
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+
+	protected class TargetTask implements Callable<RecordingPublisher> {
+		String urlStr;
+
+		TargetTask(String u) {
+			urlStr = u;
+		}
+
+		public RecordingPublisher call() throws Exception {
+			RecordingPublisher rec = new RecordingPublisher();
+			HTTPFingerprint hfp = workerFp.get();
+			if (hfp == null) {
+				hfp = new HTTPFingerprint(proto, rec);
+				workerFp.set(hfp);
+			}
+			hfp.setRecorder(rec);
+			try {
+				hfp.fingerprint(urlStr);
+			} catch (Exception e) {
+				// ignore, as in the sequential case
+			}
+			hfp.setPublisher(null);
+			return rec;
+		}
+	}
+
+
+	public void run(Iterator<String> urls)
+		throws IOException, ToolkitError {
+
+		if (nWorkers == 1) {
+			runSequential(urls);
+		} else {
+			runConcurrent(urls);
+		}
+	}
+
+
+	protected void runSequential(Iterator<String> urls)
+		throws IOException, ToolkitError {
+
+		while (urls.hasNext()) {
+			String urlarg = urls.next();
+			try {
+				proto.fingerprint(urlarg);
+			} catch (Exception e) {
+				// ignore for now
+			}
+		}
+	}
+
+
+	protected void runConcurrent(Iterator<String> urls)
+		throws IOException, ToolkitError {
+
+		LinkedList<Future<RecordingPublisher>> pending
+			= new LinkedList<Future<RecordingPublisher>>();
+		int maxPending = nWorkers * PENDING_PER_WORKER;
+
+		if (Debug.get(Debug.Logic)) {
+			System.err.println("Starting "
+					   +String.valueOf(nWorkers)
+					   +" workers");
+		}
+		ExecutorService ex = Executors.newFixedThreadPool(
+					    nWorkers, new WorkerFactory());
+		try {
+			while (urls.hasNext()) {
+				while (pending.size() >= maxPending) {
+					publishNext(pending);
+				}
+				String urlarg = urls.next();
+				TargetTask t = new TargetTask(urlarg);
+				pending.add(ex.submit(t));
+			}
+			while (!pending.isEmpty()) {
+				publishNext(pending);
+			}
+		} finally {
+			ex.shutdownNow();
+		}
+	}
+
+
+	/* Wait for the oldest pending target to finish and publish
+	 * its recorded results.
+	 */
+	protected void publishNext(
+			LinkedList<Future<RecordingPublisher>> p)
+		throws IOException, ToolkitError {
+
+		Future<RecordingPublisher> f = p.removeFirst();
+		RecordingPublisher rec;
+		try {
+			rec = f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ToolkitError("Interrupted while waiting "
+					       +"for results", e);
+		} catch (ExecutionException e) {
+			throw new ToolkitError(e.getCause());
+		}
+		rec.replay(pub);
+	}
+
+}
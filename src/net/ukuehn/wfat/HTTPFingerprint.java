@@ -46,14 +46,18 @@ import java.security.KeyManagementException;
 import java.security.SecureRandom;
 
 
+import net.ukuehn.net.HostResolver;
 import net.ukuehn.xml.SimpleXMLWriter;
 import net.ukuehn.security.NullTrustManager;
 import net.ukuehn.security.NullHostnameVerifier;
-import net.ukuehn.html.HtmlBuffer;
 import net.ukuehn.html.HtmlStructureExtractor;
 import net.ukuehn.html.HttpEquivExtractor;
+import net.ukuehn.html.TokenCursor;
+import net.ukuehn.html.TokenDispatcher;
 import net.ukuehn.html.HttpEquivResult;
 import net.ukuehn.html.ParserException;
+import net.ukuehn.html.ReadLimits;
+import net.ukuehn.html.ScriptCache;
 import net.ukuehn.util.Debug;
 
 
@@ -65,10 +69,17 @@ public class HTTPFingerprint {
 	boolean followAppRedirect;
 	boolean verbose;
 	boolean doStructHash;
+	boolean headFirst;
 	ConnectionHandler hc;
 	Publisher pub;
-	int delay;
-	boolean initialRequest;
+	PolitenessScheduler scheduler;
+	HopCache hopCache;
+	ReadLimits readLimits;
+	TransferStats transferStats;
+	Digester digester;
+	SimilarityIndex simIndex;
+	ScriptCache scriptCache;
+	RecordingPublisher recorder;
 
 
 	// Be sure not to include headers here that my occur multiple
@@ -92,8 +103,54 @@ public class HTTPFingerprint {
 		followAppRedirect = false;
 		verbose = false;
 		doStructHash = false;
-		delay = 0;
-		initialRequest = true;
+		headFirst = false;
+		scheduler = null;
+		hopCache = null;
+		readLimits = ReadLimits.DEFAULT;
+		transferStats = null;
+		digester = new Digester();
+		simIndex = null;
+		scriptCache = null;
+		recorder = null;
+	}
+
+
+	/* Create a fingerprinter with the same settings as the given
+	 * one, but publishing to a different publisher. Used to give
+	 * each worker thread its own instance.
+	 */
+	public HTTPFingerprint(HTTPFingerprint proto, Publisher publisher)
+		throws ToolkitError {
+		this(publisher, proto.hc);
+		noRedirect = proto.noRedirect;
+		followAppRedirect = proto.followAppRedirect;
+		verbose = proto.verbose;
+		doStructHash = proto.doStructHash;
+		headFirst = proto.headFirst;
+		scheduler = proto.scheduler;
+		hopCache = proto.hopCache;
+		readLimits = proto.readLimits;
+		transferStats = proto.transferStats;
+		digester = proto.digester;
+		simIndex = proto.simIndex;
+		scriptCache = proto.scriptCache;
+	}
+
+
+	public void setPublisher(Publisher publisher) {
+		pub = publisher;
+		recorder = null;
+	}
+
+
+	/* Publish to a recorder whose events are replayed later, in
+	 * the order of the targets. The pages are then added to the
+	 * similarity index when replayed, so that the clusters are
+	 * the same as when the targets are processed one by one.
+	 */
+	public void setRecorder(RecordingPublisher rec) {
+		pub = rec;
+		recorder = rec;
 	}
 
 
@@ -117,20 +174,121 @@ public class HTTPFingerprint {
 	}
 
 
-	public void setDelay(int parmDelay) {
-		delay = parmDelay;
+	/* Send HEAD requests instead of GET if the body of the
+	 * response is not needed for the analysis.
+	 */
+	public void setHeadFirst(boolean doit) {
+		headFirst = doit;
+	}
+
+
+	/* Use the given scheduler to keep requests to the same host
+	 * apart. The scheduler may be shared between instances.
+	 */
+	public void setScheduler(PolitenessScheduler sched) {
+		scheduler = sched;
 	}
 
 
-	protected void handleHTML(HtmlBuffer html, URL u)
-		throws ParserException, ToolkitError {
+	/* Answer redirect hops seen before from the given cache. The
+	 * cache may be shared between instances.
+	 */
+	public void setHopCache(HopCache cache) {
+		hopCache = cache;
+	}
+
+
+	/* Limit the bytes, tokens and time spent on reading a single
+	 * html document.
+	 */
+	public void setReadLimits(ReadLimits limits) {
+		readLimits = limits;
+	}
+
+
+	/* Count the bytes of the html bodies read in the given stats.
+	 * The stats may be shared between instances.
+	 */
+	public void setTransferStats(TransferStats stats) {
+		transferStats = stats;
+	}
+
+
+	/* Hash the structure of html documents with digests from d.
+	 * The digester may be shared between instances.
+	 */
+	public void setDigester(Digester d) {
+		digester = d;
+	}
+
+
+	/* Cluster the html documents by their structure in the given
+	 * index, and publish the clusters. The index may be shared
+	 * between instances.
+	 */
+	public void setSimilarityIndex(SimilarityIndex index) {
+		simIndex = index;
+	}
+
+
+	/* Fetch external scripts through the given cache, so that the
+	 * structural hash covers their contents. The cache may be
+	 * shared between instances.
+	 */
+	public void setScriptCache(ScriptCache cache) {
+		scriptCache = cache;
+	}
+
+
+	/* Record the bytes read from the body of conn by tc. */
+	protected void countTransfer(HttpURLConnection conn,
+				     TokenCursor tc) {
+		String enc = conn.getContentEncoding();
+		boolean compressed = (enc != null)
+			&& !enc.equalsIgnoreCase("identity");
+		if (Debug.get(Debug.Connection)) {
+			System.err.println("Body of "+conn.getURL()
+					   +": "+tc.getWireBytes()
+					   +" bytes on the wire, "
+					   +tc.getBodyBytes()
+					   +" bytes decoded"
+					   +((compressed) ? " ("+enc+")" : ""));
+		}
+		if (transferStats != null) {
+			transferStats.add(tc.getWireBytes(),
+					  tc.getBodyBytes(), compressed);
+		}
+	}
+
+
+	protected void handleHTML(HtmlStructureExtractor hse, URL u)
+		throws IOException, ToolkitError {
 		if (Debug.get(Debug.HTML)) {
 			System.err.println("handleHTML()");
 		}
-		Digester d = new Digester();
-		HtmlStructureExtractor hse = new 
-			HtmlStructureExtractor(html, u, hc, d);
-		hse.extract();
+		hse.complete();
+		pub.publishStructHash(hse.getAlgorithm(), hse.getStructHash(),
+				      hse.getElementCount());
+		if ((simIndex != null) && (recorder != null)) {
+			recorder.publishSimilarity(simIndex,
+						   hse.getSignature());
+		} else if (simIndex != null) {
+			SimilarityIndex.Match m
+				= simIndex.add(hse.getSignature());
+			pub.publishSimilarity(m.getCluster(), m.getScore());
+		}
+	}
+
+
+	/* Servers that do not implement HEAD, or do not allow it,
+	 * must be asked with GET instead.
+	 */
+	protected boolean isHeadRejected(int code) {
+		if ( (code == HttpURLConnection.HTTP_BAD_METHOD) ||
+		     (code == HttpURLConnection.HTTP_NOT_IMPLEMENTED) ) {
+			return true;
+		}
+		return false;
 	}
 
 
@@ -187,10 +345,12 @@ public class HTTPFingerprint {
 		int resp;
 		int redirState;
 		boolean initial;
+		boolean cached;
 		boolean obtainContent;
 		HttpEquivResult er;
-		HtmlBuffer htmlBuf;
+		HtmlStructureExtractor hse;
 		String alr;  // Application layer redirect from http-equiv
+		String limitMsg;
 		String errorMsg;
 
 		targetUrl = urlParm;
@@ -201,16 +361,6 @@ public class HTTPFingerprint {
 		initial = true;
 		maxRedirects = (noRedirect) ? 1 : 31;
 		for (int i = 0;  i < maxRedirects;  i++) {
-			// if delay is set, wait for some time before doing
-			// the request, however, not for the first of all.
-			if (!initialRequest && (delay > 0)) {
-				try {
-					Thread.sleep(delay);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
-			}
-			initialRequest = false;
 			resp = 0;
 
 			if (hc.isForbidden(u.getHost())) {
@@ -220,29 +370,100 @@ public class HTTPFingerprint {
 				pub.publishException(errorMsg);
 				break;
 			}
+			// start looking up the address, so that it is
+			// known when the response is published
+			HostResolver.getDefault().resolveAsync(u.getHost());
+			conn = null;
+			if (hopCache != null) {
+				conn = hopCache.get(u);
+			}
+			cached = (conn != null);
+			// if delay is set, wait until the host may be
+			// contacted again
+			if ((scheduler != null) && !cached) {
+				scheduler.acquire(u.getHost());
+			}
 			try {
-				conn = hc.prepareConnection(u, false);
+				if (!cached) {
+					conn = hc.prepareConnection(u, false,
+						(headFirst && !obtainContent)
+						    ? "HEAD" : "GET");
+				}
 				if (conn != null) {
 					resp = conn.getResponseCode();
 				} else {
 					break;
 				}
+				if (!cached && isHeadRejected(resp) &&
+				    conn.getRequestMethod().equals("HEAD")) {
+					if (Debug.get(Debug.Connection)) {
+						System.err.println("HEAD "
+							   +"rejected by "
+							   +u.getHost()
+							   +", trying GET");
+					}
+					conn.disconnect();
+					// the GET is another request to
+					// the host, so wait again
+					if (scheduler != null) {
+						scheduler.acquire(u.getHost());
+					}
+					conn = hc.prepareConnection(u, false);
+					if (conn == null) {
+						break;
+					}
+					resp = conn.getResponseCode();
+				}
+				if ((hopCache != null) && !cached &&
+				    isRedirectCode(resp)) {
+					hopCache.put(u, conn);
+				}
 			} catch (IOException e) {
 				errorMsg = e.getMessage();
 				pub.publishException(errorMsg);
 				break;
 			}
 
-			htmlBuf = null;
+			hse = null;
 			er = null;
 			alr = null;
+			limitMsg = null;
 			if (!isRedirectCode(resp) && obtainContent) {
 				// Try to read document 
+				TokenCursor tc = null;
 				try {
-					htmlBuf = new HtmlBuffer(conn);
+					if (doStructHash) {
+						// extract meta tags and
+						// structure in one pass
+						tc = new TokenCursor(conn,
+							  false, readLimits);
+						HttpEquivExtractor hee;
+						hee = new HttpEquivExtractor();
+						hse = new
+						      HtmlStructureExtractor(u,
+							hc, digester);
+						hse.setScriptCache(scriptCache);
+						TokenDispatcher td
+							= new TokenDispatcher();
+						td.add(hee);
+						td.add(hse);
+						td.run(tc);
+						er = hee.getResult();
+						limitMsg = tc.getLimitMessage();
+					} else {
+						// only the meta tags in the
+						// head section are of
+						// interest, stream them
+						tc = new TokenCursor(conn,
+							  true, readLimits);
+						er = getAppLayerEquiv(
+						   new HttpEquivExtractor(tc));
+						limitMsg = tc.getLimitMessage();
+					}
 				} catch (ParserException e) {
 					// Cannot read html doc, then
 					// we do not have one. That's fine...
+					hse = null;
 					if (Debug.get(
 						Debug.AppLayerRedirect) ||
 					    Debug.get(Debug.HTML)) {
@@ -250,15 +471,21 @@ public class HTTPFingerprint {
 						      +"read html document: "
 							 +e.toString());
 					}
+				} finally {
+					// also if a visitor failed half way
+					// through the document
+					if (tc != null) {
+						tc.close();
+					}
+				}
+				if (tc != null) {
+					countTransfer(conn, tc);
 				}
 
 				// Determine if we have an application-level
 				// redirect. Here only html-redirects
 				// using <meta http-equiv="refresh"...>
 				// are handled.
-				if (htmlBuf != null) {
-					er = getAppLayerEquiv(htmlBuf);
-				}
 				if (er != null) {
 					alr = getAppLayerRedirect(er);
 				}
@@ -277,7 +504,8 @@ public class HTTPFingerprint {
 			String hostName = currUrl.getHost();
 			InetAddress hostIP = null;
 			try {
-				hostIP = InetAddress.getByName(hostName);
+				hostIP = HostResolver.getDefault().
+					resolve(hostName);
 			} catch (UnknownHostException e) {
 				// if IP address cannot be determined,
 				// continue with null. The publisher
@@ -288,11 +516,20 @@ public class HTTPFingerprint {
 
 			pub.publishStartResult(targetUrl, currUrl, 
 					       hostName, hostIP,
-					       resp, redirState);
+					       resp, redirState, cached);
 			publishHttpResults(conn);
 			if ((er != null) && verbose) {
 				    publishEquivResults(er);
 			}
+			// the structure is of interest for the final
+			// document only
+			if ((hse != null) && !isRedirectCode(resp) &&
+			    ((alr == null) || !followAppRedirect)) {
+				handleHTML(hse, u);
+			}
+			if (limitMsg != null) {
+				pub.publishException(limitMsg);
+			}
 			pub.publishEndResult();
 
 			// Output redirect information
@@ -309,14 +546,7 @@ public class HTTPFingerprint {
 								 hostIP,
 								 initial);
 				}
-				if ((htmlBuf != null) && doStructHash) {
-					try {
-						handleHTML(htmlBuf, u);
-					} catch (ParserException e) {
-						String err = e.getMessage();
-						pub.publishException(err);
-						//throw new ToolkitError(e);
-					}
+				if (hse != null) {
 					break;
 				}
 				//if (alr == null) {
@@ -427,15 +657,10 @@ public class HTTPFingerprint {
 	}
 
 
-	protected HttpEquivResult getAppLayerEquiv(HtmlBuffer hb) {
+	protected HttpEquivResult getAppLayerEquiv(HttpEquivExtractor ex) {
 		HttpEquivResult er = null;
-		HttpEquivExtractor ex;
 
-		if (hb == null) {
-			return null;
-		}
 		try {
-			ex = new HttpEquivExtractor(hb);
 			er = ex.extract();
 		} catch (ParserException e) {
 			// ok, cannot parse input, so we are done...
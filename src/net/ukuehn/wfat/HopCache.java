@@ -0,0 +1,213 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.wfat;
+
+
+import java.net.*;
+import java.io.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Cache of HTTP redirect responses, keyed by request URL. Many
+ * targets redirect into the same few hubs, so a redirect hop that
+ * has been seen recently is answered from memory instead of asking
+ * the server again.
+ *
+ * Only redirect responses are stored, as their body is never read.
+ * Entries expire after the given time to live, and the least
+ * recently used entries are dropped if the cache is full. The cache
+ * is shared by all worker threads.
+ */
+public class HopCache {
+
+	protected static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	long ttl;
+	LinkedHashMap<String, Hop> map;
+	long hits;
+	long misses;
+
+
+	public HopCache(int ttlSecs) {
+		this(ttlSecs, DEFAULT_MAX_ENTRIES);
+	}
+
+
+	public HopCache(int ttlSecs, final int maxEntries) {
+		ttl = ttlSecs * 1000L;
+		map = new LinkedHashMap<String, Hop>(256, 0.75f, true) {
+			protected boolean removeEldestEntry(
+				      Map.Entry<String, Hop> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		hits = 0;
+		misses = 0;
+	}
+
+
+	/* Return a connection replaying the cached response for the
+	 * given URL, or null if there is none.
+	 */
+	public synchronized HttpURLConnection get(URL u) {
+		String key = u.toString();
+		Hop e = map.get(key);
+		if ((e != null) &&
+		    (e.expires <= System.currentTimeMillis())) {
+			map.remove(key);
+			e = null;
+		}
+		if (e == null) {
+			misses += 1;
+			return null;
+		}
+		hits += 1;
+		if (Debug.get(Debug.Connection)) {
+			System.err.println("HopCache: hit "+key);
+		}
+		return new CachedConnection(u, e);
+	}
+
+
+	/* Remember the response of the given connection, which must
+	 * have been connected already.
+	 */
+	public void put(URL u, HttpURLConnection conn) throws IOException {
+		if (conn instanceof CachedConnection) {
+			return;
+		}
+		Hop e = new Hop();
+		e.code = conn.getResponseCode();
+		e.message = conn.getResponseMessage();
+		e.keys = new ArrayList<String>();
+		e.values = new ArrayList<String>();
+		for (int i = 0;  ;  i++) {
+			String k = conn.getHeaderFieldKey(i);
+			String v = conn.getHeaderField(i);
+			if ((k == null) && (v == null)) {
+				break;
+			}
+			e.keys.add(k);
+			e.values.add(v);
+		}
+		e.expires = System.currentTimeMillis() + ttl;
+		synchronized (this) {
+			map.put(u.toString(), e);
+		}
+	}
+
+
+	public synchronized String getStats() {
+		return "HopCache: "+String.valueOf(hits)+" hits, "
+			+String.valueOf(misses)+" misses, "
+			+String.valueOf(map.size())+" entries";
+	}
+
+
+	static class Hop {
+		int code;
+		String message;
+		ArrayList<String> keys;
+		ArrayList<String> values;
+		long expires;
+	}
+
+
+	/* Connection answering from a cache entry. It never touches
+	 * the network and has an empty body.
+	 */
+	static class CachedConnection extends HttpURLConnection {
+
+		Hop entry;
+
+
+		CachedConnection(URL u, Hop e) {
+			super(u);
+			entry = e;
+			responseCode = e.code;
+			responseMessage = e.message;
+			connected = true;
+		}
+
+
+		public void connect() {
+			// nothing, always connected
+		}
+
+
+		public void disconnect() {
+			// nothing
+		}
+
+
+		public boolean usingProxy() {
+			return false;
+		}
+
+
+		public int getResponseCode() {
+			return responseCode;
+		}
+
+
+		public String getHeaderFieldKey(int n) {
+			if ((n < 0) || (n >= entry.keys.size())) {
+				return null;
+			}
+			return entry.keys.get(n);
+		}
+
+
+		public String getHeaderField(int n) {
+			if ((n < 0) || (n >= entry.values.size())) {
+				return null;
+			}
+			return entry.values.get(n);
+		}
+
+
+		public String getHeaderField(String name) {
+			String res = null;
+			for (int i = 0;  i < entry.keys.size();  i++) {
+				String k = entry.keys.get(i);
+				if ((k != null) && k.equalsIgnoreCase(name)) {
+					res = entry.values.get(i);
+				}
+			}
+			return res;
+		}
+
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+	}
+
+}
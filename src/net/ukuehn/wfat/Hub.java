@@ -24,155 +24,145 @@
 package net.ukuehn.wfat;
 
 
-import java.net.*;
 import java.io.*;
 
-import java.util.Date;
-import java.util.Set;
-import java.util.LinkedHashSet;
-import java.util.Iterator;
-import java.text.SimpleDateFormat;
+import java.util.Arrays;
 
 import net.ukuehn.util.Debug;
 
 
-public class Hub extends Publisher {
+
+/* Passes every event on to all registered publishers. The slots
+ * grow as publishers are registered.
+ *
+ * A publisher that fails is dropped with a warning, and the others
+ * go on. Only if all of them have failed, the failure is passed on
+ * to the caller.
+ *
+ * After setAsync(), each publisher registered gets its own thread
+ * and event buffer, see AsyncSink. The calls to the hub then return
+ * as soon as the event is buffered, and publishGlobalEnd() waits
+ * until all publishers are through. The event classes of the
+ * recording publisher are used to carry the calls, but nothing is
+ * recorded.
+ */
+public class Hub extends RecordingPublisher {
 
 	Publisher[] slot;
+	AsyncSink[] sink;
+	boolean[] failed;
 	int cap;
 	int nPub;
+	int nFailed;
+	int asyncPolicy;
+
 
 	public Hub() {
-		cap = 2;
-		slot = new Publisher[cap];
-		nPub = 0;
+		this(2);
 	}
 
 
 	public Hub(int capacity) {
-		cap = capacity;
+		cap = Math.max(1, capacity);
 		slot = new Publisher[cap];
+		sink = new AsyncSink[cap];
+		failed = new boolean[cap];
 		nPub = 0;
+		nFailed = 0;
+		asyncPolicy = -1;
 	}
 
 
-	public void register(Publisher p) throws ToolkitError {
-		if (p == null) {
-			return;
-		}
-		if (nPub < cap) {
-			// still a free slot
-			slot[nPub] = p;
-			nPub += 1;
-		} else {
-			throw new ToolkitError("No enough slots in "
-						   +"publisher hub.");
-		}
-	}
-
-
-	public void publishGlobalStart()
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishGlobalStart();
-		}
-	}
-
-
-	public void publishGlobalEnd()
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishGlobalEnd();
-		}
+	/* Give each publisher registered from now on a thread of its
+	 * own. policy is AsyncSink.BLOCK or AsyncSink.DROP.
+	 */
+	public void setAsync(int policy) {
+		asyncPolicy = policy;
 	}
 
 
-	public void publishStart(String urlstr)
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishStart(urlstr);
+	public void register(Publisher p) throws ToolkitError {
+		if (p == null) {
+			return;
 		}
-	}
-
-
-	public void publishStartResult(URL theTargetUrl,
-				       URL theRespUrl,
-				       String respHostName,
-				       InetAddress respIP,
-				       int respCode,
-				       int redirState)
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishStartResult(theTargetUrl,
-						   theRespUrl,
-						   respHostName, respIP,
-						   respCode, redirState);
+		if (nPub == cap) {
+			cap = 2*cap;
+			slot = Arrays.copyOf(slot, cap);
+			sink = Arrays.copyOf(sink, cap);
+			failed = Arrays.copyOf(failed, cap);
 		}
-	}
-
-
-	public void publishElement(String key, String value)
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishElement(key, value);
+		slot[nPub] = p;
+		if (asyncPolicy >= 0) {
+			sink[nPub] = new AsyncSink(p, asyncPolicy);
 		}
+		nPub += 1;
 	}
 
 
-	public void publishEndResult() throws IOException, ToolkitError {
+	protected void record(Event e) throws IOException, ToolkitError {
 		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishEndResult();
+			if (failed[i]) {
+				continue;
+			}
+			if (sink[i] != null) {
+				sink[i].put(e);
+				if (sink[i].getFailure() != null) {
+					fail(i, sink[i].getFailure());
+				}
+				continue;
+			}
+			try {
+				e.replay(slot[i]);
+			} catch (IOException ex) {
+				fail(i, ex);
+			} catch (ToolkitError ex) {
+				fail(i, ex);
+			} catch (RuntimeException ex) {
+				fail(i, ex);
+			}
 		}
-
 	}
 
 
-	public void publishEnd() throws IOException, ToolkitError {
+	public void publishGlobalEnd() throws IOException, ToolkitError {
+		super.publishGlobalEnd();
 		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishEnd();;
+			if (sink[i] != null) {
+				sink[i].close();
+				if (!failed[i]
+				    && (sink[i].getFailure() != null)) {
+					fail(i, sink[i].getFailure());
+				}
+			}
 		}
-
 	}
 
 
-	public void publishRedirect(URL respUrl,
-				    String respHostName,
-				    InetAddress respIP,
-				    URL nextUrl,
-				    boolean initial,
-				    int respCode)
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishRedirect(respUrl,
-						respHostName, respIP,
-						nextUrl,
-						initial, respCode);
+	protected void fail(int i, Exception e) throws ToolkitError {
+		failed[i] = true;
+		nFailed += 1;
+		String name = slot[i].getClass().getSimpleName();
+		if (nFailed == nPub) {
+			throw new ToolkitError(name+" failed", e);
 		}
-	}
-
-
-	public void publishDestNoRedir(URL reqUrl,
-				       String hostName,
-				       InetAddress hostIP)
-		throws IOException, ToolkitError {
-		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishDestNoRedir(reqUrl, hostName, hostIP);
+		System.err.println("Warning: "+name+" failed, its output "
+				   +"is incomplete: "+e.toString());
+		if (Debug.get(Debug.Publish)) {
+			e.printStackTrace();
 		}
 	}
 
 
-	public void publishDestWithRedir(URL reqUrl,
-					 URL destUrl,
-					 String destHostName,
-					 InetAddress destIP,
-					 boolean initial)
-		throws IOException, ToolkitError {
+	public String getStats() {
+		long dropped = 0;
 		for (int i = 0;  i < nPub;  i++) {
-			slot[i].publishDestWithRedir(reqUrl, destUrl,
-						     destHostName, destIP,
-						     initial);
+			if (sink[i] != null) {
+				dropped += sink[i].getDropped();
+			}
 		}
-
+		return "Hub: "+String.valueOf(nPub)+" publishers, "
+			+String.valueOf(nFailed)+" failed, "
+			+String.valueOf(dropped)+" targets dropped";
 	}
 
 }
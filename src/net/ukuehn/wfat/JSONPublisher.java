@@ -0,0 +1,397 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.net.*;
+import java.io.*;
+
+
+
+/* Writes the results as JSON Lines: one JSON object per target on a
+ * line of its own, written as soon as the target is done. Each line
+ * stands alone, so the output can be processed while the run is
+ * still going, and split at any line break.
+ *
+ * The names are those of the XML format, see XFS, e.g.
+ *
+ * {"TargetURL":"http://example.com/",
+ *  "Responses":[{"ReqURL":"http://example.com/","Host":"example.com",
+ *    "IP":"192.0.2.1","RespCode":301,"Redir":"http",
+ *    "Headers":[{"Source":"http","Key":"Location","Value":"..."}],
+ *    "RedirectURL":"http://www.example.com/"}, ...],
+ *  "DestURL":"http://www.example.com/"}
+ *
+ * A response may also hold "Cached", "StructHash", "Similarity" and
+ * "Exceptions", the target "Exceptions" that occurred outside of a
+ * response.
+ */
+public class JSONPublisher extends Publisher {
+
+	protected static final String KRESPONSES = "Responses";
+	protected static final String KHEADERS = "Headers";
+	protected static final String KEXCEPTIONS = "Exceptions";
+	protected static final String KREDIRECT = "RedirectURL";
+	protected static final String KDEST = "DestURL";
+
+	protected static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	Writer out;
+
+	/* parts of the current target, put together on publishEnd() */
+	StringBuilder responses;
+	StringBuilder resp;
+	StringBuilder headers;
+	StringBuilder respExceptions;
+	StringBuilder exceptions;
+	String destUrl;
+	boolean inResponse;
+	boolean openResponse;
+	StringBuilder line;
+	char[] chars;
+
+
+	public JSONPublisher(Writer output) {
+		this(output, false, 0);
+	}
+
+
+	public JSONPublisher(Writer output, boolean longOutput, int level) {
+		super(longOutput, level);
+		out = output;
+		responses = new StringBuilder();
+		resp = new StringBuilder();
+		headers = new StringBuilder();
+		respExceptions = new StringBuilder();
+		exceptions = new StringBuilder();
+		line = new StringBuilder(1024);
+		chars = new char[1024];
+		clear();
+	}
+
+
+	protected void clear() {
+		responses.setLength(0);
+		resp.setLength(0);
+		headers.setLength(0);
+		respExceptions.setLength(0);
+		exceptions.setLength(0);
+		destUrl = null;
+		inResponse = false;
+		openResponse = false;
+	}
+
+
+	/* Append s as JSON string, or null. Line and paragraph
+	 * separators are escaped as well, some JavaScript parsers
+	 * do not take them in strings.
+	 */
+	public static void appendString(StringBuilder sb, String s) {
+		if (s == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append('"');
+		int n = s.length();
+		int from = 0;
+		for (int i = 0;  i < n;  i++) {
+			char c = s.charAt(i);
+			if ((c >= 0x20) && (c != '"') && (c != '\\')
+			    && (c != 0x2028) && (c != 0x2029)) {
+				continue;
+			}
+			sb.append(s, from, i);
+			from = i+1;
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				sb.append("\\u");
+				for (int k = 12;  k >= 0;  k -= 4) {
+					sb.append(HEX[(c >> k) & 0xf]);
+				}
+				break;
+			}
+		}
+		sb.append(s, from, n);
+		sb.append('"');
+	}
+
+
+	/* Append ,"name": to sb, without the comma if it is the first
+	 * member of the object.
+	 */
+	protected static void appendName(StringBuilder sb, String name) {
+		if ((sb.length() > 0) && (sb.charAt(sb.length()-1) != '{')) {
+			sb.append(',');
+		}
+		sb.append('"');
+		sb.append(name);
+		sb.append('"');
+		sb.append(':');
+	}
+
+
+	protected static void appendSeparator(StringBuilder sb) {
+		if (sb.length() > 0) {
+			sb.append(',');
+		}
+	}
+
+
+	/* Finish the current response and add it to the list. */
+	protected void closeResponse() {
+		if (!openResponse) {
+			return;
+		}
+		if (headers.length() > 0) {
+			appendName(resp, KHEADERS);
+			resp.append('[');
+			resp.append(headers);
+			resp.append(']');
+		}
+		if (respExceptions.length() > 0) {
+			appendName(resp, KEXCEPTIONS);
+			resp.append('[');
+			resp.append(respExceptions);
+			resp.append(']');
+		}
+		resp.append('}');
+		appendSeparator(responses);
+		responses.append(resp);
+		resp.setLength(0);
+		headers.setLength(0);
+		respExceptions.setLength(0);
+		openResponse = false;
+		inResponse = false;
+	}
+
+
+	public void publishGlobalEnd() throws IOException, ToolkitError {
+		out.flush();
+	}
+
+
+	public void publishStart(String urlstr)
+		throws IOException, ToolkitError {
+		targetUrlStr = urlstr;
+		clear();
+	}
+
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String respHostName,
+				       InetAddress respIP,
+				       int respCode,
+				       int redirState)
+		throws IOException, ToolkitError {
+		publishStartResult(theTargetUrl, theRespUrl,
+				   respHostName, respIP,
+				   respCode, redirState, false);
+	}
+
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String respHostName,
+				       InetAddress respIP,
+				       int respCode,
+				       int redirState,
+				       boolean cached)
+		throws IOException, ToolkitError {
+		closeResponse();
+		openResponse = true;
+		inResponse = true;
+		resp.append('{');
+		appendName(resp, XFS.ARESPURL);
+		appendString(resp, theRespUrl.toString());
+		appendName(resp, XFS.ARESPHOST);
+		appendString(resp, (respHostName != null) ? respHostName : "");
+		appendName(resp, XFS.ARESPIP);
+		appendString(resp, (respIP != null)
+			     ? respIP.getHostAddress() : "");
+		appendName(resp, XFS.ARESPCODE);
+		resp.append(respCode);
+		appendName(resp, XFS.AREDIR);
+		String redirName = "";
+		if (redirState == REDIRHTTP) {
+			redirName = XFS.VRHTTP;
+		} else if (redirState == REDIREQUIV) {
+			redirName = XFS.VREQUIV;
+		} else if (redirState == REDIRNONE) {
+			redirName = XFS.VRNONE;
+		}
+		appendString(resp, redirName);
+		if (cached) {
+			appendName(resp, XFS.ACACHED);
+			resp.append("true");
+		}
+	}
+
+
+	public void publishElement(String key, String value, int source)
+		throws IOException, ToolkitError {
+		appendSeparator(headers);
+		headers.append('{');
+		appendName(headers, XFS.ASOURCE);
+		appendString(headers, (source == HTTP)
+			     ? XFS.VSRCHTTP : XFS.VSRCEQUIV);
+		appendName(headers, XFS.AKEY);
+		appendString(headers, (key != null) ? key : "");
+		appendName(headers, XFS.AVALUE);
+		appendString(headers, (value != null) ? value : "");
+		headers.append('}');
+	}
+
+
+	public void publishException(String msg)
+		throws IOException, ToolkitError {
+		StringBuilder sb = (inResponse) ? respExceptions : exceptions;
+		appendSeparator(sb);
+		appendString(sb, msg);
+	}
+
+
+	public void publishStructHash(String alg, String hash, int elements)
+		throws IOException, ToolkitError {
+		if (!openResponse) {
+			return;
+		}
+		appendName(resp, XFS.ESTRUCTHASH);
+		resp.append('{');
+		appendName(resp, XFS.AALG);
+		appendString(resp, alg);
+		appendName(resp, XFS.AVALUE);
+		appendString(resp, hash);
+		appendName(resp, XFS.AELEMENTS);
+		resp.append(elements);
+		resp.append('}');
+	}
+
+
+	public void publishSimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		if (!openResponse) {
+			return;
+		}
+		appendName(resp, XFS.ESIMILARITY);
+		resp.append('{');
+		appendName(resp, XFS.ACLUSTER);
+		resp.append(cluster);
+		appendName(resp, XFS.ASCORE);
+		if (Double.isNaN(score) || Double.isInfinite(score)) {
+			resp.append("null");
+		} else {
+			resp.append(score);
+		}
+		resp.append('}');
+	}
+
+
+	public void publishEndResult() throws IOException, ToolkitError {
+		// the response stays open for a redirect
+		inResponse = false;
+	}
+
+
+	public void publishRedirect(URL respUrl,
+				    String respHostName,
+				    InetAddress respIP,
+				    URL nextUrl,
+				    boolean initial,
+				    int respCode)
+		throws IOException, ToolkitError {
+		if (openResponse) {
+			appendName(resp, KREDIRECT);
+			appendString(resp, nextUrl.toString());
+		}
+	}
+
+
+	public void publishDestNoRedir(URL reqUrl,
+				       String hostName,
+				       InetAddress hostIP)
+		throws IOException, ToolkitError {
+		destUrl = reqUrl.toString();
+	}
+
+
+	public void publishDestWithRedir(URL reqUrl,
+					 URL respUrl,
+					 String respHostName,
+					 InetAddress respIP,
+					 boolean initial)
+		throws IOException, ToolkitError {
+		destUrl = respUrl.toString();
+	}
+
+
+	public void publishEnd() throws IOException, ToolkitError {
+		closeResponse();
+		line.setLength(0);
+		line.append('{');
+		appendName(line, XFS.ATARGETURL);
+		appendString(line, targetUrlStr);
+		appendName(line, KRESPONSES);
+		line.append('[');
+		line.append(responses);
+		line.append(']');
+		if (exceptions.length() > 0) {
+			appendName(line, KEXCEPTIONS);
+			line.append('[');
+			line.append(exceptions);
+			line.append(']');
+		}
+		if (destUrl != null) {
+			appendName(line, KDEST);
+			appendString(line, destUrl);
+		}
+		line.append('}');
+		line.append('\n');
+		int n = line.length();
+		if (n > chars.length) {
+			chars = new char[Math.max(n, 2*chars.length)];
+		}
+		line.getChars(0, n, chars, 0);
+		out.write(chars, 0, n);
+		out.flush();
+		clear();
+	}
+
+}
@@ -0,0 +1,114 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.io.*;
+
+import net.ukuehn.util.AsyncGzipOutputStream;
+
+
+
+/* Where output goes: a file, or stdout if no file name is given,
+ * optionally compressed with gzip. For rotation, the files are
+ * numbered, e.g. scan.xml becomes scan-0000.xml, scan-0001.xml and
+ * so on. With compression, .gz is appended to the names.
+ */
+public class OutputSink {
+
+	protected static final String GZSUFFIX = ".gz";
+
+	String fileName;
+	boolean gzip;
+
+
+	public OutputSink(String name, boolean compress) {
+		fileName = name;
+		gzip = compress;
+	}
+
+
+	public boolean isFile() {
+		return fileName != null;
+	}
+
+
+	/* Name of the file with the given number, or of the only file
+	 * if chunk is negative.
+	 */
+	public String getFileName(int chunk) {
+		String name = fileName;
+		if (chunk >= 0) {
+			int sep = name.lastIndexOf(File.separatorChar);
+			int dot = name.lastIndexOf('.');
+			if (dot <= sep+1) {
+				dot = name.length();
+			}
+			name = name.substring(0, dot)
+				+String.format("-%04d", chunk)
+				+name.substring(dot);
+		}
+		if (gzip && !name.endsWith(GZSUFFIX)) {
+			name = name+GZSUFFIX;
+		}
+		return name;
+	}
+
+
+	/* Open the file with the given number, see getFileName(). */
+	public OutputStream open(int chunk) throws IOException {
+		OutputStream os;
+		if (fileName != null) {
+			os = new FileOutputStream(getFileName(chunk));
+		} else {
+			os = new StdoutStream();
+		}
+		if (gzip) {
+			os = new AsyncGzipOutputStream(os);
+		}
+		return os;
+	}
+
+
+	/* Stdout, which stays open when the output is closed, as
+	 * other outputs may still write to it.
+	 */
+	static class StdoutStream extends FilterOutputStream {
+
+		StdoutStream() {
+			super(System.out);
+		}
+
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			out.write(b, off, len);
+		}
+
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.wfat;
+
+
+import java.net.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import net.ukuehn.net.HostResolver;
+import net.ukuehn.util.Debug;
+
+
+
+/* Keep requests to the same server apart by a minimum delay, while
+ * requests to different servers are not delayed at all.
+ *
+ * For each host the scheduler remembers the earliest time the next
+ * request may be sent. A caller reserves a slot before each request
+ * and waits only if the slot lies in the future. Optionally, the
+ * same is done for the IP address of the host, so that virtual hosts
+ * on one machine are also kept apart.
+ *
+ * The scheduler is shared by all worker threads.
+ */
+public class PolitenessScheduler {
+
+	/* Number of entries that triggers removing expired entries
+	 * from the table.
+	 */
+	protected static final int PURGE_THRESHOLD = 4096;
+
+	long delay;
+	boolean perAddress;
+	HashMap<String, Long> nextSlot;
+	int purgeAt;
+
+
+	public PolitenessScheduler(int delayMillis) {
+		delay = delayMillis;
+		perAddress = false;
+		nextSlot = new HashMap<String, Long>();
+		purgeAt = PURGE_THRESHOLD;
+	}
+
+
+	public void setPerAddress(boolean doit) {
+		perAddress = doit;
+	}
+
+
+	/* Wait until a request to the given host may be sent, and
+	 * reserve the slot for it.
+	 */
+	public void acquire(String host) {
+		String hostKey;
+		String addrKey = null;
+		long now, slot, wait;
+
+		if ((delay <= 0) || (host == null)) {
+			return;
+		}
+		hostKey = "h:"+host.toLowerCase();
+		if (perAddress) {
+			try {
+				InetAddress ia = HostResolver.getDefault().
+					resolve(host);
+				addrKey = "a:"+ia.getHostAddress();
+			} catch (UnknownHostException e) {
+				// schedule by host name only
+				addrKey = null;
+			}
+		}
+
+		synchronized (this) {
+			now = System.currentTimeMillis();
+			slot = now;
+			slot = Math.max(slot, getSlot(hostKey));
+			if (addrKey != null) {
+				slot = Math.max(slot, getSlot(addrKey));
+			}
+			nextSlot.put(hostKey, Long.valueOf(slot + delay));
+			if (addrKey != null) {
+				nextSlot.put(addrKey,
+					     Long.valueOf(slot + delay));
+			}
+			if (nextSlot.size() >= purgeAt) {
+				purge(now);
+			}
+		}
+
+		wait = slot - now;
+		if (Debug.get(Debug.Connection)) {
+			System.err.println("PolitenessScheduler: "+host
+					   +" waits "+String.valueOf(wait)
+					   +" ms");
+		}
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	protected long getSlot(String key) {
+		Long l = nextSlot.get(key);
+		if (l == null) {
+			return 0;
+		}
+		return l.longValue();
+	}
+
+
+	/* Drop all entries whose slot has passed, as these hosts
+	 * could be contacted right away anyway.
+	 */
+	protected void purge(long now) {
+		Iterator<Long> it = nextSlot.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().longValue() <= now) {
+				it.remove();
+			}
+		}
+		purgeAt = Math.max(PURGE_THRESHOLD, 2*nextSlot.size());
+	}
+
+}
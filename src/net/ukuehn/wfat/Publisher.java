@@ -124,6 +124,23 @@ public class Publisher {
 	}
 
 
+	/* Same as above, cached tells whether the response was
+	 * served from the hop cache instead of the server.
+	 */
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String hostName,
+				       InetAddress hostIP,
+				       int respCode,
+				       int redirState,
+				       boolean cached)
+		throws IOException, ToolkitError {
+		publishStartResult(theTargetUrl, theRespUrl,
+				   hostName, hostIP,
+				   respCode, redirState);
+	}
+
+
 	public void publishElement(String key, String value)
 		throws IOException, ToolkitError {
 		publishElement(key, value, HTTP);
@@ -142,6 +159,26 @@ public class Publisher {
 	}
 
 
+	/* Structural hash of the html document of the response, see
+	 * -H. The hash is given in hex, computed with the named
+	 * algorithm over the given number of elements.
+	 */
+	public void publishStructHash(String alg, String hash, int elements)
+		throws IOException, ToolkitError {
+		// nothing
+	}
+
+
+	/* Cluster of documents with a similar structure that the html
+	 * document belongs to, and its estimated similarity to the
+	 * first document of the cluster.
+	 */
+	public void publishSimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		// nothing
+	}
+
+
 	// Must be prepared to handel respIP == null
 	public void publishRedirect(URL respUrl,
 				    String respHostName,
@@ -0,0 +1,423 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.wfat;
+
+
+import java.net.*;
+import java.io.*;
+
+import java.util.ArrayList;
+
+
+
+/* A publisher that does not output anything, but records the events
+ * it receives. The recorded events can later be replayed in the same
+ * order to another publisher. This allows a worker thread to collect
+ * all results for one target, while the actual output is done as one
+ * contiguous block by a single thread.
+ */
+public class RecordingPublisher extends Publisher {
+
+
+	/* One recorded call to a publisher method.
+	 */
+	protected static abstract class Event {
+		abstract void replay(Publisher p)
+			throws IOException, ToolkitError;
+	}
+
+
+	protected static class GlobalStartEvent extends Event {
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishGlobalStart();
+		}
+	}
+
+
+	protected static class GlobalEndEvent extends Event {
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishGlobalEnd();
+		}
+	}
+
+
+	protected static class StartEvent extends Event {
+		String urlstr;
+
+		StartEvent(String u) {
+			urlstr = u;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishStart(urlstr);
+		}
+	}
+
+
+	protected static class StartResultEvent extends Event {
+		URL targetUrl;
+		URL respUrl;
+		String hostName;
+		InetAddress hostIP;
+		int respCode;
+		int redirState;
+		boolean cached;
+
+		StartResultEvent(URL t, URL r, String h, InetAddress ip,
+				 int code, int redir, boolean c) {
+			targetUrl = t;
+			respUrl = r;
+			hostName = h;
+			hostIP = ip;
+			respCode = code;
+			redirState = redir;
+			cached = c;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishStartResult(targetUrl, respUrl,
+					     hostName, hostIP,
+					     respCode, redirState, cached);
+		}
+	}
+
+
+	protected static class ElementEvent extends Event {
+		String key;
+		String value;
+		int source;
+
+		ElementEvent(String k, String v, int src) {
+			key = k;
+			value = v;
+			source = src;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishElement(key, value, source);
+		}
+	}
+
+
+	protected static class ExceptionEvent extends Event {
+		String msg;
+
+		ExceptionEvent(String m) {
+			msg = m;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishException(msg);
+		}
+	}
+
+
+	protected static class StructHashEvent extends Event {
+		String alg;
+		String hash;
+		int elements;
+
+		StructHashEvent(String a, String h, int n) {
+			alg = a;
+			hash = h;
+			elements = n;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishStructHash(alg, hash, elements);
+		}
+	}
+
+
+	protected static class SimilarityEvent extends Event {
+		int cluster;
+		double score;
+
+		SimilarityEvent(int c, double s) {
+			cluster = c;
+			score = s;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishSimilarity(cluster, score);
+		}
+	}
+
+
+	/* Similarity of a page, looked up in the index when the event
+	 * is first replayed.
+	 */
+	protected static class PendingSimilarityEvent extends Event {
+		SimilarityIndex index;
+		int[] sig;
+		SimilarityIndex.Match match;
+
+		PendingSimilarityEvent(SimilarityIndex idx, int[] s) {
+			index = idx;
+			sig = s;
+			match = null;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			if (match == null) {
+				match = index.add(sig);
+			}
+			p.publishSimilarity(match.getCluster(),
+					    match.getScore());
+		}
+	}
+
+
+	protected static class RedirectEvent extends Event {
+		URL respUrl;
+		String respHostName;
+		InetAddress respIP;
+		URL nextUrl;
+		boolean initial;
+		int respCode;
+
+		RedirectEvent(URL r, String h, InetAddress ip, URL n,
+			      boolean init, int code) {
+			respUrl = r;
+			respHostName = h;
+			respIP = ip;
+			nextUrl = n;
+			initial = init;
+			respCode = code;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishRedirect(respUrl, respHostName, respIP,
+					  nextUrl, initial, respCode);
+		}
+	}
+
+
+	protected static class DestNoRedirEvent extends Event {
+		URL reqUrl;
+		String hostName;
+		InetAddress hostIP;
+
+		DestNoRedirEvent(URL r, String h, InetAddress ip) {
+			reqUrl = r;
+			hostName = h;
+			hostIP = ip;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishDestNoRedir(reqUrl, hostName, hostIP);
+		}
+	}
+
+
+	protected static class DestWithRedirEvent extends Event {
+		URL reqUrl;
+		URL respUrl;
+		String respHostName;
+		InetAddress respIP;
+		boolean initial;
+
+		DestWithRedirEvent(URL r, URL d, String h, InetAddress ip,
+				   boolean init) {
+			reqUrl = r;
+			respUrl = d;
+			respHostName = h;
+			respIP = ip;
+			initial = init;
+		}
+
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishDestWithRedir(reqUrl, respUrl,
+					       respHostName, respIP,
+					       initial);
+		}
+	}
+
+
+	protected static class EndResultEvent extends Event {
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishEndResult();
+		}
+	}
+
+
+	protected static class EndEvent extends Event {
+		void replay(Publisher p) throws IOException, ToolkitError {
+			p.publishEnd();
+		}
+	}
+
+
+	ArrayList<Event> events;
+
+
+	public RecordingPublisher() {
+		super();
+		events = new ArrayList<Event>();
+	}
+
+
+	/* Replay all recorded events to the given publisher, in the
+	 * order they have been recorded.
+	 */
+	public void replay(Publisher p) throws IOException, ToolkitError {
+		int n = events.size();
+		for (int i = 0;  i < n;  i++) {
+			events.get(i).replay(p);
+		}
+	}
+
+
+	public void clear() {
+		events.clear();
+	}
+
+
+	/* Called with each event, adds it to the recorded ones. */
+	protected void record(Event e) throws IOException, ToolkitError {
+		events.add(e);
+	}
+
+
+	public void publishGlobalStart() throws IOException, ToolkitError {
+		record(new GlobalStartEvent());
+	}
+
+
+	public void publishGlobalEnd() throws IOException, ToolkitError {
+		record(new GlobalEndEvent());
+	}
+
+
+	public void publishStart(String urlstr)
+		throws IOException, ToolkitError {
+		record(new StartEvent(urlstr));
+	}
+
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String hostName,
+				       InetAddress hostIP,
+				       int respCode,
+				       int redirState)
+		throws IOException, ToolkitError {
+		publishStartResult(theTargetUrl, theRespUrl,
+				   hostName, hostIP,
+				   respCode, redirState, false);
+	}
+
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String hostName,
+				       InetAddress hostIP,
+				       int respCode,
+				       int redirState,
+				       boolean cached)
+		throws IOException, ToolkitError {
+		record(new StartResultEvent(theTargetUrl, theRespUrl,
+						hostName, hostIP,
+						respCode, redirState,
+						cached));
+	}
+
+
+	public void publishElement(String key, String value, int source)
+		throws IOException, ToolkitError {
+		record(new ElementEvent(key, value, source));
+	}
+
+
+	public void publishException(String msg)
+		throws IOException, ToolkitError {
+		record(new ExceptionEvent(msg));
+	}
+
+
+	public void publishStructHash(String alg, String hash, int elements)
+		throws IOException, ToolkitError {
+		record(new StructHashEvent(alg, hash, elements));
+	}
+
+
+	public void publishSimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		record(new SimilarityEvent(cluster, score));
+	}
+
+
+	/* Record the similarity of a page with the given signature.
+	 * The page is added to the index only when the events are
+	 * replayed, so that the clusters depend on the order of
+	 * replay, not on the order the pages were recorded in.
+	 */
+	public void publishSimilarity(SimilarityIndex index, int[] sig)
+		throws IOException, ToolkitError {
+		record(new PendingSimilarityEvent(index, sig));
+	}
+
+
+	public void publishRedirect(URL respUrl,
+				    String respHostName,
+				    InetAddress respIP,
+				    URL nextUrl,
+				    boolean initial,
+				    int respCode)
+		throws IOException, ToolkitError {
+		record(new RedirectEvent(respUrl, respHostName, respIP,
+					     nextUrl, initial, respCode));
+	}
+
+
+	public void publishDestNoRedir(URL reqUrl,
+				       String hostName,
+				       InetAddress hostIP)
+		throws IOException, ToolkitError {
+		record(new DestNoRedirEvent(reqUrl, hostName, hostIP));
+	}
+
+
+	public void publishDestWithRedir(URL reqUrl,
+					 URL respUrl,
+					 String respHostName,
+					 InetAddress respIP,
+					 boolean initial)
+		throws IOException, ToolkitError {
+		record(new DestWithRedirEvent(reqUrl, respUrl,
+						  respHostName, respIP,
+						  initial));
+	}
+
+
+	public void publishEndResult() throws IOException, ToolkitError {
+		record(new EndResultEvent());
+	}
+
+
+	public void publishEnd() throws IOException, ToolkitError {
+		record(new EndEvent());
+	}
+
+}
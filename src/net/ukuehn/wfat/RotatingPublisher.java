@@ -0,0 +1,146 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.io.*;
+
+import net.ukuehn.util.Debug;
+
+
+
+/* Passes the results on to a publisher writing to an OutputSink. If
+ * a limit on the size or the number of targets is given, a new file
+ * with a new publisher is started once the limit is reached, between
+ * two targets. Each file is a complete document of its own.
+ *
+ * The size counted is that of the output before compression, as
+ * far as the publisher has written it out.
+ */
+public class RotatingPublisher extends RecordingPublisher {
+
+	PublisherFactory factory;
+	OutputSink sink;
+	long maxBytes;
+	int maxTargets;
+
+	Publisher cur;
+	CountingOutputStream os;
+	int chunk;
+	int targets;
+
+
+	/* Limits of 0 mean no limit. */
+	public RotatingPublisher(PublisherFactory f, OutputSink s,
+				 long bytes, int nTargets) {
+		factory = f;
+		sink = s;
+		maxBytes = bytes;
+		maxTargets = nTargets;
+		cur = null;
+		os = null;
+		chunk = 0;
+		targets = 0;
+	}
+
+
+	protected boolean isRotating() {
+		return (maxBytes > 0) || (maxTargets > 0);
+	}
+
+
+	protected void open() throws IOException, ToolkitError {
+		int n = (isRotating()) ? chunk : -1;
+		if (Debug.get(Debug.Publish) && sink.isFile()) {
+			System.err.println("Writing to "+sink.getFileName(n));
+		}
+		os = new CountingOutputStream(sink.open(n));
+		cur = factory.newPublisher(os);
+		chunk += 1;
+		targets = 0;
+	}
+
+
+	protected void close() throws IOException {
+		os.close();
+		os = null;
+		cur = null;
+	}
+
+
+	/* True if the current file has reached one of the limits. */
+	protected boolean isFull() {
+		return ((maxTargets > 0) && (targets >= maxTargets)) ||
+			((maxBytes > 0) && (os.getCount() >= maxBytes));
+	}
+
+
+	protected void record(Event e) throws IOException, ToolkitError {
+		if (e instanceof GlobalStartEvent) {
+			open();
+		} else if ((e instanceof StartEvent) && isFull()) {
+			// rotate only when there is more to come, so
+			// that there is no empty last file
+			cur.publishGlobalEnd();
+			close();
+			open();
+			cur.publishGlobalStart();
+		}
+		e.replay(cur);
+		if (e instanceof GlobalEndEvent) {
+			close();
+		} else if (e instanceof EndEvent) {
+			targets += 1;
+		}
+	}
+
+
+	/* Counts the bytes written through it. */
+	static class CountingOutputStream extends FilterOutputStream {
+
+		long count;
+
+		CountingOutputStream(OutputStream os) {
+			super(os);
+			count = 0;
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count += 1;
+		}
+
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+}
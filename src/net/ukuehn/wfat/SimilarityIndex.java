@@ -0,0 +1,217 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.wfat;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.ukuehn.html.MinHash;
+
+
+
+/* Clusters pages by the MinHash signature of their structure over a
+ * whole run. The first page of a cluster is its leader. A page joins
+ * the cluster of the most similar leader if their estimated
+ * similarity reaches the threshold, otherwise it becomes the leader
+ * of a new cluster. Clusters are numbered from 1 in the order they
+ * are found. Both the numbers and the clusters depend on the order
+ * the pages are added in, so with several workers the pages are
+ * added when their results are published in the order of the
+ * targets, see RecordingPublisher.
+ *
+ * The index is locality sensitive: the signature is split into
+ * BANDS bands, and a page is compared only to the leaders that agree
+ * with it in all positions of at least one band. Only leaders are
+ * indexed, and identical signatures are found by a direct lookup,
+ * so the work per page does not grow with the size of the clusters.
+ * The leaders are kept for the whole run, so memory grows with the
+ * number of clusters. Of the exact signatures only the most recently
+ * seen are kept, a page whose signature has been dropped is compared
+ * to the leaders again. The index is shared by all worker threads.
+ */
+public class SimilarityIndex {
+
+	public static final double DEFAULT_THRESHOLD = 0.8;
+
+	protected static final int BANDS = 8;
+	protected static final int ROWS = MinHash.SIZE / BANDS;
+	protected static final int DEFAULT_MAX_EXACT = 65536;
+
+	double threshold;
+	LinkedHashMap<Signature, Match> exact;
+	ArrayList<HashMap<Long, ArrayList<Leader>>> bands;
+	int clusters;
+	long pages;
+	long near;
+
+
+	/* Cluster of a page, and its similarity to the leader of the
+	 * cluster.
+	 */
+	public static class Match {
+		int cluster;
+		double score;
+
+		Match(int c, double s) {
+			cluster = c;
+			score = s;
+		}
+
+		public int getCluster() {
+			return cluster;
+		}
+
+		public double getScore() {
+			return score;
+		}
+	}
+
+
+	static class Leader {
+		int[] sig;
+		int cluster;
+
+		Leader(int[] s, int c) {
+			sig = s;
+			cluster = c;
+		}
+	}
+
+
+	/* Signature as key of the exact lookup */
+	static class Signature {
+		int[] sig;
+		int hash;
+
+		Signature(int[] s) {
+			sig = s;
+			hash = Arrays.hashCode(s);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return (o instanceof Signature)
+				&& Arrays.equals(sig, ((Signature)o).sig);
+		}
+	}
+
+
+	public SimilarityIndex() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+
+	public SimilarityIndex(double minSimilarity) {
+		threshold = minSimilarity;
+		exact = new LinkedHashMap<Signature, Match>(256, 0.75f,
+							     true) {
+			protected boolean removeEldestEntry(
+				      Map.Entry<Signature, Match> eldest) {
+				return size() > DEFAULT_MAX_EXACT;
+			}
+		};
+		bands = new ArrayList<HashMap<Long, ArrayList<Leader>>>();
+		for (int i = 0;  i < BANDS;  i++) {
+			bands.add(new HashMap<Long, ArrayList<Leader>>());
+		}
+		clusters = 0;
+		pages = 0;
+		near = 0;
+	}
+
+
+	/* Add a page with the given signature, and return the cluster
+	 * it belongs to.
+	 */
+	public synchronized Match add(int[] sig) {
+		pages += 1;
+		Signature key = new Signature(sig);
+		Match m = exact.get(key);
+		if (m != null) {
+			return m;
+		}
+		Leader best = null;
+		double bestScore = 0.0;
+		for (int i = 0;  i < BANDS;  i++) {
+			HashMap<Long, ArrayList<Leader>> b = bands.get(i);
+			ArrayList<Leader> l = b.get(band(sig, i));
+			if (l == null) {
+				continue;
+			}
+			for (int j = 0;  j < l.size();  j++) {
+				Leader c = l.get(j);
+				double s = MinHash.similarity(sig, c.sig);
+				if ((s >= threshold) && (s > bestScore)) {
+					best = c;
+					bestScore = s;
+				}
+			}
+		}
+		if (best != null) {
+			near += 1;
+			m = new Match(best.cluster, bestScore);
+		} else {
+			clusters += 1;
+			m = new Match(clusters, 1.0);
+			Leader c = new Leader(sig, clusters);
+			for (int i = 0;  i < BANDS;  i++) {
+				HashMap<Long, ArrayList<Leader>> b = bands.get(i);
+				Long bk = band(sig, i);
+				ArrayList<Leader> l = b.get(bk);
+				if (l == null) {
+					l = new ArrayList<Leader>(2);
+					b.put(bk, l);
+				}
+				l.add(c);
+			}
+		}
+		exact.put(key, m);
+		return m;
+	}
+
+
+	protected static Long band(int[] sig, int i) {
+		long h = i;
+		for (int j = i*ROWS;  j < (i+1)*ROWS;  j++) {
+			h = h*31 + sig[j];
+		}
+		return Long.valueOf(h);
+	}
+
+
+	public synchronized String getStats() {
+		return "Similarity: "+String.valueOf(pages)+" pages, "
+			+String.valueOf(clusters)+" clusters, "
+			+String.valueOf(near)+" near duplicates";
+	}
+
+}
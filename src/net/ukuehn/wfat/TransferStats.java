@@ -0,0 +1,78 @@
+/* -*- java -*-
+ *
+ * This is WebForrestAnalysisToolkit, a structural and security analysis tool
+ * for http server configurations.
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package net.ukuehn.wfat;
+
+
+
+/* Byte counts of the html bodies read, as they came over the wire
+ * and after content decoding, to see how much compressed transfer
+ * saves. Shared by all worker threads.
+ */
+public class TransferStats {
+
+	long bodies;
+	long compressed;
+	long wireBytes;
+	long bodyBytes;
+
+
+	public TransferStats() {
+		bodies = 0;
+		compressed = 0;
+		wireBytes = 0;
+		bodyBytes = 0;
+	}
+
+
+	/* Count a body of which wire bytes were read from the
+	 * connection, decoding to body bytes.
+	 */
+	public synchronized void add(long wire, long body,
+				     boolean isCompressed) {
+		bodies += 1;
+		if (isCompressed) {
+			compressed += 1;
+		}
+		wireBytes += wire;
+		bodyBytes += body;
+	}
+
+
+	public synchronized String getStats() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Transfer: ").append(bodies);
+		sb.append(" bodies, ").append(compressed);
+		sb.append(" compressed, ").append(wireBytes);
+		sb.append(" bytes on the wire, ").append(bodyBytes);
+		sb.append(" bytes decoded");
+		if (bodyBytes > 0) {
+			sb.append(", saved ");
+			sb.append(String.valueOf(((bodyBytes - wireBytes)
+						  * 1000 / bodyBytes) / 10.0));
+			sb.append("%");
+		}
+		return sb.toString();
+	}
+
+}
@@ -59,6 +59,11 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 
+import net.ukuehn.html.ReadLimits;
+import net.ukuehn.html.ScriptCache;
+import net.ukuehn.net.HostResolver;
+import net.ukuehn.net.HttpTransport;
+import net.ukuehn.net.NioHttpClient;
 import net.ukuehn.net.ProxyAuthenticator;
 import net.ukuehn.security.NullTrustManager;
 import net.ukuehn.security.NullHostnameVerifier;
@@ -91,18 +96,51 @@ public class WFATMain {
 		+"             headers (http-equiv). Use also to include "
 		+"host IP address\n"
 		+"             when creating a graph.\n\n"
-		//+"  -H         Run structural hash over retrieved HTML.\n\n"
+		+"  -H         Run structural hash over retrieved HTML and "
+		+"report it with\n"
+		+"             the final response, together with a cluster "
+		+"of pages with\n"
+		+"             almost the same structure.\n\n"
+		+"  -a alg     Hash algorithm for -H, one of sha1 (default), "
+		+"sha256, or\n"
+		+"             murmur3. murmur3 is not cryptographic, but "
+		+"fast.\n\n"
+		+"  -S dir     With -H, store the external scripts of the "
+		+"pages in dir, named\n"
+		+"             by the hash of their contents.\n\n"
 		+"  -c         Format output as CSV.\n\n"
+		+"  -b         Write output in a compact binary format, "
+		+"which can be read\n"
+		+"             back with -r.\n\n"
+		+"  -J         Format output as JSON Lines, one line per "
+		+"target.\n\n"
+		+"  -o <file>  Write output to <file> instead of stdout.\n\n"
+		+"  -z         Compress output, and the file of -G, with "
+		+"gzip.\n\n"
+		+"  -Z <n>     With -o, start a new output file after <n> "
+		+"bytes, or <n>\n"
+		+"             targets if <n> ends with t. Use k, m, or g "
+		+"for kilo-, mega-,\n"
+		+"             or gigabytes. Files are numbered, each is "
+		+"complete by itself.\n\n"
 		+"  -g         Format output as graph structure (edges) "
 		+"suitable for import\n"
 		+"             into Gephi. Use -v to include host IP "
 		+"address as\n"
 		+"             an extra node.\n\n"
-		+"  -r <file>  Read back XML output from <file> and replays "
-		+"the contents as\n"
-		+"             responses to the requests that were made. Use "
-		+"to transform the\n"
-		+"             output without doing the actual requests.\n"
+		+"  -Q <mode>  Write the output on a thread of its own per "
+		+"output format,\n"
+		+"             so that fetching does not wait for it. If "
+		+"output falls\n"
+		+"             behind, mode block waits for it, mode drop "
+		+"leaves out\n"
+		+"             targets.\n\n"
+		+"  -r <file>  Read back XML or binary output from <file> "
+		+"and replays the\n"
+		+"             contents as responses to the requests that "
+		+"were made. Use to\n"
+		+"             transform the output without doing the actual "
+		+"requests.\n"
 		+"             Ignores the command line urls, -f, -F, -p, and "
 		+"-P options.\n\n"
 		+"  -i         in conjunction with -r, query the IP addresses "
@@ -112,7 +150,47 @@ public class WFATMain {
 		+"             happened behind a proxy server.\n\n"
 		+"  -f <file>  Read urls from file <file> instead of\n"
 		+"             using command line args. Use - for stdin.\n\n"
-		+"  -d <n>     Wait for <n> milliseconds between requests.\n\n"
+		+"  -d <n>     Wait for <n> milliseconds between requests "
+		+"to the same host.\n"
+		+"             This includes the scripts and frames fetched "
+		+"for -H, which\n"
+		+"             are then fetched one after the other per "
+		+"host.\n\n"
+		+"  -I         With -d, wait also between requests to "
+		+"different hosts with\n"
+		+"             the same IP address.\n\n"
+		+"  -j <n>     Use <n> worker threads to analyse several "
+		+"urls at once.\n"
+		+"             Output keeps the order of the urls. "
+		+"Defaults to 1.\n\n"
+		+"  -L <bytes>[:<tokens>[:<millis>]]  Limit reading of "
+		+"each html document\n"
+		+"             to <bytes> bytes, <tokens> tokens and "
+		+"<millis> milliseconds.\n"
+		+"             A document exceeding a limit is truncated and "
+		+"an exception\n"
+		+"             is reported. 0 means no limit. Defaults to "
+		+ReadLimits.DEFAULT.toString()+".\n\n"
+		+"  -O         Send HEAD requests instead of GET unless the "
+		+"response body is\n"
+		+"             needed (-v, -A, -H). Falls back to GET if the "
+		+"server rejects\n"
+		+"             HEAD.\n\n"
+		+"  -E         Do not offer compressed transfer (gzip, "
+		+"deflate) to servers.\n\n"
+		+"  -C <secs>  Remember redirect responses for <secs> "
+		+"seconds and answer\n"
+		+"             repeated requests for the same url from "
+		+"memory. Such\n"
+		+"             responses are marked as cached in the "
+		+"output.\n\n"
+		+"  -T <transport> Use <transport> for HTTP requests, "
+		+"either 'url' for the\n"
+		+"             Java runtime's connections (default) or 'nio' "
+		+"for non-blocking\n"
+		+"             sockets driven by a few selector threads. "
+		+"Use 'nio' with a\n"
+		+"             large number of workers (-j).\n\n"
 		+"  -u <agent> Use <agent> as user agent string in "
 		+"each request.\n\n"
 		+"  -p <proto> Use <proto> as default for urls w/o "
@@ -141,11 +219,19 @@ public class WFATMain {
 	String optArgProxy = null;
 	String optArgDebug = null;
 	String optArgDelay = null;
+	String optArgWorkers = null;
+	String optArgTransport = null;
+	String optArgHopCache = null;
+	String optArgReadLimits = null;
 	String optArgListFile = null;
 	String optArgForbidden = null;
 	String optArgUserAgent = null;
 	String optArgGraphFile = null;
 	String optArgDefaultProto = null;
+	String optArgHashAlg = null;
+	String optArgScriptStore = null;
+	String optArgQueue = null;
+	int queuePolicy = -1;
 	//int optRedirectCount = 0;
 	//boolean optRedirects = false;
 	boolean optNoRedirect = false;
@@ -153,14 +239,27 @@ public class WFATMain {
 	boolean optStructHash = false;
 	//boolean optVerbRedirects = false;
 	boolean optCSV = false;
+	boolean optBinary = false;
+	boolean optJSON = false;
+	String optArgOutFile = null;
+	boolean optCompress = false;
+	String optArgRotate = null;
+	long rotateBytes = 0;
+	int rotateTargets = 0;
 	String optArgReplayFile = null;
 	boolean optEvalIP = false;
+	boolean optDelayPerIP = false;
+	boolean optHeadFirst = false;
+	boolean optNoCompression = false;
 	boolean optGraph = false;
 	boolean optGraphHost = false;
 	Iterator<String> forbiddenHosts = null;
 	Iterator<String> urlArgs = null;
 	int verbLevel = 0;
 	int delay = 0;
+	int workers = 1;
+	int hopCacheTtl = 0;
+	ReadLimits readLimits = ReadLimits.DEFAULT;
 
 	Publisher pub = null;
 	Hub hub = null;
@@ -327,45 +426,130 @@ public class WFATMain {
 	protected void preparePublisher()
 		throws IOException, ToolkitError {
 
-		//boolean longOut = (optRedirects || optVerbRedirects);
-		boolean longOut = !optNoRedirect;
+		if (queuePolicy >= 0) {
+			hub = new Hub(2);
+			hub.setAsync(queuePolicy);
+		}
 		if (optArgGraphFile != null) {
-			BufferedWriter out;
-			if (optArgGraphFile.equals("-")) {
-				out = new BufferedWriter(
-					new OutputStreamWriter(System.out));
-			} else {
-				out = new BufferedWriter(
-					 new FileWriter(optArgGraphFile));
+			String name = optArgGraphFile.equals("-")
+				? null : optArgGraphFile;
+			Publisher ep = openPublisher(name, true);
+			if (hub == null) {
+				hub = new Hub(2);
 			}
-			PrintWriter pw = new PrintWriter(out);
-			Publisher ep = new EdgeCSVPublisher(pw, longOut,
-							    verbLevel,
-							    optGraphHost);
-			hub = new Hub(2);
 			hub.register(ep);
 			optGraph = false;
 		}
-		if (optGraph) {
-			PrintWriter out = new PrintWriter(System.out);
-			//   new OutputStreamWriter(System.out));
-			pub = new EdgeCSVPublisher(out, longOut,
-						   verbLevel, optGraphHost);
+		pub = openPublisher(optArgOutFile, optGraph);
+		if (hub != null) {
+			hub.register(pub);
+			pub = hub;
+		}
+	}
+
+
+	/* Rotation limit: a number of targets if followed by t, else
+	 * a size in bytes, optionally followed by k, m, or g.
+	 */
+	protected void parseRotation(String spec)
+		throws NumberFormatException {
+		String num = spec;
+		long mult = 1;
+		boolean count = false;
+		char c = (spec.length() > 0)
+			? Character.toLowerCase(spec.charAt(spec.length()-1))
+			: ' ';
+		if (c == 't') {
+			count = true;
+		} else if (c == 'k') {
+			mult = 1024L;
+		} else if (c == 'm') {
+			mult = 1024L*1024L;
+		} else if (c == 'g') {
+			mult = 1024L*1024L*1024L;
+		}
+		if (count || (mult > 1)) {
+			num = spec.substring(0, spec.length()-1);
+		}
+		long n = Long.parseLong(num);
+		if ((n <= 0) || (count && (n > Integer.MAX_VALUE))) {
+			throw new NumberFormatException("Limit out of range "
+							+spec);
+		}
+		if (count) {
+			rotateTargets = (int)n;
+		} else {
+			rotateBytes = n*mult;
+		}
+	}
+
+
+	/* The publisher for one output, written to the named file, or
+	 * to stdout if name is null. graph selects the graph format.
+	 * The output goes through an OutputSink if it is to be
+	 * compressed or rotated.
+	 */
+	protected Publisher openPublisher(String name, final boolean graph)
+		throws IOException, ToolkitError {
+		if ((name == null) && !optCompress) {
+			return newPublisher(System.out, graph);
+		}
+		PublisherFactory f = new PublisherFactory() {
+			public Publisher newPublisher(OutputStream os)
+				throws IOException {
+				return WFATMain.this.newPublisher(os, graph);
+			}
+		};
+		OutputSink sink = new OutputSink(name, optCompress);
+		if (name == null) {
+			return new RotatingPublisher(f, sink, 0, 0);
+		}
+		return new RotatingPublisher(f, sink,
+					     rotateBytes, rotateTargets);
+	}
+
+
+	/* Make the publisher for the output format chosen, writing to
+	 * os.
+	 */
+	protected Publisher newPublisher(OutputStream os, boolean graph)
+		throws IOException {
+		boolean longOut = !optNoRedirect;
+		if (graph) {
+			PrintWriter out = new PrintWriter(os);
+			return new EdgeCSVPublisher(out, longOut,
+						    verbLevel, optGraphHost);
 		} else if (optCSV) {
-			PrintWriter out = new PrintWriter(System.out);
-			pub = new CSVPublisher(out,
-					       longOut, verbLevel);
+			PrintWriter out = new PrintWriter(os);
+			return new CSVPublisher(out,
+						longOut, verbLevel);
+		} else if (optBinary) {
+			OutputStream out
+				= new BufferedOutputStream(os, 65536);
+			return new BinaryPublisher(out, longOut, verbLevel);
+		} else if (optJSON) {
+			BufferedWriter out
+				= new BufferedWriter(
+					    new OutputStreamWriter(os,
+								   "UTF-8"));
+			return new JSONPublisher(out, longOut, verbLevel);
 		} else {
 			BufferedWriter out
 				= new BufferedWriter(
-					    new PrintWriter(System.out));
+					    new OutputStreamWriter(os));
 			SimpleXMLWriter xw =
 				new SimpleXMLWriter(out);
-			pub = new XMLPublisher(xw, longOut, verbLevel);
+			return new XMLPublisher(xw, longOut, verbLevel);
 		}
-		if (hub != null) {
-			hub.register(pub);
-			pub = hub;
+	}
+
+
+	protected void setScriptStore(ScriptCache cache, String dir) {
+		try {
+			cache.setStore(new File(dir));
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(-1);
 		}
 	}
 
@@ -394,12 +578,39 @@ public class WFATMain {
 			} else if (args[nextopt].equals("-d")) {
 				nextopt++;
 				optArgDelay = args[nextopt];
+			} else if (args[nextopt].equals("-I")) {
+				optDelayPerIP = true;
+			} else if (args[nextopt].equals("-j")) {
+				nextopt++;
+				optArgWorkers = args[nextopt];
+			} else if (args[nextopt].equals("-L")) {
+				nextopt++;
+				optArgReadLimits = args[nextopt];
+			} else if (args[nextopt].equals("-O")) {
+				optHeadFirst = true;
+			} else if (args[nextopt].equals("-E")) {
+				optNoCompression = true;
+			} else if (args[nextopt].equals("-C")) {
+				nextopt++;
+				optArgHopCache = args[nextopt];
+			} else if (args[nextopt].equals("-T")) {
+				nextopt++;
+				optArgTransport = args[nextopt];
 			} else if (args[nextopt].equals("-N")) {
 				optNoRedirect = true;
 			} else if (args[nextopt].equals("-A")) {
 				optFollowAppRedir = true;
 			} else if (args[nextopt].equals("-H")) {
 				optStructHash = true;
+			} else if (args[nextopt].equals("-a")) {
+				nextopt++;
+				optArgHashAlg = args[nextopt];
+			} else if (args[nextopt].equals("-S")) {
+				nextopt++;
+				optArgScriptStore = args[nextopt];
+			} else if (args[nextopt].equals("-Q")) {
+				nextopt++;
+				optArgQueue = args[nextopt];
 			//} else if (args[nextopt].equals("-F")) {
 			//	optRedirectCount += 1;
 			} else if (args[nextopt].equals("-f")) {
@@ -413,6 +624,18 @@ public class WFATMain {
 				optArgProxy = args[nextopt];
 			} else if (args[nextopt].equals("-c")) {
 				optCSV = true;
+			} else if (args[nextopt].equals("-b")) {
+				optBinary = true;
+			} else if (args[nextopt].equals("-J")) {
+				optJSON = true;
+			} else if (args[nextopt].equals("-o")) {
+				nextopt++;
+				optArgOutFile = args[nextopt];
+			} else if (args[nextopt].equals("-z")) {
+				optCompress = true;
+			} else if (args[nextopt].equals("-Z")) {
+				nextopt++;
+				optArgRotate = args[nextopt];
 			} else if (args[nextopt].equals("-r")) {
 				nextopt++;
 				optArgReplayFile = args[nextopt];
@@ -467,6 +690,90 @@ public class WFATMain {
 			}
 		}
 
+		if (optArgWorkers != null) {
+			try {
+				workers = Integer.parseInt(optArgWorkers);
+			} catch (NumberFormatException e) {
+				workers = 0;
+			}
+			if (workers < 1) {
+				System.err.println("Warning: Number of workers "
+						   +optArgWorkers
+						   +" must be a positive "
+						   +"number, using 1 instead.");
+				workers = 1;
+			}
+		}
+
+		if (optArgHopCache != null) {
+			try {
+				hopCacheTtl = Integer.parseInt(optArgHopCache);
+			} catch (NumberFormatException e) {
+				hopCacheTtl = 0;
+			}
+			if (hopCacheTtl < 1) {
+				System.err.println("Warning: Cache time "
+						   +optArgHopCache
+						   +" must be a positive "
+						   +"number, not caching.");
+				hopCacheTtl = 0;
+			}
+		}
+
+		if (optArgReadLimits != null) {
+			try {
+				readLimits = ReadLimits.parse(optArgReadLimits);
+			} catch (NumberFormatException e) {
+				System.err.println("Warning: Read limits "
+						   +optArgReadLimits
+						   +" cannot be parsed, using "
+						   +readLimits.toString()
+						   +" instead.");
+			}
+		}
+
+		if ((optArgHashAlg != null) &&
+		    !Digester.isSupported(optArgHashAlg)) {
+			System.err.println("Unknown hash algorithm "
+					   +optArgHashAlg);
+			usage();
+		}
+
+		if (optArgRotate != null) {
+			if (optArgOutFile == null) {
+				System.err.println("Rotation with -Z needs "
+						   +"an output file, see -o");
+				usage();
+			}
+			try {
+				parseRotation(optArgRotate);
+			} catch (NumberFormatException e) {
+				System.err.println("Cannot parse rotation "
+						   +optArgRotate);
+				usage();
+			}
+		}
+
+		if (optArgQueue != null) {
+			if (optArgQueue.equals("block")) {
+				queuePolicy = AsyncSink.BLOCK;
+			} else if (optArgQueue.equals("drop")) {
+				queuePolicy = AsyncSink.DROP;
+			} else {
+				System.err.println("Unknown output queue mode "
+						   +optArgQueue);
+				usage();
+			}
+		}
+
+		if ((optArgTransport != null) &&
+		    !optArgTransport.equals("url") &&
+		    !optArgTransport.equals("nio")) {
+			System.err.println("Unknown transport "
+					   +optArgTransport);
+			usage();
+		}
+
 		//if (optRedirectCount > 0) {
 		//	optRedirects = true;
 		//	if (optRedirectCount > 1) {
@@ -480,17 +787,25 @@ public class WFATMain {
 
 			pub.publishGlobalStart();
 
-			XMLFileReplay xr = new XMLFileReplay(pub, verbLevel);
-			xr.setEvalIP(optEvalIP);
-			DefaultHandler handler = xr;
-			SAXParserFactory factory
-				= SAXParserFactory.newInstance();
-			try {
-				SAXParser sp = factory.newSAXParser();
-				File f = new File(optArgReplayFile);
-				sp.parse(f, handler);
-			} catch (Exception e) {
-				throw new ToolkitError(e);
+			File f = new File(optArgReplayFile);
+			if (BinaryFileReplay.isBinary(f)) {
+				BinaryFileReplay br
+					= new BinaryFileReplay(pub, verbLevel);
+				br.setEvalIP(optEvalIP);
+				br.replay(f);
+			} else {
+				XMLFileReplay xr
+					= new XMLFileReplay(pub, verbLevel);
+				xr.setEvalIP(optEvalIP);
+				DefaultHandler handler = xr;
+				SAXParserFactory factory
+					= SAXParserFactory.newInstance();
+				try {
+					SAXParser sp = factory.newSAXParser();
+					sp.parse(f, handler);
+				} catch (Exception e) {
+					throw new ToolkitError(e);
+				}
 			}
 
 			pub.publishGlobalEnd();
@@ -529,24 +844,90 @@ public class WFATMain {
 			if (optArgDefaultProto != null) {
 				hc.setDefaultProto(optArgDefaultProto);
 			}
+			hc.setAcceptCompressed(!optNoCompression);
+			HttpTransport transport = null;
+			if ((optArgTransport != null) &&
+			    optArgTransport.equals("nio")) {
+				int loops = Math.min(4, Runtime.getRuntime().
+						     availableProcessors());
+				transport = new NioHttpClient(proxy,
+							 hc.getSSLContext(),
+							 loops);
+				hc.setTransport(transport);
+			}
 
 			HTTPFingerprint hfp = new HTTPFingerprint(pub, hc);
 			hfp.setNoRedirect(optNoRedirect);
 			hfp.setFollowAppRedirect(optFollowAppRedir);
 			hfp.setVerbose((verbLevel > 0));
 			hfp.setStructHash(optStructHash);
-			hfp.setDelay(delay);
-			pub.publishGlobalStart();
-
-			while (urlArgs.hasNext()) {
-				String urlarg = urlArgs.next();
-				try {
-					hfp.fingerprint(urlarg);
-				} catch (Exception e) {
-					// ignore for now
+			Digester digester = new Digester(
+				(optArgHashAlg != null) ? optArgHashAlg
+							: Digester.DEFAULT);
+			hfp.setDigester(digester);
+			ScriptCache scriptCache = null;
+			if (optStructHash) {
+				scriptCache = new ScriptCache(hc, digester,
+							      readLimits);
+				if (optArgScriptStore != null) {
+					setScriptStore(scriptCache,
+						       optArgScriptStore);
 				}
+				hfp.setScriptCache(scriptCache);
 			}
+			SimilarityIndex simIndex = null;
+			if (optStructHash) {
+				simIndex = new SimilarityIndex();
+				hfp.setSimilarityIndex(simIndex);
+			}
+			hfp.setHeadFirst(optHeadFirst);
+			hfp.setReadLimits(readLimits);
+			TransferStats transferStats = new TransferStats();
+			hfp.setTransferStats(transferStats);
+			if (delay > 0) {
+				PolitenessScheduler ps
+					= new PolitenessScheduler(delay);
+				ps.setPerAddress(optDelayPerIP);
+				hfp.setScheduler(ps);
+				if (scriptCache != null) {
+					scriptCache.setScheduler(ps);
+				}
+			}
+			HopCache hopCache = null;
+			if (hopCacheTtl > 0) {
+				hopCache = new HopCache(hopCacheTtl);
+				hfp.setHopCache(hopCache);
+			}
+			// each worker may wait for a lookup
+			HostResolver.getDefault().setThreads(workers);
+			FingerprintEngine engine
+				= new FingerprintEngine(pub, hfp, workers);
+			pub.publishGlobalStart();
+			engine.run(urlArgs);
 			pub.publishGlobalEnd();
+			if (transport != null) {
+				transport.close();
+			}
+			if ((hopCache != null) && Debug.get(Debug.Stats)) {
+				System.err.println(hopCache.getStats());
+			}
+			if (Debug.get(Debug.Stats)) {
+				System.err.println(transferStats.getStats());
+			}
+			if ((simIndex != null) && Debug.get(Debug.Stats)) {
+				System.err.println(simIndex.getStats());
+			}
+			if ((scriptCache != null) && Debug.get(Debug.Stats)) {
+				System.err.println(scriptCache.getStats());
+			}
+		}
+
+		if ((hub != null) && Debug.get(Debug.Stats)) {
+			System.err.println(hub.getStats());
+		}
+		if (Debug.get(Debug.Stats)) {
+			System.err.println(HostResolver.getDefault().
+					   getStats());
 		}
 
 	}
@@ -39,6 +39,8 @@ public class XFS {
 	public static final String ARESPIP   = "IP";
 	public static final String ARESPCODE = "RespCode";
 	public static final String AREDIR = "Redir";
+	public static final String ACACHED = "Cached";
+	public static final String VTRUE = "true";
 	public static final String VRNONE = "none";
 	public static final String VRHTTP = "http";
 	public static final String VREQUIV = "html";
@@ -53,4 +55,12 @@ public class XFS {
 
 	public static final String VSRCHTTP = "http";
 	public static final String VSRCEQUIV = "html";
+
+	public static final String ESTRUCTHASH = "StructHash";
+	public static final String AALG = "Alg";
+	public static final String AELEMENTS = "Elements";
+
+	public static final String ESIMILARITY = "Similarity";
+	public static final String ACLUSTER = "Cluster";
+	public static final String ASCORE = "Score";
 }
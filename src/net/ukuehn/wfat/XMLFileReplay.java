@@ -43,6 +43,7 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 
+import net.ukuehn.net.HostResolver;
 import net.ukuehn.util.Debug;
 
 
@@ -196,18 +197,16 @@ public class XMLFileReplay extends DefaultHandler {
 
 
 
-	protected void handleTargetElemStart(Attributes attr)
-		throws SAXException, IOException, ToolkitError {
-		String targetUrlStr = attr.getValue(XFS.ATARGETURL);
-		if (Debug.get(Debug.Replay)) {
-			System.err.println("   "
-					   +XFS.ATARGETURL
-					   +"="+targetUrlStr);
-		}
+	/* The replay methods below take the contents of one element
+	 * of the result file each, and pass it on to the publisher.
+	 * They are shared with BinaryFileReplay.
+	 */
+	protected void replayTarget(String targetUrlStr)
+		throws IOException, ToolkitError {
 		try {
 			targetUrl = new URL(targetUrlStr);
 		} catch (MalformedURLException e) {
-			throw new SAXException("Cannot parse URL "
+			throw new ToolkitError("Cannot parse URL "
 					       +targetUrlStr, e);
 		}
 
@@ -224,86 +223,66 @@ public class XMLFileReplay extends DefaultHandler {
 	}
 
 
-	protected void handleTargetElemEnd()
-		throws SAXException, IOException, ToolkitError {
+	protected void replayTargetEnd()
+		throws IOException, ToolkitError {
 
 		pub.publishEnd();
 	}
 
 
-	protected void handleResponseElemStart(Attributes attr)
-		throws SAXException, IOException, ToolkitError {
-		String respUrlStr = attr.getValue(XFS.ARESPURL);
-		String respIpStr = attr.getValue(XFS.ARESPIP);
-		String respCodeStr = attr.getValue(XFS.ARESPCODE);
-		String redirStateStr = attr.getValue(XFS.AREDIR);
+	protected void replayResponse(String respUrlStr,
+				      String respHostName,
+				      String respIpStr,
+				      int respCode,
+				      int redir,
+				      boolean cached)
+		throws IOException, ToolkitError {
 
-		responseHostName = attr.getValue(XFS.ARESPHOST);
+		responseHostName = respHostName;
 		responseIA = null;
 		redirectUrlStr = null;
 		redirectUrl = null;
 		appLayerRedirect = null;
 
-		if (Debug.get(Debug.Replay)) {
-			System.err.println("   "+XFS.ARESPURL+"="+respUrlStr);
-			System.err.println("   "+XFS.ARESPHOST
-					   +"="+responseHostName);
-			System.err.println("   "+XFS.ARESPIP+"="+respIpStr);
-			System.err.println("   "+XFS.ARESPCODE
-					   +"="+respCodeStr);
-		}
 		try {
 			responseUrl = new URL(respUrlStr);
 		} catch (MalformedURLException e) {
-			throw new SAXException("Cannot parse URL "
+			throw new ToolkitError("Cannot parse URL "
 					       +respUrlStr, e);
 		}
 		responseIA = null;
 		try {
 			if (evalIP) {
-				responseIA = InetAddress.getByName(
-						      responseUrl.getHost());
+				responseIA = HostResolver.getDefault().
+					resolve(responseUrl.getHost());
 			} else {
 				responseIA = InetAddress.getByName(respIpStr);
 			}
 		} catch (UnknownHostException e) {
 			// Ignore, publisher can work with responseIA == null
 		}
-		try {
-			responseCode = Integer.parseInt(respCodeStr);
-		} catch (NumberFormatException e) {
-			throw new SAXException("Response code must be a "
-					       +"number: "+respCodeStr, e);
-		}
-
-		if (redirStateStr.equals(XFS.VRNONE)) {
-			redirState = Publisher.REDIRNONE;
-		} else if (redirStateStr.equals(XFS.VRHTTP)) {
-			redirState = Publisher.REDIRHTTP;
-		} else if (redirStateStr.equals(XFS.VREQUIV)) {
-			redirState = Publisher.REDIREQUIV;
-		} else {
-			throw new SAXException("Redirect state must be either "
-					       +XFS.VRNONE+", "
-					       +XFS.VRHTTP+", or "
-					       +XFS.VREQUIV+".");
-		}
+		responseCode = respCode;
+		redirState = redir;
 		pub.publishStartResult(targetUrl,
 				       responseUrl,
 				       responseHostName,
 				       responseIA,
 				       responseCode,
-				       redirState     );
+				       redirState,
+				       cached);
 	}
 
 
-	protected void handleResponseElemEnd()
-		throws SAXException, IOException, ToolkitError {
+	protected void replayResponseEnd()
+		throws IOException, ToolkitError {
 
 		pub.publishEndResult();
 
 		if (!isRedirectCode(responseCode) && (redirectUrl == null)) {
-			if (targetUrl.equals(responseUrl)) {
+			// compare as strings, URL.equals() would look
+			// up the host names
+			if (targetUrl.toExternalForm().
+			    equals(responseUrl.toExternalForm())) {
 				pub.publishDestNoRedir(responseUrl,
 						       responseHostName,
 						       responseIA);
@@ -325,7 +304,7 @@ public class XMLFileReplay extends DefaultHandler {
 						    initial,
 						    responseCode);
 			} else {
-				throw new SAXException(
+				throw new ToolkitError(
 				     "No redirect location found despite "
 				     +"redirect response code, target URL "
 				     +targetUrl.toString()
@@ -337,22 +316,10 @@ public class XMLFileReplay extends DefaultHandler {
 	}
 
 
-	protected void handleHeaderElemStart(Attributes attr)
-		throws SAXException, IOException, ToolkitError {
-		String srcStr = attr.getValue(XFS.ASOURCE);
-		String keyStr = attr.getValue(XFS.AKEY);
-		String valStr = attr.getValue(XFS.AVALUE);
-		int src;
+	protected void replayHeader(int src, String keyStr, String valStr)
+		throws IOException, ToolkitError {
 
-		if (XFS.VSRCHTTP.equals(srcStr)) {
-			src = Publisher.HTTP;
-		} else if (XFS.VSRCEQUIV.equals(srcStr)) {
-			src = Publisher.EQUIV;
-		} else {
-			throw new SAXException("Unknown source attribute '"
-					       +srcStr+"'");
-		}
-		if (XFS.VSRCHTTP.equals(srcStr) &&
+		if ((src == Publisher.HTTP) &&
 		    LOCATIONHDR.equalsIgnoreCase(keyStr)) {
 			redirectUrlStr = valStr;
 			try {
@@ -363,10 +330,10 @@ public class XMLFileReplay extends DefaultHandler {
 						      redirectUrlStr);
 				//redirectUrl = new URL(redirectUrlStr);
 			} catch (MalformedURLException e) {
-				throw new SAXException("No URL: "
+				throw new ToolkitError("No URL: "
 						       +redirectUrlStr, e);
 			}
-		} else if (XFS.VSRCEQUIV.equals(srcStr) &&
+		} else if ((src == Publisher.EQUIV) &&
 			   REFRESHHDR.equalsIgnoreCase(keyStr)) {
 			if (valStr == null) {
 				valStr = "";
@@ -374,7 +341,7 @@ public class XMLFileReplay extends DefaultHandler {
 			String s = valStr.toLowerCase();
 			int i = s.indexOf("url=");
 			if (i < 0) {
-				throw new SAXException("Invalid format of "
+				throw new ToolkitError("Invalid format of "
 						       +"http-equiv refresh "
 						       +"content: '"
 						       +valStr+"'.");
@@ -389,15 +356,10 @@ public class XMLFileReplay extends DefaultHandler {
 				redirectUrl = new URL(responseUrl,
 						      appLayerRedirect);
 			} catch (MalformedURLException e) {
-				throw new SAXException("No URL: "
+				throw new ToolkitError("No URL: "
 						       +appLayerRedirect, e);
 			}			
 		}
-		if (Debug.get(Debug.Replay)) {
-			System.err.println("   "+XFS.AKEY+"="+keyStr);
-			System.err.println("   "+XFS.AVALUE
-					   +"="+valStr);
-		}
 
 		if (verbLevel > 0) {
 			pub.publishElement(keyStr, valStr, src);
@@ -421,6 +383,118 @@ public class XMLFileReplay extends DefaultHandler {
 	}
 
 
+	protected void replayException(String msg)
+		throws IOException, ToolkitError {
+		pub.publishException(msg);
+	}
+
+
+	protected void replayStructHash(String alg, String hash,
+					int elements)
+		throws IOException, ToolkitError {
+		pub.publishStructHash(alg, hash, elements);
+	}
+
+
+	protected void replaySimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		pub.publishSimilarity(cluster, score);
+	}
+
+
+	protected void handleTargetElemStart(Attributes attr)
+		throws SAXException, IOException, ToolkitError {
+		String targetUrlStr = attr.getValue(XFS.ATARGETURL);
+		if (Debug.get(Debug.Replay)) {
+			System.err.println("   "
+					   +XFS.ATARGETURL
+					   +"="+targetUrlStr);
+		}
+		replayTarget(targetUrlStr);
+	}
+
+
+	protected void handleTargetElemEnd()
+		throws SAXException, IOException, ToolkitError {
+
+		replayTargetEnd();
+	}
+
+
+	protected void handleResponseElemStart(Attributes attr)
+		throws SAXException, IOException, ToolkitError {
+		String respUrlStr = attr.getValue(XFS.ARESPURL);
+		String respHostName = attr.getValue(XFS.ARESPHOST);
+		String respIpStr = attr.getValue(XFS.ARESPIP);
+		String respCodeStr = attr.getValue(XFS.ARESPCODE);
+		String redirStateStr = attr.getValue(XFS.AREDIR);
+		String cachedStr = attr.getValue(XFS.ACACHED);
+		int respCode;
+		int redir;
+
+		if (Debug.get(Debug.Replay)) {
+			System.err.println("   "+XFS.ARESPURL+"="+respUrlStr);
+			System.err.println("   "+XFS.ARESPHOST
+					   +"="+respHostName);
+			System.err.println("   "+XFS.ARESPIP+"="+respIpStr);
+			System.err.println("   "+XFS.ARESPCODE
+					   +"="+respCodeStr);
+		}
+		try {
+			respCode = Integer.parseInt(respCodeStr);
+		} catch (NumberFormatException e) {
+			throw new SAXException("Response code must be a "
+					       +"number: "+respCodeStr, e);
+		}
+
+		if (redirStateStr.equals(XFS.VRNONE)) {
+			redir = Publisher.REDIRNONE;
+		} else if (redirStateStr.equals(XFS.VRHTTP)) {
+			redir = Publisher.REDIRHTTP;
+		} else if (redirStateStr.equals(XFS.VREQUIV)) {
+			redir = Publisher.REDIREQUIV;
+		} else {
+			throw new SAXException("Redirect state must be either "
+					       +XFS.VRNONE+", "
+					       +XFS.VRHTTP+", or "
+					       +XFS.VREQUIV+".");
+		}
+		replayResponse(respUrlStr, respHostName, respIpStr,
+			       respCode, redir, XFS.VTRUE.equals(cachedStr));
+	}
+
+
+	protected void handleResponseElemEnd()
+		throws SAXException, IOException, ToolkitError {
+
+		replayResponseEnd();
+	}
+
+
+	protected void handleHeaderElemStart(Attributes attr)
+		throws SAXException, IOException, ToolkitError {
+		String srcStr = attr.getValue(XFS.ASOURCE);
+		String keyStr = attr.getValue(XFS.AKEY);
+		String valStr = attr.getValue(XFS.AVALUE);
+		int src;
+
+		if (XFS.VSRCHTTP.equals(srcStr)) {
+			src = Publisher.HTTP;
+		} else if (XFS.VSRCEQUIV.equals(srcStr)) {
+			src = Publisher.EQUIV;
+		} else {
+			throw new SAXException("Unknown source attribute '"
+					       +srcStr+"'");
+		}
+		if (Debug.get(Debug.Replay)) {
+			System.err.println("   "+XFS.AKEY+"="+keyStr);
+			System.err.println("   "+XFS.AVALUE
+					   +"="+valStr);
+		}
+		replayHeader(src, keyStr, valStr);
+	}
+
+
 	protected void handleHeaderElemEnd()
 		throws SAXException, IOException, ToolkitError {
 		// do nothing
@@ -434,7 +508,7 @@ public class XMLFileReplay extends DefaultHandler {
 		if (Debug.get(Debug.Replay)) {
 			System.err.println("   "+XFS.AMSG+"="+msg);
 		}
-		pub.publishException(msg);
+		replayException(msg);
 	}
 
 
@@ -444,6 +518,63 @@ public class XMLFileReplay extends DefaultHandler {
 	}
 
 
+	protected void handleStructHashElemStart(Attributes attr)
+		throws SAXException, IOException, ToolkitError {
+		String algStr = attr.getValue(XFS.AALG);
+		String valStr = attr.getValue(XFS.AVALUE);
+		String elemStr = attr.getValue(XFS.AELEMENTS);
+		int elements;
+
+		if (Debug.get(Debug.Replay)) {
+			System.err.println("   "+XFS.AALG+"="+algStr);
+			System.err.println("   "+XFS.AVALUE+"="+valStr);
+			System.err.println("   "+XFS.AELEMENTS+"="+elemStr);
+		}
+		try {
+			elements = Integer.parseInt(elemStr);
+		} catch (NumberFormatException e) {
+			throw new SAXException("Number of elements must be "
+					       +"a number: "+elemStr, e);
+		}
+		replayStructHash(algStr, valStr, elements);
+	}
+
+
+	protected void handleStructHashElemEnd()
+		throws SAXException, IOException, ToolkitError {
+		// do nothing
+	}
+
+
+	protected void handleSimilarityElemStart(Attributes attr)
+		throws SAXException, IOException, ToolkitError {
+		String clusterStr = attr.getValue(XFS.ACLUSTER);
+		String scoreStr = attr.getValue(XFS.ASCORE);
+		int cluster;
+		double score;
+
+		if (Debug.get(Debug.Replay)) {
+			System.err.println("   "+XFS.ACLUSTER+"="+clusterStr);
+			System.err.println("   "+XFS.ASCORE+"="+scoreStr);
+		}
+		try {
+			cluster = Integer.parseInt(clusterStr);
+			score = Double.parseDouble(scoreStr);
+		} catch (Exception e) {
+			throw new SAXException("Cannot parse cluster "
+					       +clusterStr+" with score "
+					       +scoreStr, e);
+		}
+		replaySimilarity(cluster, score);
+	}
+
+
+	protected void handleSimilarityElemEnd()
+		throws SAXException, IOException, ToolkitError {
+		// do nothing
+	}
+
+
 	public void startDocument() throws SAXException {
 		// so far nothing
 	}
@@ -475,6 +606,10 @@ public class XMLFileReplay extends DefaultHandler {
 				handleHeaderElemStart(attr);
 			} else if (XFS.EEXCEPTION.equalsIgnoreCase(qualName)) {
 				handleExceptionElemStart(attr);
+			} else if (XFS.ESTRUCTHASH.equalsIgnoreCase(qualName)) {
+				handleStructHashElemStart(attr);
+			} else if (XFS.ESIMILARITY.equalsIgnoreCase(qualName)) {
+				handleSimilarityElemStart(attr);
 			} else {
 				throw new SAXException("Unsupported tag '"
 						       +qualName
@@ -507,6 +642,10 @@ public class XMLFileReplay extends DefaultHandler {
 				handleHeaderElemEnd();
 			} else if (qualName.equals(XFS.EEXCEPTION)) {
 				handleExceptionElemEnd();
+			} else if (qualName.equals(XFS.ESTRUCTHASH)) {
+				handleStructHashElemEnd();
+			} else if (qualName.equals(XFS.ESIMILARITY)) {
+				handleSimilarityElemEnd();
 			}
 		} catch (Exception e) {
 			throw new SAXException(e);
@@ -137,6 +137,27 @@ public class XMLPublisher extends Publisher {
 		}
 	}
 
+
+	public void publishStartResult(URL theTargetUrl,
+				       URL theRespUrl,
+				       String respHostName,
+				       InetAddress respIP,
+				       int respCode,
+				       int redirState,
+				       boolean cached)
+		throws IOException, ToolkitError {
+		publishStartResult(theTargetUrl, theRespUrl,
+				   respHostName, respIP,
+				   respCode, redirState);
+		if (cached) {
+			try {
+				xw.attribute(XFS.ACACHED, XFS.VTRUE);
+			} catch (SAXException e) {
+				throw new ToolkitError(e);
+			}
+		}
+	}
+
 	
 	public void publishElement(String key, String value, int source)
 		throws IOException, ToolkitError {
@@ -182,6 +203,33 @@ public class XMLPublisher extends Publisher {
 	}
 
 
+	public void publishStructHash(String alg, String hash, int elements)
+		throws IOException, ToolkitError {
+		try {
+			xw.startElement(XFS.ESTRUCTHASH);
+			xw.attribute(XFS.AALG, alg);
+			xw.attribute(XFS.AVALUE, hash);
+			xw.attribute(XFS.AELEMENTS, String.valueOf(elements));
+			xw.endElement();  // XFS.ESTRUCTHASH
+		} catch (SAXException e) {
+			throw new ToolkitError(e);
+		}
+	}
+
+
+	public void publishSimilarity(int cluster, double score)
+		throws IOException, ToolkitError {
+		try {
+			xw.startElement(XFS.ESIMILARITY);
+			xw.attribute(XFS.ACLUSTER, String.valueOf(cluster));
+			xw.attribute(XFS.ASCORE, String.valueOf(score));
+			xw.endElement();  // XFS.ESIMILARITY
+		} catch (SAXException e) {
+			throw new ToolkitError(e);
+		}
+	}
+
+
 	public void publishEndResult() throws IOException, ToolkitError {
 		try {
 			xw.endElement();  // XFS.ERESPONSE
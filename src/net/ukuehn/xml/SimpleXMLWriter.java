@@ -27,26 +27,124 @@ import java.util.Stack;
 import org.xml.sax.SAXException;
 
 
+/* Writes XML to another writer, indented. All output goes through
+ * an internal buffer first, and text is escaped into that buffer
+ * directly: runs of characters that need no escaping are copied as
+ * a whole. Once the buffer is there, writing allocates nothing.
+ *
+ * The output is passed on when the buffer is full and on flush().
+ */
 public class SimpleXMLWriter extends Writer {
 
 	final static int MAX_INDENT = 20;
 	final static String NEWLINE = "\n";
+	final static int BUFSIZE = 8192;
 
 	Stack<String> state;
 	Writer out;
 	boolean pendingCloseTag;
+	char[] buf;
+	int pos;
 
 
 	public SimpleXMLWriter(Writer outParam) {
 		out = outParam;
 		state = new Stack<String>();
 		pendingCloseTag = false;
+		buf = new char[BUFSIZE];
+		pos = 0;
+	}
+
+
+	protected void flushBuffer() throws IOException {
+		if (pos > 0) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+	}
+
+
+	protected void put(char c) throws IOException {
+		if (pos == buf.length) {
+			flushBuffer();
+		}
+		buf[pos++] = c;
+	}
+
+
+	/* Add the characters of s from start to end to the buffer,
+	 * unescaped.
+	 */
+	protected void put(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (pos == buf.length) {
+				flushBuffer();
+			}
+			int n = Math.min(end - start, buf.length - pos);
+			s.getChars(start, start+n, buf, pos);
+			pos += n;
+			start += n;
+		}
+	}
+
+
+	protected void put(String s) throws IOException {
+		put(s, 0, s.length());
+	}
+
+
+	protected void put(char[] cbuf, int start, int end)
+		throws IOException {
+		while (start < end) {
+			if (pos == buf.length) {
+				flushBuffer();
+			}
+			int n = Math.min(end - start, buf.length - pos);
+			System.arraycopy(cbuf, start, buf, pos, n);
+			pos += n;
+			start += n;
+		}
+	}
+
+
+	/* Add the characters of s from start to end to the buffer,
+	 * escaped.
+	 */
+	protected void putEncoded(String s, int start, int end)
+		throws IOException {
+		int from = start;
+		for (int i = start;  i < end;  i++) {
+			char c = s.charAt(i);
+			String ent = (c <= '>') ? XML.entity(c) : null;
+			if (ent != null) {
+				put(s, from, i);
+				put(ent);
+				from = i+1;
+			}
+		}
+		put(s, from, end);
+	}
+
+
+	protected void putEncoded(char[] cbuf, int start, int end)
+		throws IOException {
+		int from = start;
+		for (int i = start;  i < end;  i++) {
+			char c = cbuf[i];
+			String ent = (c <= '>') ? XML.entity(c) : null;
+			if (ent != null) {
+				put(cbuf, from, i);
+				put(ent);
+				from = i+1;
+			}
+		}
+		put(cbuf, from, end);
 	}
 
 
 	protected void closePendingTag() throws IOException {
 		if (pendingCloseTag) {
-			out.write('>');
+			put('>');
 		}
 		pendingCloseTag = false;
 	}
@@ -57,15 +155,17 @@ public class SimpleXMLWriter extends Writer {
 		if (depth > MAX_INDENT) {
 			depth = MAX_INDENT;
 		}
-		out.write(NEWLINE);
+		put(NEWLINE);
 		for (int i = 0;  i < depth;  i++) {
-			out.write("  ");
+			put(' ');
+			put(' ');
 		}
 	}
 
 
 	public void flush() throws IOException {
 		closePendingTag();
+		flushBuffer();
 		out.flush();
 	}
 
@@ -76,37 +176,30 @@ public class SimpleXMLWriter extends Writer {
 	}
 
 
+	/* Writes the characters escaped. */
 	public void write(char[] cbuf, int off, int len)
 		throws IOException {
+		putEncoded(cbuf, off, off+len);
+	}
 
-		for (int i = off;  i < cbuf.length;  i++) {
-			char c = cbuf[i];
-			switch (c) {
-			case '"':
-				out.write("&quot;");
-				break;
-			case '\'':
-				out.write("&apos;");
-				break;
-			case '&':
-				out.write("&amp;");
-				break;
-			case '<':
-				out.write("&lt;");
-				break;
-			case '>':
-				out.write("&gt;");
-				break;
-			default:
-				out.write(c);
-				break;
-			}
+
+	public void write(String str, int off, int len) throws IOException {
+		putEncoded(str, off, off+len);
+	}
+
+
+	public void write(int c) throws IOException {
+		String ent = XML.entity((char)c);
+		if (ent != null) {
+			put(ent);
+		} else {
+			put((char)c);
 		}
 	}
 
 
 	public void startDocument() throws IOException {
-		out.write("<?xml version=\"1.0\" standalone=\"yes\"?>");
+		put("<?xml version=\"1.0\" standalone=\"yes\"?>");
 	}
 
 
@@ -119,8 +212,8 @@ public class SimpleXMLWriter extends Writer {
 		}
 		indent(state.size());
 		state.push(tagName);
-		out.write('<');
-		out.write(tagName);
+		put('<');
+		put(tagName);
 		pendingCloseTag = true;
 	}
 
@@ -137,9 +230,14 @@ public class SimpleXMLWriter extends Writer {
 				    "Forbidden character in attribute name"
 				    );
 		}
-		out.write(" ");
-		out.write(name);
-		out.write("="+XML.quote(value));
+		put(' ');
+		put(name);
+		put('=');
+		put('"');
+		if (value != null) {
+			putEncoded(value, 0, value.length());
+		}
+		put('"');
 	}
 
 
@@ -159,11 +257,14 @@ public class SimpleXMLWriter extends Writer {
 		if (pendingCloseTag) {
 			// This element does not contain
 			// other elements, so make an inline close
-			out.write(" />");
+			put(" />");
 			pendingCloseTag = false;
 		} else {
 			indent(depth);
-			out.write("</"+tagName+">");
+			put('<');
+			put('/');
+			put(tagName);
+			put('>');
 		}
 	}
 
@@ -172,7 +273,7 @@ public class SimpleXMLWriter extends Writer {
 		while (state.size() > 0) {
 			endElement();
 		}
-		out.flush();
+		flush();
 	}
 
 
@@ -180,14 +281,16 @@ public class SimpleXMLWriter extends Writer {
 		while (state.size() > 0) {
 			endElement();
 		}
-		out.write("\n");
+		put(NEWLINE);
 		flush();
 	}
 
 
 	public void writeCharacters(String str) throws IOException {
 		closePendingTag();
-		out.write(XML.encode(str));
+		if (str != null) {
+			putEncoded(str, 0, str.length());
+		}
 	}
 
 
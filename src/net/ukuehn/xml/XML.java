@@ -26,44 +26,89 @@ import java.lang.StringBuilder;
 
 public class XML {
 
-	protected final static String critical = "<>&\"'";
-
-	
-	public static String encode(String param) {
-		if (param == null) {
-			return new String();
+	/* The entity for a character that must be escaped, or null
+	 * if the character can be used as it is.
+	 */
+	public static String entity(char c) {
+		switch (c) {
+		case '"':
+			return "&quot;";
+		case '\'':
+			return "&apos;";
+		case '&':
+			return "&amp;";
+		case '<':
+			return "&lt;";
+		case '>':
+			return "&gt;";
+		default:
+			return null;
 		}
+	}
+
+
+	/* Position of the first character in param from start on that
+	 * must be escaped, or -1 if there is none.
+	 */
+	public static int indexOfCritical(String param, int start) {
 		int n = param.length();
-		StringBuilder sb = new StringBuilder(n);
-		for (int i = 0;  i < n;  i++) {
+		for (int i = start;  i < n;  i++) {
 			char c = param.charAt(i);
-			switch (c) {
-			case '"':
-				sb.append("&quot;");
-				break;
-			case '\'':
-				sb.append("&apos;");
-				break;
-			case '&':
-				sb.append("&amp;");
-				break;
-			case '<':
-				sb.append("&lt;");
-				break;
-			case '>':
-				sb.append("&gt;");
-				break;
-			default:
-				sb.append(c);
-				break;
+			if ((c <= '>') && (entity(c) != null)) {
+				return i;
 			}
 		}
+		return -1;
+	}
+
+
+	/* Escape param. Most strings contain nothing to escape, they
+	 * are returned as they are.
+	 */
+	public static String encode(String param) {
+		if (param == null) {
+			return "";
+		}
+		int i = indexOfCritical(param, 0);
+		if (i < 0) {
+			return param;
+		}
+		StringBuilder sb = new StringBuilder(param.length() + 16);
+		appendEncoded(sb, param, i);
 		return sb.toString();
 	}
 
 
+	/* Append the escaped param to sb. */
+	public static void appendEncoded(StringBuilder sb, String param) {
+		if (param != null) {
+			appendEncoded(sb, param,
+				      indexOfCritical(param, 0));
+		}
+	}
+
+
+	/* Same as above, i is the first position to escape, or -1. */
+	protected static void appendEncoded(StringBuilder sb,
+					    String param, int i) {
+		int start = 0;
+		while (i >= 0) {
+			sb.append(param, start, i);
+			sb.append(entity(param.charAt(i)));
+			start = i+1;
+			i = indexOfCritical(param, start);
+		}
+		sb.append(param, start, param.length());
+	}
+
+
 	public static String quote(String param) {
-		return "\"" + encode(param) + "\"";
+		StringBuilder sb = new StringBuilder(
+			(param != null) ? param.length() + 2 : 2);
+		sb.append('"');
+		appendEncoded(sb, param);
+		sb.append('"');
+		return sb.toString();
 	}
 
 
@@ -72,13 +117,7 @@ public class XML {
 		if (param == null) {
 			return false;
 		}
-		int n = param.length();
-		for (int i = 0;  i < n;  i++) {
-			if (critical.indexOf(param.charAt(i)) >= 0) {
-				return true;
-			}
-		}
-		return false;
+		return indexOfCritical(param, 0) >= 0;
 	}
 
 }
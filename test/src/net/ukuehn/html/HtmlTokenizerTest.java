@@ -0,0 +1,177 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.html;
+
+
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import java.net.URL;
+import java.net.HttpURLConnection;
+
+
+
+/* Checks that the tokenizer gives the same tokens in byte mode as
+ * when the document is decoded first. Run with
+ *	ant test
+ */
+public class HtmlTokenizerTest {
+
+	int failures = 0;
+
+
+	public static void main(String[] args) throws Exception {
+		HtmlTokenizerTest t = new HtmlTokenizerTest();
+		t.testNonLetterLeadByte();
+		t.testLetterInWindows1252();
+		t.testLetterInLatin2();
+		if (t.failures > 0) {
+			System.err.println(String.valueOf(t.failures)
+					   +" test(s) failed");
+			System.exit(1);
+		}
+		System.out.println("HtmlTokenizerTest: all passed");
+	}
+
+
+	/* The lead bytes of the UTF-8 characters after the '<' read as
+	 * letters by themselves, the characters are not.
+	 */
+	void testNonLetterLeadByte() throws Exception {
+		String doc = "<p>price <\u20ac5 or <\u00d7 x</p>";
+		ArrayList<String> res = compare(doc, "UTF-8");
+		check("UTF-8 text", res.size() == 3);
+		check("UTF-8 text", (res.size() > 1)
+		      && res.get(1).equals("TextToken:price <\u20ac5 or "
+					   +"<\u00d7 x"));
+	}
+
+
+	/* 0x8a is a control character in ISO-8859-1, but the letter
+	 * S with caron in windows-1252.
+	 */
+	void testLetterInWindows1252() throws Exception {
+		compare("<\u0160b", "windows-1252");
+	}
+
+
+	/* 0xa1 is a sign in ISO-8859-1, but the letter A with ogonek
+	 * in ISO-8859-2.
+	 */
+	void testLetterInLatin2() throws Exception {
+		ArrayList<String> res = compare("<\u0104c>x", "ISO-8859-2");
+		check("ISO-8859-2 tag", (res.size() > 0)
+		      && res.get(0).startsWith("TagToken:"));
+	}
+
+
+	/* Tokenize doc encoded in charset in byte mode, and decoded
+	 * from a string, and check that both give the same result.
+	 */
+	ArrayList<String> compare(String doc, String charset)
+		throws Exception {
+		byte[] body = doc.getBytes(charset);
+		HtmlTokenizer bt = new HtmlTokenizer(
+			new StubConnection(body, charset));
+		check(charset+" byte mode", bt.bytes != null);
+		ArrayList<String> res = tokens(bt);
+		ArrayList<String> exp = tokens(new HtmlTokenizer(doc));
+		check(charset+" same tokens as decoded", res.equals(exp));
+		if (!res.equals(exp)) {
+			System.err.println("  expected "+exp);
+			System.err.println("  got      "+res);
+		}
+		return res;
+	}
+
+
+	ArrayList<String> tokens(HtmlTokenizer t) {
+		ArrayList<String> res = new ArrayList<String>();
+		try {
+			Token tok;
+			while ((tok = t.nextToken()) != null) {
+				res.add(tok.getClass().getSimpleName()
+					+":"+tok.toString());
+			}
+		} catch (ParserException e) {
+			res.add("ParserException:"+e.getMessage());
+		}
+		return res;
+	}
+
+
+	void check(String name, boolean ok) {
+		if (!ok) {
+			System.err.println("FAILED: "+name);
+			failures += 1;
+		}
+	}
+
+
+	/* Connection answering with the given body as text/html. */
+	static class StubConnection extends HttpURLConnection {
+
+		byte[] body;
+		String ctype;
+
+
+		StubConnection(byte[] theBody, String charset)
+			throws IOException {
+			super(new URL("http://localhost/"));
+			body = theBody;
+			ctype = "text/html; charset="+charset;
+			responseCode = HTTP_OK;
+			connected = true;
+		}
+
+
+		public void connect() {
+			// nothing, always connected
+		}
+
+
+		public void disconnect() {
+			// nothing
+		}
+
+
+		public boolean usingProxy() {
+			return false;
+		}
+
+
+		public String getHeaderField(String name) {
+			if (name.equalsIgnoreCase("Content-Type")) {
+				return ctype;
+			}
+			return null;
+		}
+
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(body);
+		}
+	}
+
+}
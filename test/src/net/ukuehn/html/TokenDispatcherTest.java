@@ -0,0 +1,122 @@
+/* -*- java -*-
+ *
+ * (C) 2013 Ulrich Kuehn <ukuehn@acm.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+
+package net.ukuehn.html;
+
+
+import java.util.ArrayList;
+
+
+
+/* Checks that the dispatcher matches names without decoding the
+ * tags, and that known names are the instances from HtmlNames.
+ * Run with
+ *	ant test
+ */
+public class TokenDispatcherTest implements TokenVisitor {
+
+	int failures = 0;
+	ArrayList<TagToken> visited = new ArrayList<TagToken>();
+
+
+	public static void main(String[] args) throws Exception {
+		TokenDispatcherTest t = new TokenDispatcherTest();
+		t.testCanonicalNames();
+		t.testAttributeMatchDoesNotDecode();
+		if (t.failures > 0) {
+			System.err.println(String.valueOf(t.failures)
+					   +" test(s) failed");
+			System.exit(1);
+		}
+		System.out.println("TokenDispatcherTest: all passed");
+	}
+
+
+	void testCanonicalNames() throws Exception {
+		HtmlTokenizer t = new HtmlTokenizer(
+			"<!DOCTYPE html><HEAD></Head><script></SCRIPT>");
+		check("doctype", nextName(t) == HtmlNames.DOCTYPE);
+		check("head", nextName(t) == HtmlNames.HEAD);
+		check("/head", nextName(t) == HtmlNames.END_HEAD);
+		check("script", nextName(t) == HtmlNames.SCRIPT);
+		check("/script", nextName(t) == HtmlNames.END_SCRIPT);
+	}
+
+
+	/* Only the tag with the registered attribute is decoded, and
+	 * only because the visitor reads its values.
+	 */
+	void testAttributeMatchDoesNotDecode() throws Exception {
+		HtmlTokenizer t = new HtmlTokenizer(
+			"<p class=a>t</p><a href=y OnClick='x()'>z</a>"
+			+"<div id=&quot;d&quot;></div>");
+		TokenDispatcher td = new TokenDispatcher();
+		td.add(this);
+		ArrayList<TagToken> tags = new ArrayList<TagToken>();
+		Token tok;
+		while ((tok = t.nextToken()) != null) {
+			if (tok instanceof TagToken) {
+				tags.add((TagToken)tok);
+			}
+			td.dispatch(tok);
+		}
+		td.end();
+		check("one visit", visited.size() == 1);
+		check("visit a", (visited.size() == 1)
+		      && (visited.get(0).getCanonicalName() == "a"));
+		for (int i = 0;  i < tags.size();  i++) {
+			TagToken tt = tags.get(i);
+			boolean isA = (tt.getCanonicalName() == "a");
+			check("decoded only if visited: "+tt.getName(),
+			      tt.decoded == isA);
+		}
+	}
+
+
+	public void register(TokenDispatcher d) {
+		d.registerAttribute(this, "onclick");
+	}
+
+
+	public void visit(Token t, TokenDispatcher d) {
+		TagToken tt = (TagToken)t;
+		visited.add(tt);
+		tt.getValue(tt.attrIndex("onclick"));
+	}
+
+
+	public void end() {
+	}
+
+
+	String nextName(HtmlTokenizer t) throws ParserException {
+		return ((TagToken)t.nextToken()).getCanonicalName();
+	}
+
+
+	void check(String name, boolean ok) {
+		if (!ok) {
+			System.err.println("FAILED: "+name);
+			failures += 1;
+		}
+	}
+
+}